@@ -0,0 +1,54 @@
+package io.github.bvotteler.rscp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RSCPDataAccessorBenchmark {
+    private RSCPData uint32Data;
+    private RSCPData int64Data;
+    private RSCPData double64Data;
+
+    @Setup
+    public void setUp() {
+        uint32Data = RSCPData.builder().tag(RSCPTag.TAG_DB_BAT_CYCLE_COUNT).uint32Value(349).build();
+        int64Data = RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).int64Value(4200L).build();
+        double64Data = RSCPData.builder().tag(RSCPTag.TAG_DB_AUTARKY).double64Value(96.84).build();
+    }
+
+    @Benchmark
+    public int intOptional() {
+        return uint32Data.getValueAsInt().orElse(0);
+    }
+
+    @Benchmark
+    public int intPrimitive() {
+        return uint32Data.getInt(0);
+    }
+
+    @Benchmark
+    public long longOptional() {
+        return int64Data.getValueAsLong().orElse(0L);
+    }
+
+    @Benchmark
+    public long longPrimitive() {
+        return int64Data.getLong(0L);
+    }
+
+    @Benchmark
+    public double doubleOptional() {
+        return double64Data.getValueAsDouble().orElse(0.0);
+    }
+
+    @Benchmark
+    public double doublePrimitive() {
+        return double64Data.getDouble(0.0);
+    }
+}
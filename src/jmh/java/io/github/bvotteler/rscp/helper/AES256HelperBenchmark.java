@@ -0,0 +1,81 @@
+package io.github.bvotteler.rscp.helper;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.RijndaelEngine;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.paddings.ZeroBytePadding;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypting and decrypting frames with {@link BouncyAES256Helper}, compared to building the cipher for every frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AES256HelperBenchmark {
+    @Param({"64", "1024", "65536"})
+    public int frameSize;
+
+    @Param({BouncyAES256Helper.engineBouncyCastle, BouncyAES256Helper.engineTable})
+    public String engine;
+
+    private final byte[] key = new byte[32];
+    private final byte[] iv = new byte[32];
+    private byte[] frame;
+    private byte[] encryptedFrame;
+    private BouncyAES256Helper helper;
+
+    @Setup
+    public void setUp() {
+        Arrays.fill(key, (byte) 0xFF);
+        Arrays.fill(iv, (byte) 0xFF);
+        frame = new byte[frameSize];
+        new Random(1).nextBytes(frame);
+        helper = new BouncyAES256Helper("SuperSecret123", BouncyAES256Helper.getEngineFactory(engine));
+        encryptedFrame = new BouncyAES256Helper("SuperSecret123").encrypt(frame);
+    }
+
+    @Benchmark
+    public byte[] encryptReusedCipher() {
+        return helper.encrypt(frame);
+    }
+
+    @Benchmark
+    public byte[] encryptCipherPerFrame() throws InvalidCipherTextException {
+        return processWithCipherPerFrame(true, frame);
+    }
+
+    @Benchmark
+    public byte[] decryptReusedCipher() {
+        return helper.decrypt(encryptedFrame);
+    }
+
+    @Benchmark
+    public byte[] decryptCipherPerFrame() throws InvalidCipherTextException {
+        return processWithCipherPerFrame(false, encryptedFrame);
+    }
+
+    /**
+     * How frames were processed before the ciphers were kept between frames.
+     */
+    private byte[] processWithCipherPerFrame(boolean forEncryption, byte[] input) throws InvalidCipherTextException {
+        PaddedBufferedBlockCipher cipher = new PaddedBufferedBlockCipher(
+                CBCBlockCipher.newInstance(new RijndaelEngine(256)), new ZeroBytePadding());
+        cipher.init(forEncryption, new ParametersWithIV(new KeyParameter(key, 0, 32), iv, 0, 32));
+        byte[] output = new byte[cipher.getOutputSize(input.length)];
+        int length = cipher.processBytes(input, 0, input.length, output, 0);
+        cipher.doFinal(output, length);
+        System.arraycopy(forEncryption ? output : input, (forEncryption ? output : input).length - 32, iv, 0, 32);
+        return output;
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second against a local {@link E3DCSimulator}, one at a time and pipelined.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class E3DCSessionThroughputBenchmark {
+    private static final String key = "SuperSecret123";
+    private static final int pipelineDepth = 16;
+
+    @Param({"0", "2"})
+    public int latencyMillis;
+
+    private E3DCSimulator simulator;
+    private E3DCSession session;
+    private RSCPFrame request;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulator = E3DCSimulator.builder()
+                .aesPassword(key)
+                .credentials("user", "password")
+                .latency(Duration.ofMillis(latencyMillis), Duration.ZERO)
+                .build()
+                .start();
+        session = E3DCSession.open("127.0.0.1", simulator.getPort(), new BouncyAES256Helper(key));
+        E3DCAuthenticatedSession.authenticate(session, "user", "password").get();
+        request = RSCPFrame.builder()
+                .timestamp(Instant.now())
+                .addData(RSCPData.builder().tag(RSCPTag.TAG_EMS_REQ_POWER_PV).noneValue().build())
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        simulator.close();
+    }
+
+    @Benchmark
+    public RSCPFrame sequential() throws Exception {
+        return session.send(request).get();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(pipelineDepth)
+    public RSCPFrame pipelined() throws Exception {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[pipelineDepth];
+        for (int i = 0; i < pipelineDepth; i++) {
+            responses[i] = session.send(request);
+        }
+        CompletableFuture.allOf(responses).get();
+        return (RSCPFrame) responses[pipelineDepth - 1].get();
+    }
+}
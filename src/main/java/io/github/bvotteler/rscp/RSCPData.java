@@ -4,6 +4,7 @@ import io.github.bvotteler.rscp.util.ByteUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
@@ -13,6 +14,7 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static io.github.bvotteler.rscp.RSCPDataType.*;
 import static io.github.bvotteler.rscp.RSCPFrame.sizeTsNanoSeconds;
@@ -31,48 +33,107 @@ public class RSCPData {
     // next 2 bytes: data length in bytes
     // next ? bytes: data portion of variable length
     // last 4 bytes: CRC checksum (if applicable)
-    private static final int offsetDataTag = 0;
-    private static final int offsetDataType = offsetDataTag + sizeDataTag;
-    private static final int offsetDataLength = offsetDataType + sizeDataType;
-    private static final int offsetData = offsetDataLength + sizeDataLength;
+    static final int offsetDataTag = 0;
+    static final int offsetDataType = offsetDataTag + sizeDataTag;
+    static final int offsetDataLength = offsetDataType + sizeDataType;
+    static final int offsetData = offsetDataLength + sizeDataLength;
+
+    // unknown tag ids that have already been warned about, see UnknownTagLogging#ONCE_PER_TAG_ID
+    private static final int maxWarnedUnknownTagIds = 1024;
+    private static final Set<Integer> warnedUnknownTagIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private static volatile UnknownTagLogging unknownTagLogging = UnknownTagLogging.ONCE_PER_TAG_ID;
 
     private final RSCPTag dataTag;
+    private final int dataTagId;
     private final RSCPDataType dataType;
-    private final short dataLength;
-    private final byte[] value; // unknown size
+    private final int dataLength;
+    private final byte[] value; // unknown size, may be a larger buffer shared with other instances
+    private final int valueOffset;
+    // decoded lazily on first access, see getContainerData()
+    private volatile List<RSCPData> containerData;
 
     /* NullObjectPattern */
     public static RSCPData NULL = RSCPData.builder().tag(RSCPTag.TAG_NONE).noneValue().build();
 
     RSCPData(RSCPTag dataTag, RSCPDataType dataType, byte[] value) {
+        this(dataTag, dataTag.getId(), dataType, value, 0, value.length);
+    }
+
+    RSCPData(RSCPTag dataTag, int dataTagId, RSCPDataType dataType, byte[] buffer, int valueOffset, int dataLength) {
         this.dataTag = dataTag;
+        this.dataTagId = dataTagId;
         this.dataType = dataType;
-        this.value = value;
-        this.dataLength = (short) value.length;
+        this.value = buffer;
+        this.valueOffset = valueOffset;
+        this.dataLength = dataLength;
     }
 
     public static Builder builder() {
         return new Builder();
     }
 
+    /**
+     * Control how unknown tag ids are logged while decoding. Defaults to {@link UnknownTagLogging#ONCE_PER_TAG_ID}.
+     * @param logging The logging mode to use from now on.
+     */
+    public static void setUnknownTagLogging(UnknownTagLogging logging) {
+        unknownTagLogging = Objects.requireNonNull(logging);
+        warnedUnknownTagIds.clear();
+    }
+
+    /**
+     * Get the tag of this instance.
+     * @return The tag, or {@link RSCPTag#UNKNOWN} if the tag id is not known (see {@link RSCPData#getDataTagId()}).
+     */
     public RSCPTag getDataTag() {
         return dataTag;
     }
 
+    /**
+     * Get the raw 32 bit tag id of this instance. Unlike {@link RSCPData#getDataTag()}, this also preserves ids that
+     * are not known to {@link RSCPTag}, e.g. tags introduced by a newer firmware.
+     * @return The tag id.
+     */
+    public int getDataTagId() {
+        return dataTagId;
+    }
+
     public RSCPDataType getDataType() {
         return dataType;
     }
 
+    /**
+     * <p>Get the value of this RSCPData instance as byte array.</p>
+     * <p>For instances that are a view into a larger buffer (see {@link Builder#buildViewsFromRawBytes(byte[], int, int)}),
+     * this returns a copy of the value bytes.</p>
+     * @return The raw value.
+     */
     public byte[] getValueAsByteArray() {
-        return value;
+        if (valueOffset == 0 && dataLength == value.length) {
+            return value;
+        }
+        return ByteUtils.copyBytesIntoNewArray(value, valueOffset, dataLength);
     }
 
+    /**
+     * <p>Get the elements of a {@link RSCPDataType#CONTAINER} instance.</p>
+     * <p>The returned elements are views into the value of this instance, so no value bytes are copied.
+     * They are decoded on first access and the same unmodifiable list is returned on every later call,
+     * also when called from several threads.</p>
+     * @return The contained elements, or an empty list if this instance is not a container.
+     */
     public List<RSCPData> getContainerData() {
         if (RSCPDataType.CONTAINER != getDataType()) {
             return Collections.emptyList();
-        } else {
-            return RSCPData.builder().buildFromRawBytes(getValueAsByteArray());
         }
+
+        List<RSCPData> result = containerData;
+        if (result == null) {
+            // concurrent first calls may decode twice, but every thread ends up with an equal, immutable list
+            result = Collections.unmodifiableList(RSCPData.builder().buildViewsFromRawBytes(value, valueOffset, dataLength));
+            containerData = result;
+        }
+        return result;
     }
 
     /**
@@ -80,15 +141,30 @@ public class RSCPData {
      * @return A byte array containing the data.
      */
     public byte[] getAsByteArray() {
-        byte[] bytes = new byte[offsetData + dataLength];
-        // copy over to final position and reverse
-        System.arraycopy(ByteUtils.reverseByteArray(getDataTagAsBytes()), 0, bytes, 0, sizeDataTag);
-        System.arraycopy(ByteUtils.reverseByteArray(getDataTypeAsBytes()), 0, bytes, offsetDataType, sizeDataType);
-        System.arraycopy(ByteUtils.reverseByteArray(ByteUtils.shortToBytes(dataLength)), 0, bytes, offsetDataLength, sizeDataLength);
-        System.arraycopy(value, 0, bytes, offsetData, dataLength);
+        byte[] bytes = new byte[getByteCount()];
+        writeTo(ByteBuffer.wrap(bytes));
         return bytes;
     }
 
+    /**
+     * <p>Write the payload of this RSCPData instance into the provided buffer, starting at its current position.</p>
+     * <p>The position of the buffer is advanced by {@link RSCPData#getByteCount()}, its byte order is left unchanged.</p>
+     * @param buffer The buffer to write to, heap or direct.
+     * @throws java.nio.BufferOverflowException If the buffer has less than {@link RSCPData#getByteCount()} bytes remaining.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        if (buffer.remaining() < getByteCount()) {
+            throw new BufferOverflowException();
+        }
+        ByteOrder originalOrder = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(dataTagId);
+        buffer.put(dataType.getValue());
+        buffer.putShort((short) dataLength);
+        buffer.put(value, valueOffset, dataLength);
+        buffer.order(originalOrder);
+    }
+
     /**
      * Get the byte count of the entire instance.
      * @return Number of bytes this instance holds.
@@ -106,7 +182,7 @@ public class RSCPData {
             return Optional.empty();
         }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Short.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Short.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value, valueOffset, dataLength);
         byteBuffer.rewind();
         return Optional.of(byteBuffer.getShort());
     }
@@ -120,7 +196,7 @@ public class RSCPData {
             return Optional.empty();
         }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value, valueOffset, dataLength);
         byteBuffer.rewind();
         return Optional.of(byteBuffer.getInt());
     }
@@ -134,7 +210,7 @@ public class RSCPData {
             return Optional.empty();
         }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value, valueOffset, dataLength);
         byteBuffer.rewind();
         return Optional.of(byteBuffer.getLong());
     }
@@ -148,7 +224,7 @@ public class RSCPData {
             return Optional.empty();
         }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Float.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Float.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value, valueOffset, dataLength);
         byteBuffer.rewind();
         return Optional.of(byteBuffer.getFloat());
     }
@@ -162,11 +238,110 @@ public class RSCPData {
             return Optional.empty();
         }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).put(this.value, valueOffset, dataLength);
         byteBuffer.rewind();
         return Optional.of(byteBuffer.getDouble());
     }
 
+    /**
+     * <p>Get the value contained in this RSCPData instance as short, without allocating.</p>
+     * <p>Signed data types are sign extended, unsigned data types are zero extended.</p>
+     * @param defaultValue The value to return if the raw data cannot be interpreted as short.
+     * @return The value, or {@code defaultValue}.
+     */
+    public short getShort(short defaultValue) {
+        return isReadableAs(this.dataType.isValidShortType()) ? (short) readIntegralValue() : defaultValue;
+    }
+
+    /**
+     * Same as {@link RSCPData#getShort(short)}, but throws if the raw data cannot be interpreted as short.
+     * @return The value.
+     * @throws IllegalStateException If the raw data cannot be interpreted as short.
+     */
+    public short getShortOrThrow() {
+        requireReadableAs(this.dataType.isValidShortType(), "short");
+        return (short) readIntegralValue();
+    }
+
+    /**
+     * <p>Get the value contained in this RSCPData instance as int, without allocating.</p>
+     * <p>Signed data types are sign extended, unsigned data types are zero extended.</p>
+     * @param defaultValue The value to return if the raw data cannot be interpreted as integer.
+     * @return The value, or {@code defaultValue}.
+     */
+    public int getInt(int defaultValue) {
+        return isReadableAs(this.dataType.isValidIntType()) ? (int) readIntegralValue() : defaultValue;
+    }
+
+    /**
+     * Same as {@link RSCPData#getInt(int)}, but throws if the raw data cannot be interpreted as integer.
+     * @return The value.
+     * @throws IllegalStateException If the raw data cannot be interpreted as integer.
+     */
+    public int getIntOrThrow() {
+        requireReadableAs(this.dataType.isValidIntType(), "int");
+        return (int) readIntegralValue();
+    }
+
+    /**
+     * <p>Get the value contained in this RSCPData instance as long, without allocating.</p>
+     * <p>Signed data types are sign extended, unsigned data types are zero extended.</p>
+     * @param defaultValue The value to return if the raw data cannot be interpreted as long.
+     * @return The value, or {@code defaultValue}.
+     */
+    public long getLong(long defaultValue) {
+        return isReadableAs(this.dataType.isValidLongType()) ? readIntegralValue() : defaultValue;
+    }
+
+    /**
+     * Same as {@link RSCPData#getLong(long)}, but throws if the raw data cannot be interpreted as long.
+     * @return The value.
+     * @throws IllegalStateException If the raw data cannot be interpreted as long.
+     */
+    public long getLongOrThrow() {
+        requireReadableAs(this.dataType.isValidLongType(), "long");
+        return readIntegralValue();
+    }
+
+    /**
+     * Get the value contained in this RSCPData instance as float, without allocating.
+     * @param defaultValue The value to return if the raw data cannot be interpreted as float.
+     * @return The value, or {@code defaultValue}.
+     */
+    public float getFloat(float defaultValue) {
+        return isReadableAs(this.dataType == FLOAT32) ? readFloatValue() : defaultValue;
+    }
+
+    /**
+     * Same as {@link RSCPData#getFloat(float)}, but throws if the raw data cannot be interpreted as float.
+     * @return The value.
+     * @throws IllegalStateException If the raw data cannot be interpreted as float.
+     */
+    public float getFloatOrThrow() {
+        requireReadableAs(this.dataType == FLOAT32, "float");
+        return readFloatValue();
+    }
+
+    /**
+     * <p>Get the value contained in this RSCPData instance as double, without allocating.</p>
+     * <p>{@link RSCPDataType#FLOAT32} values are widened to double.</p>
+     * @param defaultValue The value to return if the raw data cannot be interpreted as double.
+     * @return The value, or {@code defaultValue}.
+     */
+    public double getDouble(double defaultValue) {
+        return isReadableAs(this.dataType == DOUBLE64 || this.dataType == FLOAT32) ? readDoubleValue() : defaultValue;
+    }
+
+    /**
+     * Same as {@link RSCPData#getDouble(double)}, but throws if the raw data cannot be interpreted as double.
+     * @return The value.
+     * @throws IllegalStateException If the raw data cannot be interpreted as double.
+     */
+    public double getDoubleOrThrow() {
+        requireReadableAs(this.dataType == DOUBLE64 || this.dataType == FLOAT32, "double");
+        return readDoubleValue();
+    }
+
     /**
      * Try to get the value contained in this RSCPData instance.
      * @return An {@link Optional} containing a value if the raw data can be interpreted as Instant. Otherwise, returns {@link Optional#empty()}.
@@ -177,7 +352,7 @@ public class RSCPData {
         }
 
         ByteBuffer byteBuffer = ByteBuffer.allocate(sizeTsSeconds + sizeTsNanoSeconds).order(ByteOrder.LITTLE_ENDIAN);
-        byteBuffer.put(this.value);
+        byteBuffer.put(this.value, valueOffset, dataLength);
         byteBuffer.rewind();
 
         long epochSeconds = byteBuffer.getLong();
@@ -196,7 +371,7 @@ public class RSCPData {
         }
 
         ByteBuffer byteBuffer = ByteBuffer.allocate(sizeTsSeconds + sizeTsNanoSeconds).order(ByteOrder.LITTLE_ENDIAN);
-        byteBuffer.put(this.value);
+        byteBuffer.put(this.value, valueOffset, dataLength);
         byteBuffer.rewind();
 
         long seconds = byteBuffer.getLong();
@@ -213,9 +388,9 @@ public class RSCPData {
     public Optional<String> getValueAsString() {
         switch (this.dataType) {
             case STRING:
-                return Optional.of(new String(this.value, StandardCharsets.UTF_8));
+                return Optional.of(new String(this.value, valueOffset, dataLength, StandardCharsets.UTF_8));
             case BOOL:
-                return Optional.of(String.format("%b", this.value[0] == 1));
+                return Optional.of(String.format("%b", this.value[valueOffset] == 1));
             case DOUBLE64:
                 return Optional.of(String.format("%.2f", getValueAsDouble().orElse(0.0)));
             case FLOAT32:
@@ -244,30 +419,118 @@ public class RSCPData {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         RSCPData rscpData = (RSCPData) o;
-        return dataLength == rscpData.dataLength && Arrays.equals(value, rscpData.value) && dataTag == rscpData.dataTag && dataType == rscpData.dataType;
+        return dataLength == rscpData.dataLength
+                && ByteUtils.rangeEquals(value, valueOffset, rscpData.value, rscpData.valueOffset, dataLength)
+                && dataTagId == rscpData.dataTagId && dataTag == rscpData.dataTag && dataType == rscpData.dataType;
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(dataLength, dataTag, dataType);
-        result = 31 * result + Arrays.hashCode(value);
+        int result = Objects.hash(dataLength, dataTagId, dataTag, dataType);
+        result = 31 * result + ByteUtils.rangeHashCode(value, valueOffset, dataLength);
         return result;
     }
 
-    private byte[] getDataTagAsBytes() {
-        return dataTag.getValueAsBytes();
+    private boolean isReadableAs(boolean validType) {
+        return validType && dataLength >= getPrimitiveSize();
     }
 
-    private byte[] getDataTypeAsBytes() {
-        byte[] bytes = new byte[1];
-        bytes[0] = dataType.getValue();
-        return bytes;
+    private void requireReadableAs(boolean validType, String javaType) {
+        if (!isReadableAs(validType)) {
+            throw new IllegalStateException("Value of data type " + dataType + " cannot be read as " + javaType + ".");
+        }
+    }
+
+    private int getPrimitiveSize() {
+        return primitiveSize(dataType);
+    }
+
+    private long readIntegralValue() {
+        return readIntegral(dataType, value, valueOffset);
+    }
+
+    static int primitiveSize(RSCPDataType dataType) {
+        switch (dataType) {
+            case CHAR8:
+            case UCHAR8:
+                return Byte.BYTES;
+            case INT16:
+            case UINT16:
+                return Short.BYTES;
+            case INT32:
+            case UINT32:
+            case FLOAT32:
+                return Integer.BYTES;
+            default:
+                return Long.BYTES;
+        }
+    }
+
+    static long readIntegral(RSCPDataType dataType, byte[] bytes, int offset) {
+        switch (dataType) {
+            case CHAR8:
+                return bytes[offset];
+            case UCHAR8:
+                return bytes[offset] & 0xFF;
+            case INT16:
+                return (short) ByteUtils.unsignedShortFromLittleEndianBytes(bytes, offset);
+            case UINT16:
+                return ByteUtils.unsignedShortFromLittleEndianBytes(bytes, offset);
+            case INT32:
+                return ByteUtils.intFromLittleEndianBytes(bytes, offset);
+            case UINT32:
+                return ByteUtils.intFromLittleEndianBytes(bytes, offset) & 0xFFFFFFFFL;
+            default:
+                return ByteUtils.longFromLittleEndianBytes(bytes, offset);
+        }
+    }
+
+    private float readFloatValue() {
+        return Float.intBitsToFloat(ByteUtils.intFromLittleEndianBytes(value, valueOffset));
+    }
+
+    private double readDoubleValue() {
+        if (this.dataType == FLOAT32) {
+            return readFloatValue();
+        }
+        return Double.longBitsToDouble(ByteUtils.longFromLittleEndianBytes(value, valueOffset));
+    }
+
+    static void logUnknownTag(int tagId) {
+        switch (unknownTagLogging) {
+            case EVERY_OCCURRENCE:
+                logger.warn("Tag could not be matched: {}", String.format("%08x", tagId));
+                break;
+            case ONCE_PER_TAG_ID:
+                if (warnedUnknownTagIds.size() < maxWarnedUnknownTagIds && warnedUnknownTagIds.add(tagId)) {
+                    logger.warn("Tag could not be matched: {} (further occurrences are logged at debug level)", String.format("%08x", tagId));
+                } else if (logger.isDebugEnabled()) {
+                    logger.debug("Tag could not be matched: {}", String.format("%08x", tagId));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * How unknown tag ids encountered while decoding are logged.
+     */
+    public enum UnknownTagLogging {
+        /** Log a warning for every element with an unknown tag id. */
+        EVERY_OCCURRENCE,
+        /** Log a warning the first time an unknown tag id is seen, later occurrences at debug level. */
+        ONCE_PER_TAG_ID,
+        /** Do not log unknown tag ids. */
+        NONE
     }
 
     public static class Builder {
         private RSCPTag dataTag;
+        private int dataTagId;
         private RSCPDataType dataType;
         private byte[] value;
+        private final List<RSCPData> containerValues = new ArrayList<>();
 
         Builder() {
         }
@@ -279,47 +542,87 @@ public class RSCPData {
          * @return A list of constructed {@link RSCPData} instances.
          */
         public List<RSCPData> buildFromRawBytes(byte[] bytes) {
-            if (bytes == null || bytes.length < offsetData) {
+            if (bytes == null) {
                 logger.warn("Not enough bytes to form RSCPData instance(s), returning empty list (data truncated?).");
                 return Collections.emptyList();
             }
+            return buildFromRawBytes(bytes, 0, bytes.length);
+        }
 
-            List<RSCPData> rscpDataList = new ArrayList<>();
-
-            byte[] tagNameBytes = ByteUtils.copyBytesIntoNewArray(bytes, offsetDataTag, sizeDataTag);
-            RSCPTag tag = RSCPTag.getTagForBytes(ByteUtils.reverseByteArray(tagNameBytes));
-            if (tag == null) {
-                logger.warn("Tag could not be matched: {}", ByteUtils.byteArrayToHexString(tagNameBytes));
-                tag = RSCPTag.getTagForBytes(
-                        ByteUtils.reverseByteArray(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF }));
-            }
-
-            // single byte, no need to reverse
-            RSCPDataType dataType = RSCPDataType.getDataTypeForBytes(bytes[offsetDataType]);
+        /**
+         * <p>Build a list of {@link RSCPData} instances from a section of the provided raw data.</p>
+         * <p>The section is walked once from start to end, without copying the remaining bytes between elements.
+         * If the section ends in a truncated element, the elements read up to that point are returned.</p>
+         * <p>This method will try to do some basic validations. Will throw {@link IllegalStateException} if the data cannot be validated before construction.</p>
+         * @param bytes Raw bytes, for example a complete frame received from an E3DC server.
+         * @param offset Position of the first byte of the first element within {@code bytes}.
+         * @param length Number of bytes to read, starting at {@code offset}.
+         * @return A list of constructed {@link RSCPData} instances.
+         */
+        public List<RSCPData> buildFromRawBytes(byte[] bytes, int offset, int length) {
+            return decodeRawBytes(bytes, offset, length, false);
+        }
 
-            ByteBuffer byteBuffer = getLittleEndianByteBuffer(Short.BYTES).put(bytes, offsetDataLength, sizeDataLength);
-            byteBuffer.flip();
-            short dataLength = byteBuffer.getShort();
+        /**
+         * <p>Build a list of read-only {@link RSCPData} views over a section of the provided raw data.</p>
+         * <p>Unlike {@link Builder#buildFromRawBytes(byte[], int, int)}, the values are not copied.
+         * Each instance refers to its value within {@code bytes}, so the array must not be modified or reused
+         * while the returned instances are in use.</p>
+         * <p>This method will try to do some basic validations. Will throw {@link IllegalStateException} if the data cannot be validated before construction.</p>
+         * @param bytes Raw bytes, for example a complete decrypted frame received from an E3DC server.
+         * @param offset Position of the first byte of the first element within {@code bytes}.
+         * @param length Number of bytes to read, starting at {@code offset}.
+         * @return A list of constructed {@link RSCPData} instances sharing {@code bytes}.
+         */
+        public List<RSCPData> buildViewsFromRawBytes(byte[] bytes, int offset, int length) {
+            return decodeRawBytes(bytes, offset, length, true);
+        }
 
-            if (bytes.length < offsetData + dataLength) {
-                logger.warn("Not enough bytes in data section to form complete RSCPValue instance (data truncated?)");
+        private List<RSCPData> decodeRawBytes(byte[] bytes, int offset, int length, boolean asViews) {
+            if (bytes == null || length < offsetData) {
+                logger.warn("Not enough bytes to form RSCPData instance(s), returning empty list (data truncated?).");
                 return Collections.emptyList();
             }
+            if (offset < 0 || offset + length > bytes.length) {
+                throw new IllegalArgumentException("Offset and length exceed the bounds of the byte array.");
+            }
 
-            byte[] data = ByteUtils.copyBytesIntoNewArray(bytes, offsetData, dataLength);
-
-            RSCPData rscpData = RSCPData.builder()
-                    .tag(tag)
-                    .valueOfType(dataType, data)
-                    .build();
-
-            rscpDataList.add(rscpData);
+            List<RSCPData> rscpDataList = new ArrayList<>();
 
-            // more left to process?
-            if (bytes.length > offsetData + dataLength) {
-                // truncate bytes and start recursion
-                byte[] remainingBytes = ByteUtils.truncateFirstNBytes(bytes, offsetData + dataLength);
-                rscpDataList.addAll(buildFromRawBytes(remainingBytes));
+            int position = offset;
+            int end = offset + length;
+            while (position < end) {
+                if (end - position < offsetData) {
+                    logger.warn("Not enough bytes left to form another RSCPData instance (data truncated?)");
+                    break;
+                }
+
+                int tagId = ByteUtils.intFromLittleEndianBytes(bytes, position + offsetDataTag);
+                RSCPTag tag = RSCPTag.fromId(tagId);
+                if (tag == null) {
+                    logUnknownTag(tagId);
+                    tag = RSCPTag.UNKNOWN;
+                }
+
+                // single byte, no need to reverse
+                RSCPDataType dataType = RSCPDataType.getDataTypeForBytes(bytes[position + offsetDataType]);
+
+                int dataLength = ByteUtils.unsignedShortFromLittleEndianBytes(bytes, position + offsetDataLength);
+
+                if (end - position < offsetData + dataLength) {
+                    logger.warn("Not enough bytes in data section to form complete RSCPValue instance (data truncated?)");
+                    break;
+                }
+
+                validate(tag, dataType, dataLength);
+                if (asViews) {
+                    rscpDataList.add(new RSCPData(tag, tagId, dataType, bytes, position + offsetData, dataLength));
+                } else {
+                    byte[] data = ByteUtils.copyBytesIntoNewArray(bytes, position + offsetData, dataLength);
+                    rscpDataList.add(new RSCPData(tag, tagId, dataType, data, 0, dataLength));
+                }
+
+                position += offsetData + dataLength;
             }
 
             return rscpDataList;
@@ -332,6 +635,20 @@ public class RSCPData {
          */
         public Builder tag(RSCPTag tag) {
             this.dataTag = tag;
+            this.dataTagId = (tag != null) ? tag.getId() : 0;
+            return this;
+        }
+
+        /**
+         * Define the tag for this instance by its raw id. Ids not known to {@link RSCPTag} are kept as they are
+         * and will be encoded unchanged, while {@link RSCPData#getDataTag()} reports {@link RSCPTag#UNKNOWN}.
+         * @param tagId The 32 bit tag id to set.
+         * @return The builder.
+         */
+        public Builder tagId(int tagId) {
+            RSCPTag tag = RSCPTag.fromId(tagId);
+            this.dataTag = (tag != null) ? tag : RSCPTag.UNKNOWN;
+            this.dataTagId = tagId;
             return this;
         }
 
@@ -348,6 +665,7 @@ public class RSCPData {
         public Builder valueOfType(RSCPDataType dataType, byte[] value) {
             this.dataType = dataType;
             this.value = value;
+            this.containerValues.clear();
             return this;
         }
 
@@ -510,44 +828,67 @@ public class RSCPData {
         }
 
         /**
-         * Set the data type ({@link RSCPDataType#CONTAINER}) and a list of RSCPData as the value.
+         * <p>Set the data type ({@link RSCPDataType#CONTAINER}) and append a list of RSCPData to the value.</p>
+         * <p>The elements are encoded once, when {@link Builder#build()} is called.</p>
          * @param dataList A list of {@link RSCPData} instances.
          * @return The builder.
          */
         public Builder containerValues(List<RSCPData> dataList) {
             this.dataType = RSCPDataType.CONTAINER;
-            dataList.forEach(data -> appendBytes(data.getAsByteArray()));
+            this.containerValues.addAll(dataList);
 
             return this;
         }
 
         /**
-         * Set the data type ({@link RSCPDataType#CONTAINER}) and an instance of RSCPData as the value.
+         * <p>Set the data type ({@link RSCPDataType#CONTAINER}) and append an instance of RSCPData to the value.</p>
+         * <p>Can be called repeatedly to add the elements of a container one at a time. The elements are encoded once,
+         * into a value sized from their {@link RSCPData#getByteCount()}, when {@link Builder#build()} is called.</p>
          * @param value A {@link RSCPData} instance.
          * @return The builder.
          */
         public Builder containerValue(RSCPData value) {
-            return containerValues(Collections.singletonList(value));
+            this.dataType = RSCPDataType.CONTAINER;
+            this.containerValues.add(value);
+
+            return this;
         }
 
-        private void appendBytes(byte[] bytes) {
-            if (bytes == null || bytes.length < 1) {
-                return;
+        public RSCPData build() {
+            List<RSCPData> children = null;
+            if (!containerValues.isEmpty()) {
+                children = new ArrayList<>(containerValues);
+                boolean hasOtherValue = value != null && value.length > 0;
+                encodeContainerValues();
+                if (hasOtherValue) {
+                    children = null;
+                }
+            }
+            validate();
+            RSCPData data = new RSCPData(dataTag, dataTagId, dataType, value, 0, value.length);
+            if (children != null) {
+                // the children are known already, no need to decode them again later
+                data.containerData = Collections.unmodifiableList(children);
             }
+            return data;
+        }
+
+        private void encodeContainerValues() {
             int oldValueSize = (value != null) ? value.length : 0;
-            int newSize = bytes.length + oldValueSize;
-            byte[] newValue = new byte[newSize];
+            int newSize = oldValueSize;
+            for (RSCPData data : containerValues) {
+                newSize += data.getByteCount();
+            }
 
+            ByteBuffer byteBuffer = ByteBuffer.allocate(newSize);
             if (value != null) {
-                System.arraycopy(value, 0, newValue, 0, oldValueSize);
+                byteBuffer.put(value);
             }
-            System.arraycopy(bytes, 0, newValue, oldValueSize, bytes.length);
-            this.value = newValue;
-        }
-
-        public RSCPData build() {
-            validate();
-            return new RSCPData(dataTag, dataType, value);
+            for (RSCPData data : containerValues) {
+                data.writeTo(byteBuffer);
+            }
+            this.value = byteBuffer.array();
+            this.containerValues.clear();
         }
 
         private ByteBuffer getLittleEndianByteBuffer(int capacity) {
@@ -555,16 +896,24 @@ public class RSCPData {
         }
 
         private void validate() {
+            if (value == null) {
+                validate(dataTag, dataType, -1);
+            } else {
+                validate(dataTag, dataType, value.length);
+            }
+        }
+
+        private static void validate(RSCPTag dataTag, RSCPDataType dataType, int valueLength) {
             if (dataTag == null) {
                 throw new IllegalStateException("Tag value is required.");
             }
             if (dataType == null) {
                 throw new IllegalStateException("DataType value is required.");
             }
-            if (value == null) {
+            if (valueLength < 0) {
                 throw new IllegalStateException("Data must not be null.");
             }
-            if (!NONE.equals(dataType) && !CONTAINER.equals(dataType) && value.length == 0) {
+            if (!NONE.equals(dataType) && !CONTAINER.equals(dataType) && valueLength == 0) {
                 throw new IllegalStateException("Data must not be empty.");
             }
         }
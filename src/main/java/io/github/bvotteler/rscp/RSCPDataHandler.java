@@ -0,0 +1,128 @@
+package io.github.bvotteler.rscp;
+
+/**
+ * <p>Callbacks for {@link RSCPEventDecoder}, one per decoded element.</p>
+ * <p>All methods have empty defaults, so a handler only needs to implement the callbacks it is interested in.
+ * Integral values are reported through {@link RSCPDataHandler#onInt(RSCPTag, int)} if they fit into an int,
+ * which defaults to {@link RSCPDataHandler#onLong(RSCPTag, long)}. Likewise, {@link RSCPDataHandler#onFloat(RSCPTag, float)}
+ * defaults to {@link RSCPDataHandler#onDouble(RSCPTag, double)}.</p>
+ * <p>Tags that are not known to {@link RSCPTag} are reported as {@link RSCPTag#UNKNOWN}, announced by a call to
+ * {@link RSCPDataHandler#onUnknownTag(int, RSCPDataType)} with their raw tag id.</p>
+ */
+public interface RSCPDataHandler {
+    /**
+     * Called for the header of each decoded frame, before its data.
+     * @param epochSeconds The frame timestamp, in seconds since 1970-01-01T00:00:00Z.
+     * @param nanos The nanoseconds elapsed since {@code epochSeconds}.
+     */
+    default void onFrameStart(long epochSeconds, int nanos) {
+    }
+
+    /**
+     * <p>Called right before an element whose tag id is not known to {@link RSCPTag} is reported, e.g. to tell unknown
+     * elements apart or to forward them.</p>
+     * <p>The element follows with {@link RSCPTag#UNKNOWN} as its tag, through the callback for its data type.</p>
+     * @param tagId The raw tag id of the element.
+     * @param dataType The data type of the element.
+     */
+    default void onUnknownTag(int tagId, RSCPDataType dataType) {
+    }
+
+    /**
+     * Called when a {@link RSCPDataType#CONTAINER} element starts.
+     * @param tag The tag of the container.
+     * @return {@code true} to decode the elements of the container, {@code false} to skip the container without decoding it.
+     */
+    default boolean onContainerStart(RSCPTag tag) {
+        return true;
+    }
+
+    /**
+     * Called after the last element of a container that was not skipped.
+     * @param tag The tag of the container.
+     */
+    default void onContainerEnd(RSCPTag tag) {
+    }
+
+    /**
+     * Called for {@link RSCPDataType#BOOL} elements.
+     * @param tag The tag of the element.
+     * @param value The value.
+     */
+    default void onBool(RSCPTag tag, boolean value) {
+    }
+
+    /**
+     * Called for {@link RSCPDataType#CHAR8}, {@link RSCPDataType#UCHAR8}, {@link RSCPDataType#INT16},
+     * {@link RSCPDataType#UINT16} and {@link RSCPDataType#INT32} elements.
+     * Signed data types are sign extended, unsigned data types are zero extended.
+     * @param tag The tag of the element.
+     * @param value The value.
+     */
+    default void onInt(RSCPTag tag, int value) {
+        onLong(tag, value);
+    }
+
+    /**
+     * Called for {@link RSCPDataType#UINT32}, {@link RSCPDataType#INT64} and {@link RSCPDataType#UINT64} elements,
+     * and by default for all elements reported through {@link RSCPDataHandler#onInt(RSCPTag, int)}.
+     * @param tag The tag of the element.
+     * @param value The value.
+     */
+    default void onLong(RSCPTag tag, long value) {
+    }
+
+    /**
+     * Called for {@link RSCPDataType#FLOAT32} elements.
+     * @param tag The tag of the element.
+     * @param value The value.
+     */
+    default void onFloat(RSCPTag tag, float value) {
+        onDouble(tag, value);
+    }
+
+    /**
+     * Called for {@link RSCPDataType#DOUBLE64} elements, and by default for {@link RSCPDataType#FLOAT32} elements.
+     * @param tag The tag of the element.
+     * @param value The value.
+     */
+    default void onDouble(RSCPTag tag, double value) {
+    }
+
+    /**
+     * Called for {@link RSCPDataType#TIMESTAMP} elements.
+     * @param tag The tag of the element.
+     * @param seconds The seconds part of the value.
+     * @param nanos The nanoseconds part of the value.
+     */
+    default void onTimestamp(RSCPTag tag, long seconds, int nanos) {
+    }
+
+    /**
+     * Called for {@link RSCPDataType#ERROR} elements.
+     * @param tag The tag of the element.
+     * @param errorCode The error code sent by the server.
+     */
+    default void onError(RSCPTag tag, int errorCode) {
+    }
+
+    /**
+     * Called for {@link RSCPDataType#NONE} elements.
+     * @param tag The tag of the element.
+     */
+    default void onNone(RSCPTag tag) {
+    }
+
+    /**
+     * <p>Called for all other elements, e.g. {@link RSCPDataType#STRING}, {@link RSCPDataType#BITFIELD} and
+     * {@link RSCPDataType#BYTEARRAY}, and for elements whose value is too short for their data type.</p>
+     * <p>The value is only valid for the duration of the call, copy it if it is needed later.</p>
+     * @param tag The tag of the element.
+     * @param dataType The data type of the element.
+     * @param bytes The buffer holding the value.
+     * @param offset The position of the value within {@code bytes}.
+     * @param length The length of the value.
+     */
+    default void onBytes(RSCPTag tag, RSCPDataType dataType, byte[] bytes, int offset, int length) {
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.bvotteler.rscp;
+
+import io.github.bvotteler.rscp.util.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.github.bvotteler.rscp.RSCPData.*;
+
+/**
+ * <p>Event based decoder for raw RSCP frames and data.</p>
+ * <p>Instead of building a tree of {@link RSCPData} instances, the raw bytes are walked once and each element is
+ * reported to a {@link RSCPDataHandler}. No objects are created while decoding, and containers the handler is not
+ * interested in are skipped without being decoded.</p>
+ */
+public class RSCPEventDecoder {
+    private static final Logger logger = LoggerFactory.getLogger(RSCPEventDecoder.class);
+
+    private RSCPEventDecoder() {
+    }
+
+    /**
+     * Decode a complete frame, typically a decrypted response from an E3DC server.
+     * @param bytes The raw frame.
+     * @param handler The handler to report the frame and its elements to.
+     * @throws IllegalArgumentException If the provided bytes are not a frame.
+     */
+    public static void decodeFrame(byte[] bytes, RSCPDataHandler handler) {
+        RSCPFrame.validateBytesCanBeFrameElseThrow(bytes);
+
+        handler.onFrameStart(ByteUtils.longFromLittleEndianBytes(bytes, RSCPFrame.offsetTsSeconds),
+                ByteUtils.intFromLittleEndianBytes(bytes, RSCPFrame.offsetTsNanoSeconds));
+        int dataLength = ByteUtils.unsignedShortFromLittleEndianBytes(bytes, RSCPFrame.offsetLength);
+        decodeData(bytes, RSCPFrame.offsetData, dataLength, handler);
+    }
+
+    /**
+     * <p>Decode a section of raw data, e.g. the data section of a frame or the value of a container.</p>
+     * <p>If the section ends in a truncated element, decoding stops after the elements read up to that point.</p>
+     * @param bytes Raw bytes.
+     * @param offset Position of the first byte of the first element within {@code bytes}.
+     * @param length Number of bytes to read, starting at {@code offset}.
+     * @param handler The handler to report the elements to.
+     */
+    public static void decodeData(byte[] bytes, int offset, int length, RSCPDataHandler handler) {
+        if (offset < 0 || offset + length > bytes.length) {
+            throw new IllegalArgumentException("Offset and length exceed the bounds of the byte array.");
+        }
+
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            if (end - position < offsetData) {
+                logger.warn("Not enough bytes left to form another RSCPData instance (data truncated?)");
+                return;
+            }
+
+            int tagId = ByteUtils.intFromLittleEndianBytes(bytes, position + offsetDataTag);
+            RSCPTag tag = RSCPTag.fromId(tagId);
+            boolean unknownTag = tag == null;
+            if (unknownTag) {
+                logUnknownTag(tagId);
+                tag = RSCPTag.UNKNOWN;
+            }
+            RSCPDataType dataType = RSCPDataType.getDataTypeForBytes(bytes[position + offsetDataType]);
+            int dataLength = ByteUtils.unsignedShortFromLittleEndianBytes(bytes, position + offsetDataLength);
+            int valueOffset = position + offsetData;
+
+            if (end - valueOffset < dataLength) {
+                logger.warn("Not enough bytes in data section to form complete RSCPValue instance (data truncated?)");
+                return;
+            }
+
+            if (unknownTag && dataType != null) {
+                handler.onUnknownTag(tagId, dataType);
+            }
+            decodeValue(tag, dataType, bytes, valueOffset, dataLength, handler);
+            position = valueOffset + dataLength;
+        }
+    }
+
+    static void decodeValue(RSCPTag tag, RSCPDataType dataType, byte[] bytes, int offset, int length, RSCPDataHandler handler) {
+        if (dataType == null) {
+            throw new IllegalStateException("DataType value is required.");
+        }
+
+        switch (dataType) {
+            case CONTAINER:
+                if (handler.onContainerStart(tag)) {
+                    decodeData(bytes, offset, length, handler);
+                    handler.onContainerEnd(tag);
+                }
+                return;
+            case NONE:
+                handler.onNone(tag);
+                return;
+            case BOOL:
+                if (length >= 1) {
+                    handler.onBool(tag, bytes[offset] != 0);
+                    return;
+                }
+                break;
+            case CHAR8:
+            case UCHAR8:
+            case INT16:
+            case UINT16:
+            case INT32:
+                if (length >= primitiveSize(dataType)) {
+                    handler.onInt(tag, (int) readIntegral(dataType, bytes, offset));
+                    return;
+                }
+                break;
+            case UINT32:
+            case INT64:
+            case UINT64:
+                if (length >= primitiveSize(dataType)) {
+                    handler.onLong(tag, readIntegral(dataType, bytes, offset));
+                    return;
+                }
+                break;
+            case FLOAT32:
+                if (length >= Float.BYTES) {
+                    handler.onFloat(tag, Float.intBitsToFloat(ByteUtils.intFromLittleEndianBytes(bytes, offset)));
+                    return;
+                }
+                break;
+            case DOUBLE64:
+                if (length >= Double.BYTES) {
+                    handler.onDouble(tag, Double.longBitsToDouble(ByteUtils.longFromLittleEndianBytes(bytes, offset)));
+                    return;
+                }
+                break;
+            case TIMESTAMP:
+                if (length >= RSCPFrame.sizeTsSeconds + RSCPFrame.sizeTsNanoSeconds) {
+                    handler.onTimestamp(tag, ByteUtils.longFromLittleEndianBytes(bytes, offset),
+                            ByteUtils.intFromLittleEndianBytes(bytes, offset + RSCPFrame.sizeTsSeconds));
+                    return;
+                }
+                break;
+            case ERROR:
+                if (length >= Integer.BYTES) {
+                    handler.onError(tag, ByteUtils.intFromLittleEndianBytes(bytes, offset));
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        handler.onBytes(tag, dataType, bytes, offset, length);
+    }
+}
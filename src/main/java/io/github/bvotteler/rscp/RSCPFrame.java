@@ -2,6 +2,7 @@ package io.github.bvotteler.rscp;
 
 import io.github.bvotteler.rscp.util.ByteUtils;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.time.Instant;
@@ -90,34 +91,46 @@ public class RSCPFrame {
      * @return Byte array ready to be encrypted and sent.
      */
     public byte[] getAsByteArray() {
+        byte[] bytes = new byte[getFrameByteCount()];
+        writeTo(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * <p>Write the frame content into the provided buffer, starting at its current position.
+     * Will calculate and append checksum CRC if needed.</p>
+     * <p>Header, data and checksum are written in a single pass, without intermediate arrays.
+     * The position of the buffer is advanced by {@link RSCPFrame#getFrameByteCount()}, its byte order is left unchanged.</p>
+     *
+     * @param buffer The buffer to write to, heap or direct.
+     * @return The number of bytes written.
+     * @throws java.nio.BufferOverflowException If the buffer has less than {@link RSCPFrame#getFrameByteCount()} bytes remaining.
+     */
+    public int writeTo(ByteBuffer buffer) {
+        int frameByteCount = getFrameByteCount();
+        if (buffer.remaining() < frameByteCount) {
+            throw new BufferOverflowException();
+        }
 
-        // calculate size needed
-        int sizeNeeded = getFrameByteCount();
-
-        ByteBuffer byteBuffer = ByteBuffer.allocate(sizeNeeded).order(ByteOrder.LITTLE_ENDIAN);
-        byteBuffer.put(magicBytes);
-        byteBuffer.put(controlBytes);
-        byteBuffer.putLong(timestamp.getEpochSecond());
-        byteBuffer.putInt(timestamp.getNano());
-        // skip length, coming back to it, move cursor to where the data block begins
-        byteBuffer.position(offsetData);
-        int offsetEndOfData = offsetData;
+        int start = buffer.position();
+        ByteOrder originalOrder = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(magicBytes);
+        buffer.put(controlBytes);
+        buffer.putLong(timestamp.getEpochSecond());
+        buffer.putInt(timestamp.getNano());
+        buffer.putShort((short) getDataByteCount());
         for (RSCPData value : data) {
-            int byteSize = value.getByteCount();
-            byteBuffer.put(value.getAsByteArray());
-            offsetEndOfData += byteSize; // move offset along
+            value.writeTo(buffer);
         }
-        // set length now that we know it
-        short dataByteCount = (short) (offsetEndOfData - offsetData);
-        byteBuffer.putShort(offsetLength, dataByteCount);
 
         if (isChecksumBitSet()) {
-            byte[] data = byteBuffer.array();
-            int checksum = ByteUtils.calculateCRC32Checksum(data, 0, offsetEndOfData);
-            byteBuffer.putInt(offsetEndOfData, checksum);
+            int checksum = ByteUtils.calculateCRC32Checksum(buffer, start, buffer.position() - start);
+            buffer.putInt(checksum);
         }
+        buffer.order(originalOrder);
 
-        return byteBuffer.array();
+        return frameByteCount;
     }
 
     @Override
@@ -135,28 +148,50 @@ public class RSCPFrame {
         return result;
     }
 
-    private static void validateBytesCanBeFrameElseThrow(byte[] bytes) {
+    static void validateBytesCanBeFrameElseThrow(byte[] bytes) {
         if (bytes == null || bytes.length < offsetData) {
             throw new IllegalArgumentException("Byte array is null, or too small to be a frame.");
         }
 
-        byte[] frameMagicBytes = ByteUtils.copyBytesIntoNewArray(bytes, offsetMagic, sizeMagic);
-        if (!Arrays.equals(frameMagicBytes, magicBytes)) {
+        if (!ByteUtils.rangeEquals(bytes, offsetMagic, magicBytes, 0, sizeMagic)) {
             throw new IllegalArgumentException("Byte array does not contain magic bytes.");
         }
 
-        byte[] frameLengthBytes = ByteUtils.copyBytesIntoNewArray(bytes, offsetLength, sizeLength);
-        short frameDataLength = ByteUtils.bytesToShort(reverseByteArray(frameLengthBytes));
-        if (frameDataLength < 0) {
-            throw new IllegalArgumentException("Frame data length value is less than zero.");
+        int frameDataLength = ByteUtils.unsignedShortFromLittleEndianBytes(bytes, offsetLength);
+        if (bytes.length < offsetData + frameDataLength) {
+            throw new IllegalArgumentException("Byte array is too small to hold the frame data length.");
+        }
+    }
+
+    /**
+     * <p>Read the size of an entire frame from its header, e.g. to find out how many more bytes of a frame have to be received.</p>
+     * @param bytes Raw bytes holding at least the {@link RSCPFrame#offsetData} header bytes of a frame, starting at {@code offset}.
+     * @param offset Position of the first byte of the frame within {@code bytes}.
+     * @return Byte count of header, data and checksum (if the checksum bit is set).
+     * @throws IllegalArgumentException If the bytes are too short or do not start with the magic bytes.
+     */
+    public static int readFrameByteCount(byte[] bytes, int offset) {
+        if (bytes == null || bytes.length - offset < offsetData) {
+            throw new IllegalArgumentException("Byte array is null, or too small to hold a frame header.");
+        }
+        if (!ByteUtils.rangeEquals(bytes, offset + offsetMagic, magicBytes, 0, sizeMagic)) {
+            throw new IllegalArgumentException("Byte array does not contain magic bytes.");
         }
+
+        boolean checksum = (bytes[offset + offsetCtrl + 1] >> 4 & 1) == 1;
+        int dataLength = ByteUtils.unsignedShortFromLittleEndianBytes(bytes, offset + offsetLength);
+        return offsetData + dataLength + (checksum ? sizeCRC : 0);
     }
 
-    private int getFrameByteCount() {
+    /**
+     * Get the size of the entire frame in bytes, as written by {@link RSCPFrame#writeTo(ByteBuffer)}.
+     * @return Byte count of header, data and checksum (if enabled).
+     */
+    public int getFrameByteCount() {
         return offsetData + getDataByteCount() + (isChecksumBitSet() ? sizeCRC : 0);
     }
 
-    private boolean isChecksumBitSet() {
+    boolean isChecksumBitSet() {
         // grab first ctrl byte
         byte ctrlPart1 = this.controlBytes[1];
         // the 4th least significant bit is the CRC flag
@@ -188,6 +223,22 @@ public class RSCPFrame {
          * @return A constructed {@link RSCPFrame}. Throws {@link IllegalArgumentException} if the provided bytes are misformed. Throws {@link IllegalStateException} when validation during construction fails.
          */
         public RSCPFrame buildFromRawBytes(byte[] bytes) {
+            return decodeRawBytes(bytes, false);
+        }
+
+        /**
+         * <p>Read in a frame from raw bytes without copying the values of its data.</p>
+         * <p>The {@link RSCPData} of the resulting frame are read-only views into {@code bytes}
+         * (see {@link RSCPData.Builder#buildViewsFromRawBytes(byte[], int, int)}),
+         * so the array must not be modified or reused while the frame is in use.</p>
+         * @param bytes Raw bytes, typically a decrypted frame received from an E3DC server.
+         * @return A constructed {@link RSCPFrame}. Throws {@link IllegalArgumentException} if the provided bytes are misformed. Throws {@link IllegalStateException} when validation during construction fails.
+         */
+        public RSCPFrame buildViewFromRawBytes(byte[] bytes) {
+            return decodeRawBytes(bytes, true);
+        }
+
+        private RSCPFrame decodeRawBytes(byte[] bytes, boolean asViews) {
             validateBytesCanBeFrameElseThrow(bytes);
             ByteBuffer byteBuffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
             byteBuffer.rewind();
@@ -200,13 +251,11 @@ public class RSCPFrame {
             int nanos = byteBuffer.getInt(offsetTsNanoSeconds);
             this.timestamp = Instant.ofEpochSecond(epochSecs, nanos);
 
-            short dataLength = byteBuffer.getShort(offsetLength);
-
-            byte[] data = new byte[dataLength];
-            byteBuffer.position(offsetData);
-            byteBuffer.get(data, 0, dataLength);
+            int dataLength = Short.toUnsignedInt(byteBuffer.getShort(offsetLength));
 
-            this.dataList = RSCPData.builder().buildFromRawBytes(data);
+            this.dataList = asViews
+                    ? RSCPData.builder().buildViewsFromRawBytes(bytes, offsetData, dataLength)
+                    : RSCPData.builder().buildFromRawBytes(bytes, offsetData, dataLength);
 
             return build();
         }
@@ -0,0 +1,96 @@
+package io.github.bvotteler.rscp;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+import static io.github.bvotteler.rscp.RSCPFrame.*;
+
+/**
+ * <p>A pre-encoded {@link RSCPFrame} that can be sent repeatedly with a new timestamp.</p>
+ * <p>The frame is encoded once when the template is created. Each call to {@link RSCPFrameTemplate#encode(long, int)}
+ * only patches the timestamp and the checksum CRC into the same byte array, so encoding a frame of the same shape
+ * again and again does not allocate.</p>
+ * <p>Instances are not thread-safe: the array returned by {@code encode} is reused by the next call.
+ * Use one template per sending thread or connection.</p>
+ */
+public class RSCPFrameTemplate {
+    private final byte[] frame;
+    private final int offsetCRC;
+    private final boolean checksum;
+    private final CRC32 crc32 = new CRC32();
+
+    RSCPFrameTemplate(byte[] frame, boolean checksum) {
+        this.frame = frame;
+        this.checksum = checksum;
+        this.offsetCRC = frame.length - (checksum ? sizeCRC : 0);
+    }
+
+    /**
+     * Create a template from a frame. The timestamp of the frame is only used until the first call to {@code encode}.
+     * @param frame The frame to pre-encode.
+     * @return A template with the encoded frame.
+     */
+    public static RSCPFrameTemplate fromFrame(RSCPFrame frame) {
+        return new RSCPFrameTemplate(frame.getAsByteArray(), frame.isChecksumBitSet());
+    }
+
+    /**
+     * Get the size of the encoded frame in bytes.
+     * @return Byte count of header, data and checksum (if enabled).
+     */
+    public int getFrameByteCount() {
+        return frame.length;
+    }
+
+    /**
+     * Patch a new timestamp (and checksum CRC) into the encoded frame.
+     * @param epochSeconds The timestamp, in seconds since 1970-01-01T00:00:00Z.
+     * @param nanos The nanoseconds elapsed since {@code epochSeconds}.
+     * @return The encoded frame, ready to be encrypted and sent. The same array is returned and overwritten on every call.
+     */
+    public byte[] encode(long epochSeconds, int nanos) {
+        putLittleEndian(epochSeconds, offsetTsSeconds, sizeTsSeconds);
+        putLittleEndian(nanos, offsetTsNanoSeconds, sizeTsNanoSeconds);
+
+        if (checksum) {
+            crc32.reset();
+            crc32.update(frame, 0, offsetCRC);
+            putLittleEndian(crc32.getValue(), offsetCRC, sizeCRC);
+        }
+        return frame;
+    }
+
+    /**
+     * Patch a new timestamp (and checksum CRC) into the encoded frame.
+     * @param timestamp The timestamp to set.
+     * @return The encoded frame, ready to be encrypted and sent. The same array is returned and overwritten on every call.
+     */
+    public byte[] encode(Instant timestamp) {
+        return encode(timestamp.getEpochSecond(), timestamp.getNano());
+    }
+
+    /**
+     * Patch a new timestamp (and checksum CRC) into the encoded frame and write it into the provided buffer,
+     * starting at its current position.
+     * @param buffer The buffer to write to, heap or direct.
+     * @param epochSeconds The timestamp, in seconds since 1970-01-01T00:00:00Z.
+     * @param nanos The nanoseconds elapsed since {@code epochSeconds}.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException If the buffer has less than {@link RSCPFrameTemplate#getFrameByteCount()} bytes remaining.
+     */
+    public int writeTo(ByteBuffer buffer, long epochSeconds, int nanos) {
+        if (buffer.remaining() < frame.length) {
+            throw new BufferOverflowException();
+        }
+        buffer.put(encode(epochSeconds, nanos));
+        return frame.length;
+    }
+
+    private void putLittleEndian(long value, int offset, int size) {
+        for (int i = 0; i < size; i++) {
+            frame[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+}
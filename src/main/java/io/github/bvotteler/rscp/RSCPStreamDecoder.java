@@ -0,0 +1,288 @@
+package io.github.bvotteler.rscp;
+
+import io.github.bvotteler.rscp.util.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static io.github.bvotteler.rscp.RSCPData.logUnknownTag;
+import static io.github.bvotteler.rscp.RSCPData.offsetDataLength;
+import static io.github.bvotteler.rscp.RSCPData.offsetDataTag;
+import static io.github.bvotteler.rscp.RSCPData.offsetDataType;
+
+/**
+ * <p>Incremental version of {@link RSCPEventDecoder}, for frames arriving in pieces.</p>
+ * <p>Bytes of one or more consecutive frames are passed to {@link RSCPStreamDecoder#feed(byte[], int, int)} in
+ * chunks of any size, e.g. as they are received and decrypted. Each element is reported to the handler as soon as it
+ * is complete, so decoding overlaps with receiving the rest of the frame. Elements are reported exactly like
+ * {@link RSCPEventDecoder#decodeFrame(byte[], RSCPDataHandler)} would, and the checksum is not verified either.</p>
+ * <p>Only the current element header, and the value of an element split across chunks, are buffered. Memory use
+ * therefore depends on the largest single value, not on the frame size. Instances are not thread-safe.</p>
+ */
+public class RSCPStreamDecoder {
+    private static final Logger logger = LoggerFactory.getLogger(RSCPStreamDecoder.class);
+    private static final int elementHeaderSize = RSCPData.offsetData;
+
+    private enum State {FRAME_HEADER, ELEMENT_HEADER, VALUE, SKIP, CHECKSUM}
+
+    private final RSCPDataHandler handler;
+    // holds a frame header or an element header until complete
+    private final byte[] headerBuffer = new byte[RSCPFrame.offsetData];
+    // holds a value split across chunks
+    private byte[] valueBuffer = new byte[256];
+    private int buffered;
+
+    private State state = State.FRAME_HEADER;
+    // positions are relative to the start of the frame data
+    private int position;
+    private int dataLength;
+    private int checksumLength;
+    private int skipEnd;
+
+    private RSCPTag elementTag;
+    private RSCPDataType elementType;
+    private int elementLength;
+
+    // ends and tags of the containers that are being decoded, innermost last
+    private int[] containerEnds = new int[8];
+    private RSCPTag[] containerTags = new RSCPTag[8];
+    private int depth;
+
+    private long frameCount;
+
+    public RSCPStreamDecoder(RSCPDataHandler handler) {
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler must not be null.");
+        }
+        this.handler = handler;
+    }
+
+    /**
+     * Decode the next bytes of the stream.
+     * @param bytes Raw bytes.
+     * @param offset Position of the first byte to decode within {@code bytes}.
+     * @param length Number of bytes to decode, starting at {@code offset}.
+     * @throws IllegalArgumentException If a frame header does not start with the magic bytes.
+     */
+    public void feed(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IllegalArgumentException("Offset and length exceed the bounds of the byte array.");
+        }
+
+        int end = offset + length;
+        while (offset < end) {
+            int available = end - offset;
+            switch (state) {
+                case FRAME_HEADER: {
+                    int count = Math.min(available, headerBuffer.length - buffered);
+                    System.arraycopy(bytes, offset, headerBuffer, buffered, count);
+                    buffered += count;
+                    offset += count;
+                    if (buffered == headerBuffer.length) {
+                        buffered = 0;
+                        startFrame();
+                    }
+                    break;
+                }
+                case ELEMENT_HEADER: {
+                    int count = Math.min(available, elementHeaderSize - buffered);
+                    System.arraycopy(bytes, offset, headerBuffer, buffered, count);
+                    buffered += count;
+                    offset += count;
+                    position += count;
+                    if (buffered == elementHeaderSize) {
+                        buffered = 0;
+                        startElement();
+                    }
+                    break;
+                }
+                case VALUE: {
+                    if (buffered == 0 && available >= elementLength) {
+                        // the whole value is at hand, decode it without copying
+                        RSCPEventDecoder.decodeValue(elementTag, elementType, bytes, offset, elementLength, handler);
+                        offset += elementLength;
+                        position += elementLength;
+                        endElement();
+                        break;
+                    }
+                    int count = Math.min(available, elementLength - buffered);
+                    System.arraycopy(bytes, offset, valueBuffer, buffered, count);
+                    buffered += count;
+                    offset += count;
+                    position += count;
+                    if (buffered == elementLength) {
+                        buffered = 0;
+                        RSCPEventDecoder.decodeValue(elementTag, elementType, valueBuffer, 0, elementLength, handler);
+                        endElement();
+                    }
+                    break;
+                }
+                case SKIP: {
+                    int count = Math.min(available, skipEnd - position);
+                    offset += count;
+                    position += count;
+                    if (position == skipEnd) {
+                        endElement();
+                    }
+                    break;
+                }
+                case CHECKSUM: {
+                    int count = Math.min(available, checksumLength);
+                    offset += count;
+                    checksumLength -= count;
+                    if (checksumLength == 0) {
+                        endFrame();
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unexpected state " + state);
+            }
+        }
+    }
+
+    /**
+     * Check whether all frames fed so far are complete, i.e. the next byte starts a new frame.
+     * @return {@code true} if no frame is partially decoded.
+     */
+    public boolean isAtFrameBoundary() {
+        return state == State.FRAME_HEADER && buffered == 0;
+    }
+
+    /**
+     * Get the number of frames decoded completely.
+     * @return The frame count.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Discard a partially decoded frame, e.g. after a connection dropped, so the next byte starts a new frame.
+     */
+    public void reset() {
+        state = State.FRAME_HEADER;
+        buffered = 0;
+        depth = 0;
+        Arrays.fill(containerTags, 0, containerTags.length, null);
+    }
+
+    private void startFrame() {
+        int frameByteCount = RSCPFrame.readFrameByteCount(headerBuffer, 0);
+        dataLength = ByteUtils.unsignedShortFromLittleEndianBytes(headerBuffer, RSCPFrame.offsetLength);
+        checksumLength = frameByteCount - RSCPFrame.offsetData - dataLength;
+        position = 0;
+        depth = 0;
+        handler.onFrameStart(ByteUtils.longFromLittleEndianBytes(headerBuffer, RSCPFrame.offsetTsSeconds),
+                ByteUtils.intFromLittleEndianBytes(headerBuffer, RSCPFrame.offsetTsNanoSeconds));
+        nextElement();
+    }
+
+    private void startElement() {
+        int tagId = ByteUtils.intFromLittleEndianBytes(headerBuffer, offsetDataTag);
+        RSCPTag tag = RSCPTag.fromId(tagId);
+        boolean unknownTag = tag == null;
+        if (unknownTag) {
+            logUnknownTag(tagId);
+            tag = RSCPTag.UNKNOWN;
+        }
+        RSCPDataType dataType = RSCPDataType.getDataTypeForBytes(headerBuffer[offsetDataType]);
+        int length = ByteUtils.unsignedShortFromLittleEndianBytes(headerBuffer, offsetDataLength);
+
+        int sectionEnd = getSectionEnd();
+        if (sectionEnd - position < length) {
+            logger.warn("Not enough bytes in data section to form complete RSCPValue instance (data truncated?)");
+            skipTo(sectionEnd);
+            return;
+        }
+
+        if (dataType == null) {
+            throw new IllegalStateException("DataType value is required.");
+        }
+        if (unknownTag) {
+            handler.onUnknownTag(tagId, dataType);
+        }
+        if (dataType == RSCPDataType.CONTAINER) {
+            if (handler.onContainerStart(tag)) {
+                pushContainer(position + length, tag);
+                nextElement();
+            } else {
+                skipTo(position + length);
+            }
+            return;
+        }
+
+        elementTag = tag;
+        elementType = dataType;
+        elementLength = length;
+        if (length == 0) {
+            RSCPEventDecoder.decodeValue(tag, dataType, valueBuffer, 0, 0, handler);
+            endElement();
+            return;
+        }
+        if (valueBuffer.length < length) {
+            valueBuffer = new byte[Math.max(length, valueBuffer.length * 2)];
+        }
+        state = State.VALUE;
+    }
+
+    /**
+     * Close the containers ending at the current position, then continue with the next element or frame.
+     */
+    private void endElement() {
+        while (depth > 0 && position == containerEnds[depth - 1]) {
+            depth--;
+            RSCPTag tag = containerTags[depth];
+            containerTags[depth] = null;
+            handler.onContainerEnd(tag);
+        }
+        nextElement();
+    }
+
+    private void nextElement() {
+        int sectionEnd = getSectionEnd();
+        if (position == sectionEnd) {
+            if (depth > 0) {
+                // an empty container
+                endElement();
+            } else if (checksumLength > 0) {
+                state = State.CHECKSUM;
+            } else {
+                endFrame();
+            }
+        } else if (sectionEnd - position < elementHeaderSize) {
+            logger.warn("Not enough bytes left to form another RSCPData instance (data truncated?)");
+            skipTo(sectionEnd);
+        } else {
+            state = State.ELEMENT_HEADER;
+        }
+    }
+
+    private void endFrame() {
+        frameCount++;
+        state = State.FRAME_HEADER;
+    }
+
+    private void skipTo(int end) {
+        skipEnd = end;
+        state = State.SKIP;
+        if (position == skipEnd) {
+            endElement();
+        }
+    }
+
+    private int getSectionEnd() {
+        return depth > 0 ? containerEnds[depth - 1] : dataLength;
+    }
+
+    private void pushContainer(int end, RSCPTag tag) {
+        if (depth == containerEnds.length) {
+            containerEnds = Arrays.copyOf(containerEnds, depth * 2);
+            containerTags = Arrays.copyOf(containerTags, depth * 2);
+        }
+        containerEnds[depth] = end;
+        containerTags[depth] = tag;
+        depth++;
+    }
+}
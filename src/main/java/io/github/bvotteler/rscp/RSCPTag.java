@@ -948,16 +948,32 @@ public enum RSCPTag {
 
     private static final Map<String, RSCPTag> HEX_STRING_TO_TAG = new HashMap<>();
 
+    // open addressing table (linear probing) from tag id to tag, kept at most half full
+    private static final int ID_TABLE_BITS = 32 - Integer.numberOfLeadingZeros(values().length * 2 - 1);
+    private static final int[] ID_TABLE_KEYS = new int[1 << ID_TABLE_BITS];
+    private static final RSCPTag[] ID_TABLE_TAGS = new RSCPTag[1 << ID_TABLE_BITS];
+
     static {
         for (RSCPTag tag : values()) {
-            HEX_STRING_TO_TAG.put(ByteUtils.byteArrayToHexString(tag.getValueAsBytes()), tag);
+            HEX_STRING_TO_TAG.put(ByteUtils.byteArrayToHexString(tag.bytes), tag);
+
+            int slot = idTableSlot(tag.id);
+            while (ID_TABLE_TAGS[slot] != null && ID_TABLE_KEYS[slot] != tag.id) {
+                slot = (slot + 1) & (ID_TABLE_KEYS.length - 1);
+            }
+            ID_TABLE_KEYS[slot] = tag.id;
+            ID_TABLE_TAGS[slot] = tag;
         }
     }
 
     private final String hexString;
+    private final byte[] bytes;
+    private final int id;
 
     RSCPTag(String hexString) {
         this.hexString = hexString;
+        this.bytes = ByteUtils.hexStringToByteArray(hexString);
+        this.id = (int) Long.parseLong(hexString, 16);
     }
 
     public static RSCPTag getTagForHexString(String hexString) {
@@ -965,14 +981,47 @@ public enum RSCPTag {
     }
 
     public static RSCPTag getTagForBytes(byte[] bytes) {
-        return HEX_STRING_TO_TAG.get(ByteUtils.byteArrayToHexString(bytes));
+        if (bytes == null || bytes.length != Integer.BYTES) {
+            return null;
+        }
+        return fromId((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF));
+    }
+
+    /**
+     * Look up a tag by its 32 bit id, e.g. {@code 0x01800001} for {@link RSCPTag#TAG_EMS_POWER_PV}.
+     * @param id The tag id, as read from the (little endian) tag field of a data element.
+     * @return The matching tag, or {@code null} if the id is not known.
+     */
+    public static RSCPTag fromId(int id) {
+        int slot = idTableSlot(id);
+        RSCPTag tag;
+        while ((tag = ID_TABLE_TAGS[slot]) != null) {
+            if (ID_TABLE_KEYS[slot] == id) {
+                return tag;
+            }
+            slot = (slot + 1) & (ID_TABLE_KEYS.length - 1);
+        }
+        return null;
+    }
+
+    private static int idTableSlot(int id) {
+        // fibonacci hashing, spreads the namespace byte and the tag number over the table
+        return (id * 0x9E3779B9) >>> (32 - ID_TABLE_BITS);
     }
 
     public byte[] getValueAsBytes() {
-        return ByteUtils.hexStringToByteArray(this.hexString);
+        return this.bytes.clone();
     }
 
     public String getValue() {
         return this.hexString;
     }
+
+    /**
+     * Get the 32 bit id of this tag.
+     * @return The id, e.g. {@code 0x01800001} for {@link RSCPTag#TAG_EMS_POWER_PV}.
+     */
+    public int getId() {
+        return this.id;
+    }
 }
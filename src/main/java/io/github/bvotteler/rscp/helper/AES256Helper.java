@@ -24,10 +24,162 @@
 
 package io.github.bvotteler.rscp.helper;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
 public interface AES256Helper {
+    /**
+     * The cipher block size in bytes. Encrypted messages are a whole number of blocks.
+     */
+    int blockSize = 32;
+
     void init(byte[] key, byte[] ivEnc, byte[] ivDec);
 
     byte[] encrypt(byte[] message);
 
     byte[] decrypt(byte[] encryptedMessage);
-}
\ No newline at end of file
+
+    /**
+     * Get the number of bytes {@link AES256Helper#encrypt(byte[])} produces for a message, including zero padding.
+     * @param messageLength The message length.
+     * @return The encrypted length, always at least one byte longer than the message.
+     */
+    static int getEncryptedLength(int messageLength) {
+        return (messageLength / blockSize + 1) * blockSize;
+    }
+
+    /**
+     * <p>Encrypt a message into a caller provided array, as {@link AES256Helper#encrypt(byte[])} would.</p>
+     * <p>Input and output may be the same array at the same offset, to encrypt in place.</p>
+     *
+     * @param in     The array holding the message.
+     * @param inOff  The offset of the message.
+     * @param len    The message length.
+     * @param out    The array to write to, with room for {@link AES256Helper#getEncryptedLength(int)} bytes.
+     * @param outOff The offset to write at.
+     * @return The number of bytes written.
+     */
+    default int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        int encryptedLength = getEncryptedLength(len);
+        if (out.length - outOff < encryptedLength) {
+            throw new BufferOverflowException();
+        }
+        byte[] message = new byte[len];
+        System.arraycopy(in, inOff, message, 0, len);
+        byte[] encrypted = encrypt(message);
+        System.arraycopy(encrypted, 0, out, outOff, encrypted.length);
+        return encrypted.length;
+    }
+
+    /**
+     * Encrypt a message into the start of a caller provided array.
+     * See {@link AES256Helper#encrypt(byte[], int, int, byte[], int)}.
+     *
+     * @param in  The array holding the message.
+     * @param off The offset of the message.
+     * @param len The message length.
+     * @param out The array to write to.
+     * @return The number of bytes written.
+     */
+    default int encrypt(byte[] in, int off, int len, byte[] out) {
+        return encrypt(in, off, len, out, 0);
+    }
+
+    /**
+     * <p>Decrypt whole cipher blocks into a caller provided array.</p>
+     * <p>Input and output may be the same array at the same offset, to decrypt in place. Like
+     * {@link AES256Helper#decrypt(byte[])}, the returned length excludes trailing zero bytes, but all {@code len}
+     * bytes are written, so the trailing zeros are in place as well. Callers that know the frame length can therefore
+     * decrypt a frame in several calls of whole blocks each.</p>
+     *
+     * @param in     The array holding the encrypted blocks.
+     * @param inOff  The offset of the encrypted blocks.
+     * @param len    The length of the encrypted blocks, a multiple of {@link AES256Helper#blockSize}.
+     * @param out    The array to write to, with room for {@code len} bytes.
+     * @param outOff The offset to write at.
+     * @return The decrypted length without trailing zero bytes.
+     */
+    default int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (out.length - outOff < len) {
+            throw new BufferOverflowException();
+        }
+        byte[] encrypted = new byte[len];
+        System.arraycopy(in, inOff, encrypted, 0, len);
+        byte[] decrypted = decrypt(encrypted);
+        System.arraycopy(decrypted, 0, out, outOff, decrypted.length);
+        for (int i = outOff + decrypted.length; i < outOff + len; i++) {
+            out[i] = 0;
+        }
+        return decrypted.length;
+    }
+
+    /**
+     * Decrypt whole cipher blocks into the start of a caller provided array.
+     * See {@link AES256Helper#decrypt(byte[], int, int, byte[], int)}.
+     *
+     * @param in  The array holding the encrypted blocks.
+     * @param off The offset of the encrypted blocks.
+     * @param len The length of the encrypted blocks.
+     * @param out The array to write to.
+     * @return The decrypted length without trailing zero bytes.
+     */
+    default int decrypt(byte[] in, int off, int len, byte[] out) {
+        return decrypt(in, off, len, out, 0);
+    }
+
+    /**
+     * Encrypt the remaining bytes of a buffer into another buffer, advancing both positions.
+     *
+     * @param src The message.
+     * @param dst The buffer to write to, with room for {@link AES256Helper#getEncryptedLength(int)} bytes.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException If {@code dst} is too small. Neither buffer is changed then.
+     */
+    default int encrypt(ByteBuffer src, ByteBuffer dst) {
+        int len = src.remaining();
+        int encryptedLength = getEncryptedLength(len);
+        if (dst.remaining() < encryptedLength) {
+            throw new BufferOverflowException();
+        }
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            encrypt(src.array(), src.arrayOffset() + src.position(), len, dst.array(), dst.arrayOffset() + dst.position());
+        } else {
+            byte[] buffer = new byte[encryptedLength];
+            src.duplicate().get(buffer, 0, len);
+            encrypt(buffer, 0, len, buffer, 0);
+            dst.duplicate().put(buffer);
+        }
+        src.position(src.limit());
+        dst.position(dst.position() + encryptedLength);
+        return encryptedLength;
+    }
+
+    /**
+     * Decrypt the remaining bytes of a buffer into another buffer, advancing both positions.
+     * See {@link AES256Helper#decrypt(byte[], int, int, byte[], int)}.
+     *
+     * @param src The encrypted blocks.
+     * @param dst The buffer to write to, with room for {@code src.remaining()} bytes. Its position is advanced by
+     *            the returned length, trailing zeros are written beyond it.
+     * @return The decrypted length without trailing zero bytes.
+     * @throws BufferOverflowException If {@code dst} is too small. Neither buffer is changed then.
+     */
+    default int decrypt(ByteBuffer src, ByteBuffer dst) {
+        int len = src.remaining();
+        if (dst.remaining() < len) {
+            throw new BufferOverflowException();
+        }
+        int decryptedLength;
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            decryptedLength = decrypt(src.array(), src.arrayOffset() + src.position(), len, dst.array(), dst.arrayOffset() + dst.position());
+        } else {
+            byte[] buffer = new byte[len];
+            src.duplicate().get(buffer);
+            decryptedLength = decrypt(buffer, 0, len, buffer, 0);
+            dst.duplicate().put(buffer);
+        }
+        src.position(src.limit());
+        dst.position(dst.position() + decryptedLength);
+        return decryptedLength;
+    }
+}
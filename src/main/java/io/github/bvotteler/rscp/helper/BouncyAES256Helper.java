@@ -24,25 +24,49 @@
 
 package io.github.bvotteler.rscp.helper;
 
-import org.bouncycastle.crypto.CipherParameters;
-import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.DataLengthException;
 import org.bouncycastle.crypto.engines.RijndaelEngine;
 import org.bouncycastle.crypto.modes.CBCBlockCipher;
-import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
-import org.bouncycastle.crypto.paddings.ZeroBytePadding;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.BufferOverflowException;
 import java.util.Arrays;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * <p>Encrypts and decrypts RSCP frames with Rijndael (256 bit block), CBC and zero padding.</p>
+ * <p>Both directions keep their CBC chain separately, so one thread may encrypt while another decrypts, e.g. a
+ * sender and a reader thread of one session, without any locking. Calls for the same direction must not overlap;
+ * overlapping calls would corrupt the chain and fail with an {@link IllegalStateException} instead.</p>
+ * <p>The IV state can be saved with {@link BouncyAES256Helper#snapshot()} and put back with
+ * {@link BouncyAES256Helper#restore(IvSnapshot)} between messages.</p>
+ */
 public class BouncyAES256Helper implements AES256Helper {
+    /**
+     * System property selecting the Rijndael block engine used by {@link BouncyAES256Helper#BouncyAES256Helper(String)}:
+     * {@value #engineBouncyCastle} (default) or {@value #engineTable}.
+     */
+    public static final String engineProperty = "io.github.bvotteler.rscp.rijndaelEngine";
+    /**
+     * Bouncy Castle's {@link RijndaelEngine}.
+     */
+    public static final String engineBouncyCastle = "bouncycastle";
+    /**
+     * The table based {@link Rijndael256Engine}.
+     */
+    public static final String engineTable = "table";
+
     private static final Logger logger = LoggerFactory.getLogger(BouncyAES256Helper.class.getSimpleName());
-    private final int messageBlockSize = 256;
-    private byte[] key;
-    private byte[] ivEnc;
-    private byte[] ivDec;
+    private static final int messageBlockSize = 256;
+    private final Supplier<BlockCipher> engineFactory;
+    // each direction has its own state, replaced as a whole by init
+    private volatile Direction encryption;
+    private volatile Direction decryption;
 
 //    public static BouncyAES256Helper createBouncyAES256Helper(String key) {
 //        BouncyAES256Helper bouncyAES256Helper = new BouncyAES256Helper();
@@ -51,10 +75,40 @@ public class BouncyAES256Helper implements AES256Helper {
 //    }
 
     public BouncyAES256Helper(String key) {
+        this(key, getEngineFactory(System.getProperty(engineProperty, engineBouncyCastle)));
+    }
+
+    /**
+     * Create a helper using the given Rijndael block engine.
+     *
+     * @param key           The RSCP (AES) password.
+     * @param engineFactory Creates uninitialized Rijndael engines with a 256 bit block, e.g. {@code Rijndael256Engine::new}.
+     */
+    public BouncyAES256Helper(String key, Supplier<BlockCipher> engineFactory) {
+        if (engineFactory == null) {
+            throw new IllegalArgumentException("Engine factory must not be null");
+        }
+        this.engineFactory = engineFactory;
         initializeFromKey(key);
     }
 
-    private  BouncyAES256Helper() {}
+    /**
+     * Get the factory for a Rijndael block engine by name.
+     *
+     * @param engineName {@value #engineBouncyCastle} or {@value #engineTable}.
+     * @return A factory creating engines with a 256 bit block.
+     * @throws IllegalArgumentException If the name is unknown.
+     */
+    public static Supplier<BlockCipher> getEngineFactory(String engineName) {
+        if (engineBouncyCastle.equalsIgnoreCase(engineName)) {
+            return () -> new RijndaelEngine(messageBlockSize);
+        }
+        if (engineTable.equalsIgnoreCase(engineName)) {
+            return Rijndael256Engine::new;
+        }
+        throw new IllegalArgumentException("Unknown Rijndael engine '" + engineName + "', expected '"
+                + engineBouncyCastle + "' or '" + engineTable + "'.");
+    }
 
     private void initializeFromKey(String key) {
         if (key == null) {
@@ -83,9 +137,8 @@ public class BouncyAES256Helper implements AES256Helper {
     }
 
     public void init(byte[] key, byte[] ivEnc, byte[] ivDec) {
-        this.key = null;
-        this.ivEnc = null;
-        this.ivDec = null;
+        this.encryption = null;
+        this.decryption = null;
         if (key.length != 32) {
             throw new IllegalArgumentException("Key has to be 32 bytes long.");
         }
@@ -96,87 +149,201 @@ public class BouncyAES256Helper implements AES256Helper {
         if (ivDec.length != 32)
             throw new IllegalArgumentException("IV has to be 32 bytes long.");
 
-        this.key = new byte[32];
-        System.arraycopy(key, 0, this.key, 0, key.length);
-
-        this.ivEnc = new byte[32];
-        System.arraycopy(ivEnc, 0, this.ivEnc, 0, ivEnc.length);
-
-        this.ivDec = new byte[32];
-        System.arraycopy(ivEnc, 0, this.ivDec, 0, ivDec.length);
+        // the key schedule is computed once here, the CBC ciphers then carry the IV from message to message
+        this.encryption = new Direction(true, engineFactory.get(), key, ivEnc);
+        this.decryption = new Direction(false, engineFactory.get(), key, ivDec);
     }
 
     public byte[] encrypt(byte[] message) {
-        if (this.key == null || this.ivEnc == null) {
+        byte[] encrypted = new byte[AES256Helper.getEncryptedLength(message.length)];
+        encrypt(message, 0, message.length, encrypted, 0);
+        return encrypted;
+    }
+
+    @Override
+    public int encrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        Direction encryption = this.encryption;
+        if (encryption == null) {
             throw new IllegalStateException("Both key and IV have to be defined prior to encryption.");
         }
 
+        // zero byte padding always adds a block, a message filling whole blocks gets a block of zeros
+        int fullBlocksLength = len - len % blockSize;
+        int encryptedLength = fullBlocksLength + blockSize;
+        if (out.length - outOff < encryptedLength) {
+            throw new BufferOverflowException();
+        }
+        encryption.acquire();
         try {
-            byte[] sessionKey = this.key;
-            byte[] iv = this.ivEnc;
+            BlockCipher cipher = encryption.cipher;
+            for (int offset = 0; offset < fullBlocksLength; offset += blockSize) {
+                cipher.processBlock(in, inOff + offset, out, outOff + offset);
+            }
+            byte[] lastBlock = encryption.lastBlock;
+            Arrays.fill(lastBlock, (byte) 0);
+            System.arraycopy(in, inOff + fullBlocksLength, lastBlock, 0, len - fullBlocksLength);
+            cipher.processBlock(lastBlock, 0, out, outOff + fullBlocksLength);
 
-            PaddedBufferedBlockCipher cipher = new PaddedBufferedBlockCipher(
-                CBCBlockCipher.newInstance(new RijndaelEngine(messageBlockSize)), new ZeroBytePadding());
+            // update IV
+            System.arraycopy(out, outOff + encryptedLength - blockSize, encryption.iv, 0, blockSize);
+        } finally {
+            encryption.release();
+        }
 
-            int keySize = messageBlockSize / 8;
+        return encryptedLength;
+    }
 
-            CipherParameters ivAndKey = new ParametersWithIV(new KeyParameter(sessionKey, 0, keySize), iv, 0, keySize);
+    public byte[] decrypt(byte[] encryptedMessage) {
+        if (encryptedMessage == null)
+            return null;
 
-            cipher.init(true, ivAndKey);
-            byte[] encrypted = new byte[cipher.getOutputSize(message.length)];
-            int oLen = cipher.processBytes(message, 0, message.length, encrypted, 0);
+        byte[] decrypted = new byte[encryptedMessage.length];
+        int decryptedLength = decrypt(encryptedMessage, 0, encryptedMessage.length, decrypted, 0);
 
-            cipher.doFinal(encrypted, oLen);
+        // Strip zeroes from decrypted message
+        return Arrays.copyOf(decrypted, decryptedLength);
+    }
 
-            // update IV
-            System.arraycopy(encrypted, encrypted.length - this.ivEnc.length, this.ivEnc, 0, this.ivEnc.length);
+    @Override
+    public int decrypt(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        Direction decryption = this.decryption;
+        if (decryption == null) {
+            throw new IllegalStateException("Both key and IV have to be defined prior to decryption.");
+        }
 
-            return encrypted;
-        } catch (InvalidCipherTextException e) {
-            logger.error("Exception encountered during encryption.", e);
-            throw new RuntimeException(e);
+        if (len == 0 || len % blockSize != 0) {
+            throw new DataLengthException("last block incomplete in decryption");
+        }
+        if (out.length - outOff < len) {
+            throw new BufferOverflowException();
         }
+
+        decryption.acquire();
+        try {
+            // update IV with the last bytes from the encrypted message, before decrypting in place overwrites them
+            System.arraycopy(in, inOff + len - blockSize, decryption.iv, 0, blockSize);
+
+            BlockCipher cipher = decryption.cipher;
+            for (int offset = 0; offset < len; offset += blockSize) {
+                cipher.processBlock(in, inOff + offset, out, outOff + offset);
+            }
+        } finally {
+            decryption.release();
+        }
+
+        int lastNonZeroIdx = outOff + len - 1;
+        while (lastNonZeroIdx >= outOff && out[lastNonZeroIdx] == 0) {
+            --lastNonZeroIdx;
+        }
+        return lastNonZeroIdx + 1 - outOff;
     }
 
-    public byte[] decrypt(byte[] encryptedMessage) {
-        if (this.key == null || this.ivDec == null) {
-            throw new IllegalStateException("Both key and IV have to be defined prior to decryption.");
+    /**
+     * <p>Save the current IVs of both directions.</p>
+     * <p>Take snapshots between messages. A snapshot taken while a message is encrypted or decrypted fails, as the IV
+     * of that direction is about to change.</p>
+     *
+     * @return The IVs the next encrypted and decrypted messages chain from.
+     * @throws IllegalStateException If the helper is not initialized, or a message is being processed.
+     */
+    public IvSnapshot snapshot() {
+        Direction encryption = this.encryption;
+        Direction decryption = this.decryption;
+        if (encryption == null || decryption == null) {
+            throw new IllegalStateException("Both key and IV have to be defined prior to taking a snapshot.");
         }
+        return new IvSnapshot(encryption.getIv(), decryption.getIv());
+    }
 
-        if (encryptedMessage == null)
-            return null;
+    /**
+     * <p>Continue both CBC chains from a snapshot, e.g. to resume a recorded session.</p>
+     * <p>The key stays as it is, so unlike {@link BouncyAES256Helper#init(byte[], byte[], byte[])} no key schedule is
+     * computed.</p>
+     *
+     * @param snapshot IVs from {@link BouncyAES256Helper#snapshot()}, of this or another helper using the same key.
+     * @throws IllegalStateException If the helper is not initialized, or a message is being processed.
+     */
+    public void restore(IvSnapshot snapshot) {
+        Direction encryption = this.encryption;
+        Direction decryption = this.decryption;
+        if (encryption == null || decryption == null) {
+            throw new IllegalStateException("Both key and IV have to be defined prior to restoring a snapshot.");
+        }
+        encryption.setIv(snapshot.ivEnc);
+        decryption.setIv(snapshot.ivDec);
+    }
 
-        try {
-            byte[] sessionKey = this.key;
-            byte[] iv = this.ivDec;
+    /**
+     * IVs of both directions, see {@link BouncyAES256Helper#snapshot()}. Instances are immutable.
+     */
+    public static final class IvSnapshot {
+        private final byte[] ivEnc;
+        private final byte[] ivDec;
 
-            PaddedBufferedBlockCipher cipher = new PaddedBufferedBlockCipher(
-                CBCBlockCipher.newInstance(new RijndaelEngine(messageBlockSize)), new ZeroBytePadding());
+        public IvSnapshot(byte[] ivEnc, byte[] ivDec) {
+            if (ivEnc == null || ivEnc.length != blockSize || ivDec == null || ivDec.length != blockSize) {
+                throw new IllegalArgumentException("IV has to be 32 bytes long.");
+            }
+            this.ivEnc = ivEnc.clone();
+            this.ivDec = ivDec.clone();
+        }
 
-            int keySize = messageBlockSize / 8;
+        public byte[] getIvEnc() {
+            return ivEnc.clone();
+        }
 
-            CipherParameters ivAndKey = new ParametersWithIV(new KeyParameter(sessionKey, 0, keySize), iv, 0, keySize);
+        public byte[] getIvDec() {
+            return ivDec.clone();
+        }
+    }
 
-            cipher.init(false, ivAndKey);
-            byte[] decrypted = new byte[cipher.getOutputSize(encryptedMessage.length)];
-            int oLen = cipher.processBytes(encryptedMessage, 0, encryptedMessage.length, decrypted, 0);
-            cipher.doFinal(decrypted, oLen);
+    /**
+     * The CBC chain of one direction. Only one thread at a time may use it, which {@link Direction#acquire()} checks.
+     */
+    private static final class Direction {
+        private final boolean forEncryption;
+        private final BlockCipher cipher;
+        private final byte[] iv = new byte[blockSize];
+        // holds the zero padded last block of a message while encrypting
+        private final byte[] lastBlock = new byte[blockSize];
+        private final AtomicBoolean inUse = new AtomicBoolean();
+
+        Direction(boolean forEncryption, BlockCipher engine, byte[] key, byte[] iv) {
+            this.forEncryption = forEncryption;
+            this.cipher = CBCBlockCipher.newInstance(engine);
+            System.arraycopy(iv, 0, this.iv, 0, blockSize);
+            cipher.init(forEncryption, new ParametersWithIV(new KeyParameter(key, 0, blockSize), this.iv, 0, blockSize));
+        }
 
-            // Strip zeroes from decrypted message
-            int lastZeroIdx = decrypted.length - 1;
-            while (lastZeroIdx >= 0 && decrypted[lastZeroIdx] == 0)
-            {
-                --lastZeroIdx;
+        void acquire() {
+            if (!inUse.compareAndSet(false, true)) {
+                throw new IllegalStateException("Concurrent " + (forEncryption ? "encryption" : "decryption")
+                        + " with the same helper, the CBC chain would be corrupted.");
             }
-            decrypted = Arrays.copyOf(decrypted, lastZeroIdx + 1);
+        }
+
+        void release() {
+            inUse.set(false);
+        }
 
-            // update IV with the last bytes from the encrypted message
-            System.arraycopy(encryptedMessage, encryptedMessage.length - this.ivDec.length, this.ivDec, 0, this.ivDec.length);
+        byte[] getIv() {
+            acquire();
+            try {
+                return iv.clone();
+            } finally {
+                release();
+            }
+        }
 
-            return decrypted;
-        } catch (InvalidCipherTextException e) {
-            logger.error("Exception encountered during decryption.", e);
-            throw new RuntimeException(e);
+        void setIv(byte[] iv) {
+            acquire();
+            try {
+                System.arraycopy(iv, 0, this.iv, 0, blockSize);
+                // without a key parameter, the CBC mode only resets its chain and keeps the engine's key schedule
+                cipher.init(forEncryption, new ParametersWithIV(null, this.iv, 0, blockSize));
+            } finally {
+                release();
+            }
         }
     }
-}
\ No newline at end of file
+}
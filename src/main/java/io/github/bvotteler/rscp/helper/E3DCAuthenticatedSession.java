@@ -0,0 +1,340 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPDataType;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>An {@link E3DCSession} that authenticates once and stays authenticated for as long as possible.</p>
+ * <p>The connection is opened and authenticated with the first request, and then kept open for the following requests,
+ * so short polls do not pay for an authentication round trip each. The auth level granted by the server is
+ * remembered.</p>
+ * <p>If the server answers a request with {@link RSCPTag#TAG_RSCP_GENERAL_ERROR}, the session authenticates again on
+ * the same connection and repeats the request once. If the connection drops, a new one is opened and authenticated,
+ * and the request is repeated once. Other errors, e.g. a timeout, fail only the request they belong to and leave the
+ * connection in place. How often the session authenticates again or reconnects is recorded in the {@link Metrics}
+ * of the session.</p>
+ * <p>The session is thread-safe.</p>
+ */
+public class E3DCAuthenticatedSession implements Closeable {
+    /**
+     * The auth level reported by the server if the credentials were rejected.
+     */
+    public static final short authLevelNoAuth = 0;
+    private static final Logger logger = LoggerFactory.getLogger(E3DCAuthenticatedSession.class.getSimpleName());
+
+    private final E3DCSessionPool.SessionFactory sessionFactory;
+    private final String user;
+    private final String password;
+    private final Executor connectExecutor;
+    private final Metrics metrics = new Metrics();
+    private volatile short authLevel = -1;
+
+    // guarded by this, completes with an authenticated session
+    private CompletableFuture<E3DCSession> connection;
+    private boolean closed;
+
+    /**
+     * Create a session, connecting with the first request.
+     *
+     * @param sessionFactory  Opens the underlying connection.
+     * @param user            The user name, same as used to log in to the portal.
+     * @param password        The password, same as used to log in to the portal.
+     * @param connectExecutor Runs the blocking connection attempts.
+     */
+    public E3DCAuthenticatedSession(E3DCSessionPool.SessionFactory sessionFactory, String user, String password, Executor connectExecutor) {
+        this.sessionFactory = sessionFactory;
+        this.user = user;
+        this.password = password;
+        this.connectExecutor = connectExecutor;
+    }
+
+    /**
+     * Create a session to a device, connecting on a daemon thread with the first request.
+     *
+     * @param ipAddress     The address of the device.
+     * @param port          The port of the device.
+     * @param cryptoFactory Creates the crypto helper of each connection, e.g. {@code () -> new BouncyAES256Helper(key)}.
+     * @param user          The user name, same as used to log in to the portal.
+     * @param password      The password, same as used to log in to the portal.
+     * @return The session.
+     */
+    public static E3DCAuthenticatedSession create(String ipAddress, int port, Supplier<AES256Helper> cryptoFactory, String user, String password) {
+        return new E3DCAuthenticatedSession(() -> E3DCSession.open(ipAddress, port, cryptoFactory.get()), user, password, runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-session-connect");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Authenticate a session, e.g. in a {@link E3DCSessionPool.SessionFactory}.
+     *
+     * @param session  The session to authenticate.
+     * @param user     The user name, same as used to log in to the portal.
+     * @param password The password, same as used to log in to the portal.
+     * @return A future completing with the auth level granted, or exceptionally if authentication failed.
+     */
+    public static CompletableFuture<Short> authenticate(E3DCSession session, String user, String password) {
+        RSCPData authContainer = RSCPData.builder()
+                .tag(RSCPTag.TAG_RSCP_REQ_AUTHENTICATION)
+                .containerValues(Arrays.asList(
+                        RSCPData.builder().tag(RSCPTag.TAG_RSCP_AUTHENTICATION_USER).stringValue(user).build(),
+                        RSCPData.builder().tag(RSCPTag.TAG_RSCP_AUTHENTICATION_PASSWORD).stringValue(password).build()))
+                .build();
+        RSCPFrame authFrame = RSCPFrame.builder()
+                .addData(authContainer)
+                .timestamp(Instant.now())
+                .build();
+
+        return session.send(authFrame).thenApply(response -> {
+            List<RSCPData> data = response.getData();
+            RSCPData authData = data.isEmpty() ? null : data.get(0);
+            if (authData == null || authData.getDataTag() != RSCPTag.TAG_RSCP_AUTHENTICATION
+                    || authData.getDataType() == RSCPDataType.ERROR) {
+                throw new IllegalStateException("Authentication was not answered with an auth level.");
+            }
+            short level = authData.getShort(authLevelNoAuth);
+            if (level <= authLevelNoAuth) {
+                throw new IllegalStateException("Authentication failed, credentials were rejected.");
+            }
+            return level;
+        });
+    }
+
+    /**
+     * Send a request, connecting and authenticating first if needed.
+     *
+     * @param request The request frame.
+     * @return A future completing with the response frame, or exceptionally if connecting, authenticating or the
+     * repeated request failed.
+     */
+    public CompletableFuture<RSCPFrame> send(RSCPFrame request) {
+        return send(request, true);
+    }
+
+    /**
+     * Get the auth level granted by the server with the most recent authentication.
+     * @return The auth level, or -1 if not authenticated yet.
+     */
+    public short getAuthLevel() {
+        return authLevel;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Close the connection. Following requests fail.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<E3DCSession> current;
+        synchronized (this) {
+            closed = true;
+            current = connection;
+            connection = null;
+        }
+        closeWhenConnected(current);
+    }
+
+    private CompletableFuture<RSCPFrame> send(RSCPFrame request, boolean repeatOnFailure) {
+        CompletableFuture<E3DCSession> current = getConnection();
+        return current.thenCompose(session -> session.send(request))
+                .<CompletableFuture<RSCPFrame>>handle((response, error) -> {
+                    if (error != null) {
+                        if (!repeatOnFailure || current.isCompletedExceptionally() || !isConnectionLost(current.join(), error)) {
+                            // e.g. a timeout or a malformed request, the connection is still good for other requests
+                            return failed(error);
+                        }
+                        logger.debug("Connection dropped, reconnecting.", error);
+                        reconnect(current);
+                        return send(request, false);
+                    }
+
+                    if (repeatOnFailure && isGeneralError(response)) {
+                        logger.debug("Server answered with a general error, authenticating again.");
+                        reauthenticate(current);
+                        return send(request, false);
+                    }
+                    return CompletableFuture.completedFuture(response);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private synchronized CompletableFuture<E3DCSession> getConnection() {
+        if (closed) {
+            return failed(new IllegalStateException("Session is closed."));
+        }
+        if (connection == null || connection.isCompletedExceptionally()) {
+            connection = connect();
+        } else if (connection.isDone() && !connection.join().isOpen()) {
+            metrics.reconnectsAfterDrop.incrementAndGet();
+            logger.debug("Connection dropped, reconnecting.");
+            connection = connect();
+        }
+        return connection;
+    }
+
+    /**
+     * Replace a dropped connection, unless another request has replaced it already.
+     */
+    private void reconnect(CompletableFuture<E3DCSession> dropped) {
+        synchronized (this) {
+            if (closed || connection != dropped) {
+                return;
+            }
+            metrics.reconnectsAfterDrop.incrementAndGet();
+            connection = connect();
+        }
+        closeWhenConnected(dropped);
+    }
+
+    /**
+     * Authenticate again on the same connection, unless another request has done so already.
+     */
+    private synchronized void reauthenticate(CompletableFuture<E3DCSession> rejected) {
+        if (!closed && connection == rejected) {
+            metrics.reauthenticationsAfterError.incrementAndGet();
+            connection = rejected.thenCompose(this::authenticate);
+        }
+    }
+
+    private CompletableFuture<E3DCSession> connect() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                E3DCSession session = sessionFactory.open();
+                metrics.connections.incrementAndGet();
+                return session;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to connect.", e);
+            }
+        }, connectExecutor).thenCompose(this::authenticate);
+    }
+
+    private CompletableFuture<E3DCSession> authenticate(E3DCSession session) {
+        return authenticate(session, user, password).handle((level, error) -> {
+            if (error != null) {
+                metrics.authenticationFailures.incrementAndGet();
+                session.close();
+                throw new IllegalStateException("Authentication failed.", error);
+            }
+            metrics.authentications.incrementAndGet();
+            authLevel = level;
+            return session;
+        });
+    }
+
+    /**
+     * Check whether a failed request lost the connection, as opposed to failing on its own.
+     */
+    private static boolean isConnectionLost(E3DCSession session, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return !session.isOpen() || (cause instanceof IOException && !(cause instanceof E3DCTimeoutException));
+    }
+
+    private static boolean isGeneralError(RSCPFrame response) {
+        List<RSCPData> data = response.getData();
+        return !data.isEmpty() && data.get(0).getDataTag() == RSCPTag.TAG_RSCP_GENERAL_ERROR;
+    }
+
+    private static void closeWhenConnected(CompletableFuture<E3DCSession> connection) {
+        if (connection != null) {
+            connection.thenAccept(E3DCSession::close);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Counts connections and authentications of an {@link E3DCAuthenticatedSession}.
+     */
+    public static class Metrics {
+        private final AtomicLong connections = new AtomicLong();
+        private final AtomicLong authentications = new AtomicLong();
+        private final AtomicLong authenticationFailures = new AtomicLong();
+        private final AtomicLong reauthenticationsAfterError = new AtomicLong();
+        private final AtomicLong reconnectsAfterDrop = new AtomicLong();
+
+        /**
+         * @return The number of connections opened.
+         */
+        public long getConnections() {
+            return connections.get();
+        }
+
+        /**
+         * @return The number of successful authentications, including repeated ones.
+         */
+        public long getAuthentications() {
+            return authentications.get();
+        }
+
+        /**
+         * @return The number of authentications rejected or not answered.
+         */
+        public long getAuthenticationFailures() {
+            return authenticationFailures.get();
+        }
+
+        /**
+         * @return How often a {@link RSCPTag#TAG_RSCP_GENERAL_ERROR} answer caused authenticating again.
+         */
+        public long getReauthenticationsAfterError() {
+            return reauthenticationsAfterError.get();
+        }
+
+        /**
+         * @return How often a dropped connection caused reconnecting.
+         */
+        public long getReconnectsAfterDrop() {
+            return reconnectsAfterDrop.get();
+        }
+    }
+}
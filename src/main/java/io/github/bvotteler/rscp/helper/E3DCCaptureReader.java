@@ -0,0 +1,227 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import static io.github.bvotteler.rscp.helper.E3DCCaptureWriter.flagEncrypted;
+import static io.github.bvotteler.rscp.helper.E3DCCaptureWriter.magic;
+import static io.github.bvotteler.rscp.helper.E3DCCaptureWriter.recordHeaderSize;
+
+/**
+ * <p>Reads the records of a capture file written by {@link E3DCCaptureWriter}, and replays them.</p>
+ * <p>The file is memory-mapped in windows, so captures of several GB are read without copying them through
+ * read buffers, and without mapping them as a whole. A record cut off at the end of the file, e.g. by a crash of the
+ * writer, ends the capture. Instances are not thread-safe.</p>
+ */
+public class E3DCCaptureReader implements Closeable {
+    static final int defaultWindowSize = 64 * 1024 * 1024;
+    private static final Logger logger = LoggerFactory.getLogger(E3DCCaptureReader.class.getSimpleName());
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    // file position of the next record
+    private long position = magic.length;
+    private boolean warnedTruncated;
+
+    E3DCCaptureReader(FileChannel channel, int windowSize) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        if (fileSize < magic.length) {
+            throw new IOException("File is too small to be a capture file.");
+        }
+        map(0, magic.length);
+        for (int i = 0; i < magic.length; i++) {
+            if (window.get(i) != magic[i]) {
+                throw new IOException("File is not a capture file.");
+            }
+        }
+    }
+
+    /**
+     * Open a capture file for reading.
+     * @param path The capture file.
+     * @return The reader.
+     * @throws IOException If the file cannot be opened, or is not a capture file.
+     */
+    public static E3DCCaptureReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new E3DCCaptureReader(channel, defaultWindowSize);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether another complete record follows.
+     * @return {@code true} if {@link E3DCCaptureReader#next()} returns a record.
+     */
+    public boolean hasNext() {
+        return recordSize() > 0;
+    }
+
+    /**
+     * Read the next record.
+     * @return The record.
+     * @throws NoSuchElementException If there is no further complete record.
+     */
+    public E3DCCaptureRecord next() {
+        int recordSize = recordSize();
+        if (recordSize <= 0) {
+            throw new NoSuchElementException("No further record in capture.");
+        }
+
+        int offset = (int) (position - windowStart);
+        E3DCCaptureRecord.Direction direction = E3DCCaptureRecord.Direction.fromCode(window.get(offset));
+        boolean withEncrypted = (window.get(offset + 1) & flagEncrypted) != 0;
+        Instant timestamp = Instant.ofEpochSecond(window.getLong(offset + 2), window.getInt(offset + 10));
+        byte[] frame = new byte[window.getInt(offset + 14)];
+        window.position(offset + recordHeaderSize);
+        window.get(frame);
+        byte[] encryptedFrame = null;
+        if (withEncrypted) {
+            encryptedFrame = new byte[window.getInt()];
+            window.get(encryptedFrame);
+        }
+
+        position += recordSize;
+        return new E3DCCaptureRecord(direction, timestamp, frame, encryptedFrame);
+    }
+
+    /**
+     * <p>Pass the remaining records to a consumer, keeping the time between them.</p>
+     * <p>With a speed of 2, records are passed twice as fast as captured. With a speed of
+     * {@link Double#POSITIVE_INFINITY}, records are passed as fast as the consumer takes them, e.g. for benchmarks.</p>
+     *
+     * @param speed    The replay speed relative to the capture, greater than 0.
+     * @param consumer Receives the records, e.g. decoding them or sending them to a simulated device.
+     * @return The number of records replayed.
+     * @throws InterruptedException If interrupted while waiting for the next record.
+     */
+    public long replay(double speed, Consumer<E3DCCaptureRecord> consumer) throws InterruptedException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be greater than 0.");
+        }
+        long count = 0;
+        long startNanos = System.nanoTime();
+        Instant firstTimestamp = null;
+        while (hasNext()) {
+            E3DCCaptureRecord record = next();
+            if (firstTimestamp == null) {
+                firstTimestamp = record.getTimestamp();
+            } else if (speed != Double.POSITIVE_INFINITY) {
+                long captureOffsetNanos = Duration.between(firstTimestamp, record.getTimestamp()).toNanos();
+                long waitNanos = startNanos + (long) (captureOffsetNanos / speed) - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+                }
+            }
+            consumer.accept(record);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Get the size of the next record, mapping it if needed.
+     * @return The size, or 0 if no complete record follows.
+     */
+    private int recordSize() {
+        try {
+            if (!ensureMapped(recordHeaderSize)) {
+                return 0;
+            }
+            int offset = (int) (position - windowStart);
+            boolean withEncrypted = (window.get(offset + 1) & flagEncrypted) != 0;
+            long size = recordHeaderSize + (window.getInt(offset + 14) & 0xFFFFFFFFL);
+            if (withEncrypted) {
+                if (!ensureMapped(size + 4)) {
+                    return truncated();
+                }
+                offset = (int) (position - windowStart);
+                size += 4 + (window.getInt(offset + (int) size) & 0xFFFFFFFFL);
+            }
+            if (size > Integer.MAX_VALUE || !ensureMapped(size)) {
+                return truncated();
+            }
+            return (int) size;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to map capture file.", e);
+        }
+    }
+
+    private int truncated() {
+        if (!warnedTruncated) {
+            warnedTruncated = true;
+            logger.warn("Capture ends with an incomplete record at position " + position + ".");
+        }
+        return 0;
+    }
+
+    /**
+     * Make sure the given number of bytes from the current position are mapped.
+     * @return {@code false} if the file ends before.
+     */
+    private boolean ensureMapped(long length) throws IOException {
+        if (position + length > fileSize) {
+            return false;
+        }
+        if (position < windowStart || position + length > windowStart + window.limit()) {
+            map(position, Math.max(length, Math.min(windowSize, fileSize - position)));
+        }
+        return true;
+    }
+
+    private void map(long start, long length) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = start;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import java.time.Instant;
+
+/**
+ * One frame of a capture written by {@link E3DCCaptureWriter}.
+ */
+public class E3DCCaptureRecord {
+    private final Direction direction;
+    private final Instant timestamp;
+    private final byte[] frame;
+    private final byte[] encryptedFrame;
+
+    public E3DCCaptureRecord(Direction direction, Instant timestamp, byte[] frame, byte[] encryptedFrame) {
+        this.direction = direction;
+        this.timestamp = timestamp;
+        this.frame = frame;
+        this.encryptedFrame = encryptedFrame;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Get the time the frame was sent or received.
+     * @return The capture time.
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the decrypted frame, e.g. to be read with {@link io.github.bvotteler.rscp.RSCPFrame.Builder#buildFromRawBytes(byte[])}.
+     * @return The frame.
+     */
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * Get the frame as encrypted on the wire, if it was captured.
+     * @return The encrypted frame, or {@code null}.
+     */
+    public byte[] getEncryptedFrame() {
+        return encryptedFrame;
+    }
+
+    public enum Direction {
+        SENT((byte) 0),
+        RECEIVED((byte) 1);
+
+        private final byte code;
+
+        Direction(byte code) {
+            this.code = code;
+        }
+
+        byte getCode() {
+            return code;
+        }
+
+        static Direction fromCode(byte code) {
+            for (Direction direction : values()) {
+                if (direction.code == code) {
+                    return direction;
+                }
+            }
+            throw new IllegalArgumentException("Unknown direction code " + code + ".");
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Appends decrypted frames with their timestamps to a capture file, to be read with {@link E3DCCaptureReader}.</p>
+ * <p>A capture file starts with the 8 byte magic {@code E3DCCAP1}, followed by records. All numbers are little-endian,
+ * like in RSCP frames. Each record is:</p>
+ * <ul>
+ *     <li>1 byte direction, 0 for sent and 1 for received</li>
+ *     <li>1 byte flags, bit 0 set if the encrypted frame follows the frame</li>
+ *     <li>8 bytes seconds and 4 bytes nanoseconds of the capture time</li>
+ *     <li>4 bytes frame length, then the decrypted frame</li>
+ *     <li>if flagged, 4 bytes encrypted length, then the encrypted frame</li>
+ * </ul>
+ * <p>Records are only ever appended. They are buffered, up to 64 KiB, and written to the file by the first record
+ * after the flush interval has passed, by {@link E3DCCaptureWriter#flush()} or by {@link E3DCCaptureWriter#close()}.
+ * A crash loses the records buffered since, and may leave the last record cut off. Opening such a capture again drops
+ * the incomplete record before appending. The writer is thread-safe.</p>
+ */
+public class E3DCCaptureWriter implements Closeable {
+    static final byte[] magic = "E3DCCAP1".getBytes(StandardCharsets.US_ASCII);
+    static final int recordHeaderSize = 1 + 1 + 8 + 4 + 4;
+    static final byte flagEncrypted = 1;
+    public static final Duration defaultFlushInterval = Duration.ofSeconds(1);
+
+    private final OutputStream out;
+    private final boolean includeEncrypted;
+    private final long flushIntervalNanos;
+    // not a synchronized block, writing may block on I/O
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer header = ByteBuffer.allocate(recordHeaderSize).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    // guarded by lock
+    private long lastFlushNanos = System.nanoTime();
+
+    private E3DCCaptureWriter(OutputStream out, boolean includeEncrypted, Duration flushInterval) {
+        this.out = out;
+        this.includeEncrypted = includeEncrypted;
+        this.flushIntervalNanos = flushInterval.toNanos();
+    }
+
+    /**
+     * Open a capture file for appending, flushing records every {@link E3DCCaptureWriter#defaultFlushInterval}.
+     * See {@link E3DCCaptureWriter#open(Path, boolean, Duration)}.
+     *
+     * @param path             The capture file.
+     * @param includeEncrypted Whether to keep encrypted frames as well, e.g. for crypto benchmarks.
+     * @return The writer.
+     * @throws IOException If the file cannot be opened, or exists but is not a capture file.
+     */
+    public static E3DCCaptureWriter open(Path path, boolean includeEncrypted) throws IOException {
+        return open(path, includeEncrypted, defaultFlushInterval);
+    }
+
+    /**
+     * Open a capture file for appending, creating it if needed. An incomplete last record, e.g. left by a crash, is
+     * dropped.
+     *
+     * @param path             The capture file.
+     * @param includeEncrypted Whether to keep encrypted frames as well, e.g. for crypto benchmarks.
+     * @param flushInterval    How long records may stay buffered before a record flushes them, or zero to flush every
+     *                         record.
+     * @return The writer.
+     * @throws IOException If the file cannot be opened, or exists but is not a capture file.
+     */
+    public static E3DCCaptureWriter open(Path path, boolean includeEncrypted, Duration flushInterval) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            if (channel.size() == 0) {
+                channel.write(ByteBuffer.wrap(magic));
+            } else {
+                ByteBuffer existing = ByteBuffer.allocate(magic.length);
+                try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+                    reader.read(existing, 0);
+                    if (!Arrays.equals(existing.array(), magic)) {
+                        throw new IOException("File exists, but is not a capture file.");
+                    }
+                    long completeSize = getCompleteSize(reader);
+                    if (completeSize < channel.size()) {
+                        // appending after a cut off record would make everything after it unreadable
+                        channel.truncate(completeSize);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new E3DCCaptureWriter(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), includeEncrypted, flushInterval);
+    }
+
+    /**
+     * Get the size of a capture up to the end of its last complete record.
+     */
+    private static long getCompleteSize(FileChannel reader) throws IOException {
+        long fileSize = reader.size();
+        long position = magic.length;
+        ByteBuffer buffer = ByteBuffer.allocate(recordHeaderSize).order(ByteOrder.LITTLE_ENDIAN);
+        while (position + recordHeaderSize <= fileSize) {
+            buffer.clear();
+            readFully(reader, buffer, position);
+            long size = recordHeaderSize + (buffer.getInt(14) & 0xFFFFFFFFL);
+            if ((buffer.get(1) & flagEncrypted) != 0) {
+                if (position + size + 4 > fileSize) {
+                    break;
+                }
+                buffer.clear().limit(4);
+                readFully(reader, buffer, position + size);
+                size += 4 + (buffer.getInt(0) & 0xFFFFFFFFL);
+            }
+            if (position + size > fileSize) {
+                break;
+            }
+            position += size;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Capture file ended while reading.");
+            }
+        }
+    }
+
+    /**
+     * Check whether encrypted frames are kept.
+     * @return {@code true} if encrypted frames passed to {@link E3DCCaptureWriter#record} are written.
+     */
+    public boolean isIncludingEncrypted() {
+        return includeEncrypted;
+    }
+
+    /**
+     * Append a frame, flushing the buffered records if the flush interval has passed since the last flush.
+     *
+     * @param direction      Whether the frame was sent or received.
+     * @param timestamp      The time the frame was sent or received.
+     * @param frame          The decrypted frame.
+     * @param encryptedFrame The frame as encrypted on the wire, or {@code null}. Ignored unless encrypted frames are kept.
+     * @throws IOException If writing fails.
+     */
+    public void record(E3DCCaptureRecord.Direction direction, Instant timestamp, byte[] frame, byte[] encryptedFrame) throws IOException {
+        boolean withEncrypted = includeEncrypted && encryptedFrame != null;
+        lock.lock();
+        try {
+            header.clear();
+            header.put(direction.getCode())
+                    .put(withEncrypted ? flagEncrypted : 0)
+                    .putLong(timestamp.getEpochSecond())
+                    .putInt(timestamp.getNano())
+                    .putInt(frame.length);
+            out.write(header.array(), 0, recordHeaderSize);
+            out.write(frame);
+            if (withEncrypted) {
+                length.clear();
+                length.putInt(encryptedFrame.length);
+                out.write(length.array());
+                out.write(encryptedFrame);
+            }
+            long now = System.nanoTime();
+            if (now - lastFlushNanos >= flushIntervalNanos) {
+                out.flush();
+                lastFlushNanos = now;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write buffered records to the file.
+     * @throws IOException If writing fails.
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            out.flush();
+            lastFlushNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            out.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -24,16 +24,32 @@
 
 package io.github.bvotteler.rscp.helper;
 
+import io.github.bvotteler.rscp.RSCPDataHandler;
+import io.github.bvotteler.rscp.RSCPStreamDecoder;
 import io.vavr.control.Either;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 import static io.vavr.control.Either.left;
@@ -43,6 +59,23 @@ public class E3DCConnector {
     private static final int maxRetries = 3;
     private static final long sleepMillisBeforeRetry = 5000;
     private static final Logger logger = LoggerFactory.getLogger(E3DCConnector.class.getSimpleName());
+    // closes sockets whose write did not finish before the deadline, plain socket writes cannot time out otherwise
+    private static final ScheduledThreadPoolExecutor writeWatchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "e3dc-write-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // resolves host names for connects with a timeout, name lookups cannot time out otherwise
+    private static final ExecutorService resolver = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "e3dc-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        writeWatchdog.setRemoveOnCancelPolicy(true);
+    }
 
     private static boolean isNotConnected(Socket socket) {
         return socket == null || socket.isClosed();
@@ -99,6 +132,59 @@ public class E3DCConnector {
         return openConnection(ipAddress, port, maxRetries, sleepMillisBeforeRetry);
     }
 
+    /**
+     * <p>Open a connection with a single attempt, giving up when the timeout elapses.</p>
+     * <p>The timeout includes resolving the host name. Reads from the returned socket time out after the same
+     * duration.</p>
+     *
+     * @param ipAddress The address of the server.
+     * @param port      The port of the server.
+     * @param timeout   The time to wait for the connection to be established.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the timeout elapsed, or the connected socket.
+     */
+    public static Either<Exception, Socket> openConnection(String ipAddress, int port, Duration timeout) {
+        long deadlineNanos = System.nanoTime() + timeout.toNanos();
+        if (toTimeoutMillis(timeout.toNanos()) <= 0) {
+            return left(new E3DCTimeoutException(E3DCTimeoutException.Operation.CONNECT, timeout));
+        }
+
+        InetAddress address;
+        Future<InetAddress> lookup = resolver.submit(() -> InetAddress.getByName(ipAddress));
+        try {
+            address = lookup.get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            lookup.cancel(true);
+            return left(new E3DCTimeoutException(E3DCTimeoutException.Operation.CONNECT, timeout));
+        } catch (ExecutionException e) {
+            logger.error("Failed to connect to host: Unknown host.", e.getCause());
+            return left(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lookup.cancel(true);
+            return left(e);
+        }
+
+        int timeoutMillis = toTimeoutMillis(deadlineNanos - System.nanoTime());
+        if (timeoutMillis <= 0) {
+            return left(new E3DCTimeoutException(E3DCTimeoutException.Operation.CONNECT, timeout));
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), timeoutMillis);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(toTimeoutMillis(timeout.toNanos()));
+            logger.debug("Connected successfully.");
+            return right(socket);
+        } catch (SocketTimeoutException e) {
+            silentlyCloseConnection(socket);
+            return left(new E3DCTimeoutException(E3DCTimeoutException.Operation.CONNECT, timeout));
+        } catch (Exception e) {
+            logger.error("Failed to connect to host.", e);
+            silentlyCloseConnection(socket);
+            return left(e);
+        }
+    }
+
     /**
      * Send a encrypt and send a byte array through a provided socket.
      *
@@ -124,6 +210,61 @@ public class E3DCConnector {
         }
     }
 
+    /**
+     * <p>Encrypt and send a byte array through a provided socket, giving up when the timeout elapses.</p>
+     * <p>If the deadline has passed already, nothing is encrypted, so the CBC chain stays in sync. If the write does not
+     * finish in time, the socket is closed, as the server may have received part of the frame.</p>
+     *
+     * @param socket      The socket to write to.
+     * @param encryptFunc A function to encrypt the provided frame.
+     * @param frame       The unencrypted frame as byte array.
+     * @param timeout     The time sending may take.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the timeout elapsed, or the number of bytes sent.
+     */
+    public static Either<Exception, Integer> sendFrameToServer(Socket socket, Function<byte[], byte[]> encryptFunc, byte[] frame, Duration timeout) {
+        long deadlineNanos = System.nanoTime() + timeout.toNanos();
+        if (isNotConnected(socket)) {
+            return left(new IllegalStateException("Not connected to server. Must connect to server first before sending."));
+        }
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            return left(new E3DCTimeoutException(E3DCTimeoutException.Operation.SEND, timeout));
+        }
+
+        ScheduledFuture<?> watchdog = null;
+        try {
+            byte[] encryptedFrame = encryptFunc.apply(frame);
+            watchdog = writeWatchdog.schedule(() -> silentlyCloseConnection(socket), deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            OutputStream out = socket.getOutputStream();
+            out.write(encryptedFrame);
+            out.flush();
+            if (!watchdog.cancel(false)) {
+                // closed right after the write finished
+                return left(new E3DCTimeoutException(E3DCTimeoutException.Operation.SEND, timeout));
+            }
+            return right(encryptedFrame.length);
+        } catch (Exception e) {
+            if (watchdog != null && !watchdog.cancel(false)) {
+                return left(new E3DCTimeoutException(E3DCTimeoutException.Operation.SEND, timeout));
+            }
+            logger.error("Error while encrypting and sending frame.", e);
+            return left(e);
+        }
+    }
+
+    /**
+     * Encrypt and send a byte array through a provided socket, giving up at a deadline.
+     * See {@link E3DCConnector#sendFrameToServer(Socket, Function, byte[], Duration)}.
+     *
+     * @param socket      The socket to write to.
+     * @param encryptFunc A function to encrypt the provided frame.
+     * @param frame       The unencrypted frame as byte array.
+     * @param deadline    The time sending must have finished by.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the deadline passed, or the number of bytes sent.
+     */
+    public static Either<Exception, Integer> sendFrameToServer(Socket socket, Function<byte[], byte[]> encryptFunc, byte[] frame, Instant deadline) {
+        return sendFrameToServer(socket, encryptFunc, frame, Duration.between(Instant.now(), deadline));
+    }
+
     /**
      * Receive a frame from a socket and decrypted it.
      *
@@ -132,31 +273,26 @@ public class E3DCConnector {
      * @return Either an exception or the decrypted response as byte array.
      */
     public static Either<Exception, byte[]> receiveFrameFromServer(Socket socket, Function<byte[], byte[]> decryptFunc) {
+        return receiveFrameFromServer(socket, decryptFunc, new E3DCFrameReader());
+    }
+
+    /**
+     * <p>Receive exactly one frame from a socket and decrypted it.</p>
+     * <p>Pass the same {@link E3DCFrameReader} for every call on a connection to reuse its receive buffer.</p>
+     *
+     * @param socket      A socket to read from.
+     * @param decryptFunc A function to decrypt the received byte array.
+     * @param frameReader The reader to read the frame with.
+     * @return Either an exception or the decrypted response as byte array.
+     */
+    public static Either<Exception, byte[]> receiveFrameFromServer(Socket socket, Function<byte[], byte[]> decryptFunc, E3DCFrameReader frameReader) {
         if (isNotConnected(socket)) {
             return left(new IllegalStateException("Not connected to server. Must connect to server first before sending."));
         }
 
         try {
-            int totalBytesRead = 0;
-            DataInputStream dIn = new DataInputStream(socket.getInputStream());
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            byte[] data = new byte[4096];
-            do {
-                int bytesRead = dIn.read(data, 0 , data.length);
-                logger.debug("Received " + bytesRead + " bytes, append to buffer... ");
-                if (bytesRead == -1) {
-                    logger.warn("Socket closed unexpectedly by server.");
-                    break;
-                }
-                buffer.write(data, 0, bytesRead);
-                totalBytesRead += bytesRead;
-            } while (dIn.available() > 0);
-
-            logger.debug("Finished reading " + totalBytesRead + " bytes.");
-            buffer.flush();
-
-            byte[] decryptedData = decryptFunc.apply(buffer.toByteArray());
-            logger.debug("Decrypted frame data.");
+            byte[] decryptedData = frameReader.readFrame(socket.getInputStream(), decryptFunc);
+            logger.debug("Received and decrypted frame of " + decryptedData.length + " bytes.");
 
             return right(decryptedData);
         } catch (Exception e) {
@@ -164,4 +300,202 @@ public class E3DCConnector {
             return left(e);
         }
     }
+
+    /**
+     * <p>Receive exactly one frame from a socket, decrypting and decoding it block by block while it arrives.</p>
+     * <p>Unlike the other receive methods, the frame is not buffered as a whole. Its elements are reported to the
+     * handler as they are received, as {@link io.github.bvotteler.rscp.RSCPEventDecoder} would report them. This keeps
+     * memory per connection bounded and overlaps decoding with the transfer, e.g. for large DB history replies.</p>
+     *
+     * @param socket      A socket to read from.
+     * @param crypto      The helper to decrypt with.
+     * @param frameReader The reader to read the frame with.
+     * @param handler     The handler to report the frame and its elements to.
+     * @return Either an exception or the size of the decrypted frame.
+     */
+    public static Either<Exception, Integer> receiveFrameFromServer(Socket socket, AES256Helper crypto, E3DCFrameReader frameReader, RSCPDataHandler handler) {
+        if (isNotConnected(socket)) {
+            return left(new IllegalStateException("Not connected to server. Must connect to server first before sending."));
+        }
+
+        try {
+            int frameLength = frameReader.readFrame(socket.getInputStream(), crypto, new RSCPStreamDecoder(handler));
+            logger.debug("Received and decoded frame of " + frameLength + " bytes.");
+
+            return right(frameLength);
+        } catch (Exception e) {
+            logger.error("Error while receiving and decoding frame.", e);
+            return left(e);
+        }
+    }
+
+    /**
+     * <p>Receive exactly one frame from a socket and decrypt it, giving up when the timeout elapses.</p>
+     * <p>The timeout applies to the frame as a whole, not to each read from the socket. After a timeout, part of a frame
+     * may have been read, so the connection should be closed.</p>
+     *
+     * @param socket      A socket to read from.
+     * @param decryptFunc A function to decrypt the received byte array.
+     * @param frameReader The reader to read the frame with.
+     * @param timeout     The time receiving may take.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the timeout elapsed, or the decrypted response.
+     */
+    public static Either<Exception, byte[]> receiveFrameFromServer(Socket socket, Function<byte[], byte[]> decryptFunc, E3DCFrameReader frameReader, Duration timeout) {
+        return receiveBeforeDeadline(socket, timeout, in -> frameReader.readFrame(in, decryptFunc))
+                .peek(frame -> logger.debug("Received and decrypted frame of " + frame.length + " bytes."));
+    }
+
+    /**
+     * Receive exactly one frame from a socket and decrypt it, giving up at a deadline.
+     * See {@link E3DCConnector#receiveFrameFromServer(Socket, Function, E3DCFrameReader, Duration)}.
+     *
+     * @param socket      A socket to read from.
+     * @param decryptFunc A function to decrypt the received byte array.
+     * @param frameReader The reader to read the frame with.
+     * @param deadline    The time the frame must have been received by.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the deadline passed, or the decrypted response.
+     */
+    public static Either<Exception, byte[]> receiveFrameFromServer(Socket socket, Function<byte[], byte[]> decryptFunc, E3DCFrameReader frameReader, Instant deadline) {
+        return receiveFrameFromServer(socket, decryptFunc, frameReader, Duration.between(Instant.now(), deadline));
+    }
+
+    /**
+     * <p>Receive exactly one frame from a socket and decrypt it in the reader's buffer, giving up when the timeout elapses.</p>
+     * <p>See {@link E3DCConnector#receiveFrameFromServer(Socket, Function, E3DCFrameReader, Duration)}, and
+     * {@link E3DCFrameReader#readFrame(InputStream, AES256Helper)} for decrypting in place.</p>
+     *
+     * @param socket      A socket to read from.
+     * @param crypto      The helper to decrypt with.
+     * @param frameReader The reader to read the frame with.
+     * @param timeout     The time receiving may take.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the timeout elapsed, or the decrypted response.
+     */
+    public static Either<Exception, byte[]> receiveFrameFromServer(Socket socket, AES256Helper crypto, E3DCFrameReader frameReader, Duration timeout) {
+        return receiveBeforeDeadline(socket, timeout, in -> frameReader.readFrame(in, crypto))
+                .peek(frame -> logger.debug("Received and decrypted frame of " + frame.length + " bytes."));
+    }
+
+    /**
+     * Receive exactly one frame from a socket and decrypt it in the reader's buffer, giving up at a deadline.
+     * See {@link E3DCConnector#receiveFrameFromServer(Socket, AES256Helper, E3DCFrameReader, Duration)}.
+     *
+     * @param socket      A socket to read from.
+     * @param crypto      The helper to decrypt with.
+     * @param frameReader The reader to read the frame with.
+     * @param deadline    The time the frame must have been received by.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the deadline passed, or the decrypted response.
+     */
+    public static Either<Exception, byte[]> receiveFrameFromServer(Socket socket, AES256Helper crypto, E3DCFrameReader frameReader, Instant deadline) {
+        return receiveFrameFromServer(socket, crypto, frameReader, Duration.between(Instant.now(), deadline));
+    }
+
+    /**
+     * <p>Receive exactly one frame from a socket, decoding it while it arrives, giving up when the timeout elapses.</p>
+     * <p>See {@link E3DCConnector#receiveFrameFromServer(Socket, AES256Helper, E3DCFrameReader, RSCPDataHandler)}. The
+     * handler may have been told about part of the frame when the timeout elapses.</p>
+     *
+     * @param socket      A socket to read from.
+     * @param crypto      The helper to decrypt with.
+     * @param frameReader The reader to read the frame with.
+     * @param handler     The handler to report the frame and its elements to.
+     * @param timeout     The time receiving may take.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the timeout elapsed, or the size of the decrypted frame.
+     */
+    public static Either<Exception, Integer> receiveFrameFromServer(Socket socket, AES256Helper crypto, E3DCFrameReader frameReader, RSCPDataHandler handler, Duration timeout) {
+        return receiveBeforeDeadline(socket, timeout, in -> frameReader.readFrame(in, crypto, new RSCPStreamDecoder(handler)))
+                .peek(frameLength -> logger.debug("Received and decoded frame of " + frameLength + " bytes."));
+    }
+
+    /**
+     * Receive exactly one frame from a socket, decoding it while it arrives, giving up at a deadline.
+     * See {@link E3DCConnector#receiveFrameFromServer(Socket, AES256Helper, E3DCFrameReader, RSCPDataHandler, Duration)}.
+     *
+     * @param socket      A socket to read from.
+     * @param crypto      The helper to decrypt with.
+     * @param frameReader The reader to read the frame with.
+     * @param handler     The handler to report the frame and its elements to.
+     * @param deadline    The time the frame must have been received by.
+     * @return Either an exception, an {@link E3DCTimeoutException} if the deadline passed, or the size of the decrypted frame.
+     */
+    public static Either<Exception, Integer> receiveFrameFromServer(Socket socket, AES256Helper crypto, E3DCFrameReader frameReader, RSCPDataHandler handler, Instant deadline) {
+        return receiveFrameFromServer(socket, crypto, frameReader, handler, Duration.between(Instant.now(), deadline));
+    }
+
+    /**
+     * Read from a socket, limiting each read to the time left until the deadline, and restoring the socket's timeout afterwards.
+     */
+    private static <T> Either<Exception, T> receiveBeforeDeadline(Socket socket, Duration timeout, FrameRead<T> read) {
+        long deadlineNanos = System.nanoTime() + timeout.toNanos();
+        if (isNotConnected(socket)) {
+            return left(new IllegalStateException("Not connected to server. Must connect to server first before sending."));
+        }
+
+        int previousSoTimeout = 0;
+        try {
+            previousSoTimeout = socket.getSoTimeout();
+            return right(read.read(new DeadlineInputStream(socket, deadlineNanos)));
+        } catch (SocketTimeoutException e) {
+            return left(new E3DCTimeoutException(E3DCTimeoutException.Operation.RECEIVE, timeout));
+        } catch (Exception e) {
+            logger.error("Error while receiving frame.", e);
+            return left(e);
+        } finally {
+            try {
+                socket.setSoTimeout(previousSoTimeout);
+            } catch (IOException e) {
+                // socket closed
+            }
+        }
+    }
+
+    /**
+     * Round remaining nanoseconds up to whole milliseconds, as accepted by socket timeouts.
+     */
+    private static int toTimeoutMillis(long remainingNanos) {
+        if (remainingNanos <= 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (remainingNanos + 999_999) / 1_000_000);
+    }
+
+    /**
+     * Reads one frame from a stream.
+     */
+    private interface FrameRead<T> {
+        T read(InputStream in) throws IOException;
+    }
+
+    /**
+     * Limits each read from a socket to the time left until a deadline.
+     */
+    private static class DeadlineInputStream extends FilterInputStream {
+        private final Socket socket;
+        private final long deadlineNanos;
+
+        private DeadlineInputStream(Socket socket, long deadlineNanos) throws IOException {
+            super(socket.getInputStream());
+            this.socket = socket;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            applyRemainingTime();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            applyRemainingTime();
+            return super.read(b, off, len);
+        }
+
+        private void applyRemainingTime() throws IOException {
+            int remainingMillis = toTimeoutMillis(deadlineNanos - System.nanoTime());
+            if (remainingMillis <= 0) {
+                throw new SocketTimeoutException("Deadline passed.");
+            }
+            socket.setSoTimeout(remainingMillis);
+        }
+    }
 }
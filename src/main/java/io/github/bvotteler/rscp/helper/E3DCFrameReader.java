@@ -0,0 +1,281 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPStreamDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * <p>Reads exactly one encrypted frame at a time from a stream.</p>
+ * <p>Each frame is sent as a whole number of 32 byte cipher blocks. The reader decrypts the first block to learn the
+ * frame length from the frame header, then reads exactly the remaining blocks of that frame. Replies split across
+ * several TCP segments are therefore read completely, and the next reply is left in the stream.</p>
+ * <p>The cipher text buffer is kept between calls, so one reader per connection avoids per frame buffers.
+ * Instances are not thread-safe.</p>
+ */
+public class E3DCFrameReader {
+    static final int cipherBlockSize = 32;
+    // cipher text read per step when streaming, the buffer never grows beyond this for streamed frames
+    static final int streamChunkSize = 4096;
+    private static final Logger logger = LoggerFactory.getLogger(E3DCFrameReader.class.getSimpleName());
+
+    private byte[] cipherBuffer = new byte[4096];
+    // whether the current read has received part of a frame, or of a padding block
+    private boolean inFrame;
+
+    /**
+     * <p>Check whether the last read failed after receiving part of a frame, e.g. on a read timeout.</p>
+     * <p>The stream is then out of sync with the CBC chain, and the connection cannot be used anymore. A read that
+     * failed before the first byte of a frame arrived can simply be retried.</p>
+     *
+     * @return Whether the last read stopped in the middle of a frame.
+     */
+    public boolean isInFrame() {
+        return inFrame;
+    }
+
+    /**
+     * Read and decrypt the next frame from a stream.
+     *
+     * @param in          The stream to read from, typically the input stream of a socket.
+     * @param decryptFunc A function to decrypt cipher blocks, e.g. {@link AES256Helper#decrypt(byte[])}.
+     *                    It is called twice per frame (first block, remaining blocks), which continues the CBC chain as
+     *                    if the frame was decrypted at once.
+     * @return The decrypted frame, without padding.
+     * @throws IOException If the stream ends or fails before a complete frame was read, or the data is not a frame.
+     */
+    public byte[] readFrame(InputStream in, Function<byte[], byte[]> decryptFunc) throws IOException {
+        byte[] firstBlock;
+        do {
+            readFirstBlock(in);
+            firstBlock = decryptBlocks(decryptFunc, Arrays.copyOf(cipherBuffer, cipherBlockSize));
+        } while (isPaddingBlock(firstBlock));
+
+        int frameLength;
+        try {
+            frameLength = RSCPFrame.readFrameByteCount(firstBlock, 0);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Received data is not an RSCP frame (wrong key, or stream out of sync?).", e);
+        }
+
+        int cipherLength = getCipherLength(frameLength);
+        logger.debug("Receiving frame of " + frameLength + " bytes (" + cipherLength + " bytes encrypted).");
+        byte[] frame = Arrays.copyOf(firstBlock, frameLength);
+        if (cipherLength > cipherBlockSize) {
+            int remainingLength = cipherLength - cipherBlockSize;
+            if (cipherBuffer.length < remainingLength) {
+                cipherBuffer = new byte[remainingLength];
+            }
+            readFully(in, cipherBuffer, 0, remainingLength);
+            byte[] remainingBlocks = decryptBlocks(decryptFunc, Arrays.copyOf(cipherBuffer, remainingLength));
+            System.arraycopy(remainingBlocks, 0, frame, cipherBlockSize, frameLength - cipherBlockSize);
+        }
+
+        inFrame = false;
+        return frame;
+    }
+
+    /**
+     * <p>Read and decrypt the next frame from a stream.</p>
+     * <p>Unlike {@link E3DCFrameReader#readFrame(InputStream, Function)}, the cipher blocks are decrypted in place in
+     * the reader's buffer, so the returned frame is the only array allocated per frame.</p>
+     *
+     * @param in     The stream to read from, typically the input stream of a socket.
+     * @param crypto The helper to decrypt with.
+     * @return The decrypted frame, without padding.
+     * @throws IOException If the stream ends or fails before a complete frame was read, or the data is not a frame.
+     */
+    public byte[] readFrame(InputStream in, AES256Helper crypto) throws IOException {
+        do {
+            readFirstBlock(in);
+        } while (crypto.decrypt(cipherBuffer, 0, cipherBlockSize, cipherBuffer, 0) == 0);
+
+        int frameLength;
+        try {
+            frameLength = RSCPFrame.readFrameByteCount(cipherBuffer, 0);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Received data is not an RSCP frame (wrong key, or stream out of sync?).", e);
+        }
+
+        int cipherLength = getCipherLength(frameLength);
+        logger.debug("Receiving frame of " + frameLength + " bytes (" + cipherLength + " bytes encrypted).");
+        if (cipherLength > cipherBlockSize) {
+            if (cipherBuffer.length < cipherLength) {
+                cipherBuffer = Arrays.copyOf(cipherBuffer, cipherLength);
+            }
+            readFully(in, cipherBuffer, cipherBlockSize, cipherLength - cipherBlockSize);
+            crypto.decrypt(cipherBuffer, cipherBlockSize, cipherLength - cipherBlockSize, cipherBuffer, cipherBlockSize);
+        }
+
+        inFrame = false;
+        return Arrays.copyOf(cipherBuffer, frameLength);
+    }
+
+    /**
+     * <p>Read the next frame from a stream, decrypting and decoding it while it arrives.</p>
+     * <p>Whole cipher blocks are decrypted as soon as they have been received, and passed to the decoder, which
+     * reports each element to its handler once complete. The frame is never held as a whole, so memory use stays at
+     * one {@value #streamChunkSize} byte buffer however large the frame is, e.g. for DB history replies.</p>
+     *
+     * @param in      The stream to read from, typically the input stream of a socket.
+     * @param crypto  The helper to decrypt with.
+     * @param decoder The decoder to pass the frame to. A partially decoded frame left by a failed call is discarded.
+     * @return The size of the decrypted frame, without padding.
+     * @throws IOException If the stream ends or fails before a complete frame was read, the data is not a frame, or
+     *                     the frame could not be decoded. A frame that could not be decoded is still read completely.
+     */
+    public int readFrame(InputStream in, AES256Helper crypto, RSCPStreamDecoder decoder) throws IOException {
+        decoder.reset();
+        do {
+            readFirstBlock(in);
+        } while (crypto.decrypt(cipherBuffer, 0, cipherBlockSize, cipherBuffer, 0) == 0);
+
+        int frameLength;
+        try {
+            frameLength = RSCPFrame.readFrameByteCount(cipherBuffer, 0);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Received data is not an RSCP frame (wrong key, or stream out of sync?).", e);
+        }
+
+        int cipherLength = getCipherLength(frameLength);
+        logger.debug("Streaming frame of " + frameLength + " bytes (" + cipherLength + " bytes encrypted).");
+        int decodedLength = Math.min(cipherBlockSize, frameLength);
+        // once decoding failed, the rest of the frame is still read to keep the stream in sync
+        RuntimeException decodeError = feed(decoder, cipherBuffer, decodedLength, null);
+
+        int chunkSize = Math.min(cipherBuffer.length, streamChunkSize);
+        int remainingLength = cipherLength - cipherBlockSize;
+        // bytes received, but not yet decrypted as they do not fill a block
+        int received = 0;
+        while (remainingLength > 0) {
+            int bytesRead = in.read(cipherBuffer, received, Math.min(chunkSize, remainingLength) - received);
+            if (bytesRead == -1) {
+                throw new EOFException("Socket closed by server after " + (cipherLength - remainingLength + received)
+                        + " of " + cipherLength + " expected bytes.");
+            }
+            received += bytesRead;
+
+            int blocksLength = received - received % cipherBlockSize;
+            if (blocksLength > 0) {
+                crypto.decrypt(cipherBuffer, 0, blocksLength, cipherBuffer, 0);
+                int frameBytes = Math.min(blocksLength, frameLength - decodedLength);
+                decodeError = feed(decoder, cipherBuffer, frameBytes, decodeError);
+                decodedLength += frameBytes;
+                remainingLength -= blocksLength;
+                received -= blocksLength;
+                System.arraycopy(cipherBuffer, blocksLength, cipherBuffer, 0, received);
+            }
+        }
+        inFrame = false;
+
+        if (decodeError != null) {
+            throw new IOException("Received frame could not be decoded.", decodeError);
+        }
+        if (!decoder.isAtFrameBoundary()) {
+            throw new IOException("Received frame is malformed, its data does not end with the frame.");
+        }
+        return frameLength;
+    }
+
+    /**
+     * Pass decrypted bytes to the decoder, unless decoding failed before.
+     * @return The error decoding failed with, or {@code null}.
+     */
+    private static RuntimeException feed(RSCPStreamDecoder decoder, byte[] bytes, int length, RuntimeException decodeError) {
+        if (decodeError != null) {
+            return decodeError;
+        }
+        try {
+            decoder.feed(bytes, 0, length);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Get the number of encrypted bytes a frame of the given size is sent as.
+     * @param frameLength The size of the unencrypted frame.
+     * @return The frame size rounded up to whole cipher blocks.
+     */
+    static int getCipherLength(int frameLength) {
+        return (frameLength + cipherBlockSize - 1) / cipherBlockSize * cipherBlockSize;
+    }
+
+    /**
+     * Decrypt whole cipher blocks, restoring trailing zero bytes that the decrypt function strips as padding.
+     */
+    static byte[] decryptBlocks(Function<byte[], byte[]> decryptFunc, byte[] blocks) {
+        byte[] decrypted = decryptFunc.apply(blocks);
+        return decrypted.length == blocks.length ? decrypted : Arrays.copyOf(decrypted, blocks.length);
+    }
+
+    /**
+     * <p>Check whether a decrypted block holds nothing but zero padding.</p>
+     * <p>Senders padding like {@link BouncyAES256Helper} add a block of zeros after frames filling whole blocks.
+     * A frame never starts with zeros, so such a block is skipped.</p>
+     */
+    static boolean isPaddingBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the first cipher block of a frame or padding block into the start of the buffer.
+     */
+    private void readFirstBlock(InputStream in) throws IOException {
+        inFrame = false;
+        int first = in.read();
+        if (first == -1) {
+            throw new EOFException("Socket closed by server.");
+        }
+        inFrame = true;
+        cipherBuffer[0] = (byte) first;
+        readFully(in, cipherBuffer, 1, cipherBlockSize - 1);
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int bytesRead = in.read(buffer, offset + read, length - read);
+            if (bytesRead == -1) {
+                throw new EOFException("Socket closed by server after " + read + " of " + length + " expected bytes.");
+            }
+            read += bytesRead;
+        }
+    }
+}
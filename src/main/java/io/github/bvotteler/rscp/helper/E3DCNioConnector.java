@@ -0,0 +1,335 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <p>Non-blocking connector that keeps many RSCP sessions on a single selector thread.</p>
+ * <p>Unlike {@link E3DCConnector}, no thread is blocked per connection while waiting for a reply: all sessions
+ * opened through one connector are read and written by its selector thread. Frames are received through the
+ * {@link E3DCNioSession.FrameListener} passed to {@link E3DCNioConnector#connect(String, int, AES256Helper, E3DCNioSession.FrameListener)}.</p>
+ * <p>Connect futures and listeners are completed and called on a callback executor, never on the selector thread, so
+ * they may block without stalling the other sessions.</p>
+ * <p>To spread a large number of sessions over a few threads, use a few connectors.</p>
+ */
+public class E3DCNioConnector implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCNioConnector.class.getSimpleName());
+
+    private final Selector selector;
+    private final Thread selectorThread;
+    private final Executor callbackExecutor;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    // guards acceptingTasks, so no task is queued after the selector thread ran the remaining ones
+    private final Object taskLock = new Object();
+    private boolean acceptingTasks = true;
+    private final Set<E3DCNioSession> sessions = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    /**
+     * Create a connector completing futures and calling listeners on the {@link ForkJoinPool#commonPool()}.
+     */
+    public E3DCNioConnector() throws IOException {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a connector.
+     *
+     * @param callbackExecutor Completes the connect futures and calls the frame listeners.
+     */
+    public E3DCNioConnector(Executor callbackExecutor) throws IOException {
+        this.callbackExecutor = callbackExecutor;
+        this.selector = Selector.open();
+        this.selectorThread = new Thread(this::runSelectorLoop, "e3dc-nio-selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * Open a non-blocking connection to an E3DC server.
+     *
+     * @param ipAddress The address of the server.
+     * @param port      The port of the server.
+     * @param crypto    The crypto helper of this session, must not be shared with other sessions.
+     * @param listener  Receives the frames and the closing of the session.
+     * @return A future that completes with the session once connected, or exceptionally if the connection fails.
+     */
+    public CompletableFuture<E3DCNioSession> connect(String ipAddress, int port, AES256Helper crypto, E3DCNioSession.FrameListener listener) {
+        CompletableFuture<E3DCNioSession> connected = new CompletableFuture<>();
+        if (!running) {
+            connected.completeExceptionally(new IllegalStateException("Connector is closed."));
+            return connected;
+        }
+
+        // resolve on the calling thread, a slow lookup must not stall the selector thread
+        InetSocketAddress address = new InetSocketAddress(ipAddress, port);
+        if (address.isUnresolved()) {
+            connected.completeExceptionally(new UnknownHostException(ipAddress));
+            return connected;
+        }
+
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            E3DCNioSession session = new E3DCNioSession(this, channel, crypto, listener);
+            sessions.add(session);
+
+            boolean queued = runOnSelectorThread(() -> {
+                try {
+                    boolean connectedImmediately = channel.connect(address);
+                    SelectionKey key = channel.register(selector, connectedImmediately ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT,
+                            new PendingConnect(session, connected));
+                    session.register(key);
+                    if (connectedImmediately) {
+                        key.attach(session);
+                        session.updateWriteInterest();
+                        completeConnect(connected, session, null);
+                    }
+                } catch (Exception e) {
+                    logger.error("Failed to connect to host.", e);
+                    session.closeWithCause(e);
+                    completeConnect(connected, null, e);
+                }
+            });
+            if (!queued) {
+                // closed concurrently, the selector thread will not run the task
+                Exception cause = new IllegalStateException("Connector is closed.");
+                session.closeWithCause(cause);
+                connected.completeExceptionally(cause);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to open channel.", e);
+            connected.completeExceptionally(e);
+        }
+        return connected;
+    }
+
+    /**
+     * Get the number of open sessions.
+     * @return The number of sessions connected or connecting through this connector.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Close all sessions and stop the selector thread. Waits for the selector thread to finish, unless called on it.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        if (Thread.currentThread() == selectorThread) {
+            // the loop ends once the current key has been handled
+            return;
+        }
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void requestWrite(E3DCNioSession session) {
+        runOnSelectorThread(() -> {
+            try {
+                session.updateWriteInterest();
+            } catch (CancelledKeyException e) {
+                // session closed by another thread since the check for a valid key
+                session.closeWithCause(e);
+            }
+        });
+    }
+
+    void onSessionClosed(E3DCNioSession session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Run a callback on the callback executor, or on the calling thread if the executor rejects it.
+     */
+    void executeCallback(Runnable callback) {
+        try {
+            callbackExecutor.execute(callback);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Callback executor rejected callback, running it on the calling thread.", e);
+            callback.run();
+        }
+    }
+
+    /**
+     * Queue a task for the selector thread.
+     * @return Whether the task was queued, {@code false} once the selector thread has stopped taking tasks.
+     */
+    private boolean runOnSelectorThread(Runnable task) {
+        synchronized (taskLock) {
+            if (!acceptingTasks) {
+                return false;
+            }
+            pendingTasks.add(task);
+        }
+        selector.wakeup();
+        return true;
+    }
+
+    private void completeConnect(CompletableFuture<E3DCNioSession> connected, E3DCNioSession session, Exception cause) {
+        executeCallback(() -> {
+            if (cause != null) {
+                connected.completeExceptionally(cause);
+            } else {
+                connected.complete(session);
+            }
+        });
+    }
+
+    private void runSelectorLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = pendingTasks.poll()) != null) {
+                    runTask(task);
+                }
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    try {
+                        handleSelectedKey(key);
+                    } catch (RuntimeException e) {
+                        // fail only the affected session, the selector thread serves all of them
+                        logger.error("Failed to handle selected key, closing its session.", e);
+                        closeAttachedSession(key, e);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            logger.error("Selector failed, closing all sessions.", e);
+        } finally {
+            synchronized (taskLock) {
+                acceptingTasks = false;
+            }
+            // let pending connects fail instead of leaving their futures incomplete
+            Runnable task;
+            while ((task = pendingTasks.poll()) != null) {
+                runTask(task);
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof PendingConnect) {
+                    completeConnect(((PendingConnect) key.attachment()).connected, null, new IllegalStateException("Connector is closed."));
+                }
+            }
+            for (E3DCNioSession session : sessions) {
+                session.closeWithCause(null);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.error("Selector task failed.", e);
+        }
+    }
+
+    private void closeAttachedSession(SelectionKey key, Exception cause) {
+        Object attachment = key.attachment();
+        if (attachment instanceof PendingConnect) {
+            PendingConnect pendingConnect = (PendingConnect) attachment;
+            pendingConnect.session.closeWithCause(cause);
+            completeConnect(pendingConnect.connected, null, cause);
+        } else if (attachment instanceof E3DCNioSession) {
+            ((E3DCNioSession) attachment).closeWithCause(cause);
+        }
+    }
+
+    private void handleSelectedKey(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof PendingConnect) {
+            PendingConnect pendingConnect = (PendingConnect) attachment;
+            try {
+                if (key.isValid() && key.isConnectable()) {
+                    pendingConnect.session.onConnectable();
+                    key.attach(pendingConnect.session);
+                    completeConnect(pendingConnect.connected, pendingConnect.session, null);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to connect to host.", e);
+                pendingConnect.session.closeWithCause(e);
+                completeConnect(pendingConnect.connected, null, e);
+            }
+            return;
+        }
+
+        E3DCNioSession session = (E3DCNioSession) attachment;
+        try {
+            if (key.isValid() && key.isReadable()) {
+                session.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.onWritable();
+            }
+        } catch (Exception e) {
+            logger.debug("Closing session after error.", e);
+            session.closeWithCause(e);
+        }
+    }
+
+    private static class PendingConnect {
+        private final E3DCNioSession session;
+        private final CompletableFuture<E3DCNioSession> connected;
+
+        PendingConnect(E3DCNioSession session, CompletableFuture<E3DCNioSession> connected) {
+            this.session = session;
+            this.connected = connected;
+        }
+    }
+}
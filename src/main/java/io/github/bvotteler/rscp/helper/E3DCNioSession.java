@@ -0,0 +1,297 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.github.bvotteler.rscp.helper.E3DCFrameReader.cipherBlockSize;
+
+/**
+ * <p>A single RSCP connection managed by an {@link E3DCNioConnector}.</p>
+ * <p>Each session has its own {@link AES256Helper}, so the CBC IV chains of different sessions are independent.
+ * Received bytes are reassembled into frames incrementally and passed to the session's {@link FrameListener}
+ * on the connector's callback executor.</p>
+ */
+public class E3DCNioSession implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCNioSession.class.getSimpleName());
+
+    private final E3DCNioConnector connector;
+    private final SocketChannel channel;
+    private final AES256Helper crypto;
+    private final FrameListener listener;
+    // guarded by itself, encrypting and queueing must happen in the same order
+    private final Queue<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private SelectionKey selectionKey;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // guarded by itself, listener calls waiting to run on the callback executor, one at a time and in order
+    private final Queue<Runnable> listenerCalls = new ArrayDeque<>();
+    private boolean listenerCallsRunning;
+
+    // only accessed from the selector thread
+    private ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+    private int frameLength = -1;
+
+    E3DCNioSession(E3DCNioConnector connector, SocketChannel channel, AES256Helper crypto, FrameListener listener) {
+        this.connector = connector;
+        this.channel = channel;
+        this.crypto = crypto;
+        this.listener = listener;
+    }
+
+    /**
+     * <p>Encrypt a frame and queue it for sending. Does not block.</p>
+     * <p>Frames are sent in the order this method is called, also when called from several threads.</p>
+     * @param frame The unencrypted frame as byte array.
+     * @throws IllegalStateException If the session is closed.
+     */
+    public void send(byte[] frame) {
+        if (closed.get()) {
+            throw new IllegalStateException("Session is closed.");
+        }
+        synchronized (writeQueue) {
+            writeQueue.add(ByteBuffer.wrap(crypto.encrypt(frame)));
+        }
+        connector.requestWrite(this);
+    }
+
+    /**
+     * Get the remote address of this session.
+     * @return The address, or {@code null} if unknown.
+     */
+    public String getRemoteAddress() {
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    /**
+     * Close the connection. Frames that have not been sent yet are dropped.
+     */
+    @Override
+    public void close() {
+        closeWithCause(null);
+    }
+
+    void register(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void onConnectable() throws IOException {
+        channel.finishConnect();
+        selectionKey.interestOps(SelectionKey.OP_READ | (hasPendingWrites() ? SelectionKey.OP_WRITE : 0));
+    }
+
+    void onWritable() throws IOException {
+        synchronized (writeQueue) {
+            ByteBuffer head;
+            while ((head = writeQueue.peek()) != null) {
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    // socket buffer full, wait for the next OP_WRITE
+                    return;
+                }
+                writeQueue.poll();
+            }
+        }
+        selectionKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    void onReadable() throws IOException {
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead == -1) {
+            throw new EOFException("Socket closed by server.");
+        }
+
+        readBuffer.flip();
+        while (extractFrame()) {
+            // keep going, the buffer may hold several frames
+        }
+        readBuffer.compact();
+    }
+
+    void updateWriteInterest() {
+        if (selectionKey != null && selectionKey.isValid() && channel.isConnected() && hasPendingWrites()) {
+            selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    void closeWithCause(Exception cause) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        connector.onSessionClosed(this);
+        callListener(() -> {
+            try {
+                listener.onClosed(this, cause);
+            } catch (Exception e) {
+                logger.error("Frame listener failed while handling closed session.", e);
+            }
+        });
+    }
+
+    private boolean hasPendingWrites() {
+        synchronized (writeQueue) {
+            return !writeQueue.isEmpty();
+        }
+    }
+
+    /**
+     * Take one frame from the (flipped) read buffer, if it has been received completely.
+     */
+    private boolean extractFrame() throws IOException {
+        // frames are decrypted in place, the first block stays in the buffer until the whole frame has been received
+        byte[] buffer = readBuffer.array();
+        if (frameLength < 0) {
+            if (readBuffer.remaining() < cipherBlockSize) {
+                return false;
+            }
+            int blockOffset = readBuffer.arrayOffset() + readBuffer.position();
+            if (crypto.decrypt(buffer, blockOffset, cipherBlockSize, buffer, blockOffset) == 0) {
+                // zero padding block
+                readBuffer.position(readBuffer.position() + cipherBlockSize);
+                return true;
+            }
+            try {
+                frameLength = RSCPFrame.readFrameByteCount(buffer, blockOffset);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Received data is not an RSCP frame (wrong key, or stream out of sync?).", e);
+            }
+        }
+
+        int cipherLength = E3DCFrameReader.getCipherLength(frameLength);
+        if (readBuffer.remaining() < cipherLength) {
+            ensureReadCapacity(cipherLength);
+            return false;
+        }
+
+        int frameOffset = readBuffer.arrayOffset() + readBuffer.position();
+        if (cipherLength > cipherBlockSize) {
+            int remainingOffset = frameOffset + cipherBlockSize;
+            crypto.decrypt(buffer, remainingOffset, cipherLength - cipherBlockSize, buffer, remainingOffset);
+        }
+        byte[] frame = Arrays.copyOfRange(buffer, frameOffset, frameOffset + frameLength);
+        readBuffer.position(readBuffer.position() + cipherLength);
+        frameLength = -1;
+
+        callListener(() -> {
+            try {
+                listener.onFrame(this, frame);
+            } catch (Exception e) {
+                logger.error("Frame listener failed while handling received frame.", e);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Queue a listener call, starting a run of the queued calls on the callback executor unless one is running.
+     */
+    private void callListener(Runnable call) {
+        synchronized (listenerCalls) {
+            listenerCalls.add(call);
+            if (listenerCallsRunning) {
+                return;
+            }
+            listenerCallsRunning = true;
+        }
+        connector.executeCallback(this::runListenerCalls);
+    }
+
+    private void runListenerCalls() {
+        while (true) {
+            Runnable call;
+            synchronized (listenerCalls) {
+                call = listenerCalls.poll();
+                if (call == null) {
+                    listenerCallsRunning = false;
+                    return;
+                }
+            }
+            call.run();
+        }
+    }
+
+    private void ensureReadCapacity(int bytesNeeded) {
+        if (readBuffer.capacity() < bytesNeeded) {
+            // buffer is flipped, keep its remaining content flipped as well
+            ByteBuffer larger = ByteBuffer.allocate(bytesNeeded);
+            larger.put(readBuffer);
+            larger.flip();
+            readBuffer = larger;
+        }
+    }
+
+    /**
+     * Receives the frames of an {@link E3DCNioSession}. Called on the connector's callback executor, one call at a time
+     * per session and in the order the frames were received.
+     */
+    public interface FrameListener {
+        /**
+         * Called for every frame received and decrypted.
+         * @param session The session the frame was received on.
+         * @param frame The decrypted frame, e.g. to be read with {@link RSCPFrame.Builder#buildFromRawBytes(byte[])}.
+         */
+        void onFrame(E3DCNioSession session, byte[] frame);
+
+        /**
+         * Called once when the session has been closed, either by {@link E3DCNioSession#close()} or due to an error.
+         * @param session The closed session.
+         * @param cause The error that closed the session, or {@code null} if it was closed on purpose.
+         */
+        default void onClosed(E3DCNioSession session, Exception cause) {
+        }
+    }
+}
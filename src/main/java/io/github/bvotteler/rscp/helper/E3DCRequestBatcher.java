@@ -0,0 +1,256 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Coalesces requests made independently into shared frames.</p>
+ * <p>Requests made within the batching window are sent as the data elements of one {@link RSCPFrame} through an
+ * {@link E3DCSession}, so they share one frame header, one encryption and one round trip. A batch is sent early when
+ * the next request would make the frame exceed the maximum frame size. Identical requests in the same batch are sent
+ * once.</p>
+ * <p>Each element of the response is passed to the request with the matching request tag, e.g. the
+ * {@link io.github.bvotteler.rscp.RSCPTag#TAG_EMS_POWER_PV} element to the caller that requested
+ * {@link io.github.bvotteler.rscp.RSCPTag#TAG_EMS_REQ_POWER_PV}.</p>
+ * <p>The batcher is thread-safe.</p>
+ */
+public class E3DCRequestBatcher implements Closeable {
+    /**
+     * The largest frame the 16 bit length field of the frame header allows, including header and checksum.
+     */
+    public static final int maxFrameByteCountLimit = RSCPFrame.offsetData + 0xFFFF + RSCPFrame.sizeCRC;
+    private static final Logger logger = LoggerFactory.getLogger(E3DCRequestBatcher.class.getSimpleName());
+
+    private final E3DCSession session;
+    private final long windowNanos;
+    private final int maxFrameByteCount;
+    private final ScheduledExecutorService scheduler;
+
+    // guarded by this
+    private Map<RSCPData, List<CompletableFuture<RSCPData>>> batch = new LinkedHashMap<>();
+    private int batchFrameByteCount = emptyFrameByteCount();
+    // counts taken batches, so a flush scheduled for a batch sent early does not send the next one
+    private long batchGeneration;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    /**
+     * Create a batcher sending through a session.
+     *
+     * @param session           The session to send batches with.
+     * @param window            How long to collect requests after the first request of a batch, e.g. a few milliseconds.
+     * @param maxFrameByteCount The maximum size of a batch frame in bytes, including header and checksum.
+     *                          At most {@link E3DCRequestBatcher#maxFrameByteCountLimit}.
+     */
+    public E3DCRequestBatcher(E3DCSession session, Duration window, int maxFrameByteCount) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("Batching window cannot be negative.");
+        }
+        if (maxFrameByteCount <= emptyFrameByteCount() || maxFrameByteCount > maxFrameByteCountLimit) {
+            throw new IllegalArgumentException("Maximum frame size must be between " + (emptyFrameByteCount() + 1)
+                    + " and " + maxFrameByteCountLimit + " bytes.");
+        }
+        this.session = session;
+        this.windowNanos = window.toNanos();
+        this.maxFrameByteCount = maxFrameByteCount;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-request-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Create a batcher sending through a session, using frames of up to {@link E3DCRequestBatcher#maxFrameByteCountLimit} bytes.
+     *
+     * @param session The session to send batches with.
+     * @param window  How long to collect requests after the first request of a batch.
+     */
+    public E3DCRequestBatcher(E3DCSession session, Duration window) {
+        this(session, window, maxFrameByteCountLimit);
+    }
+
+    /**
+     * Add a request to the current batch.
+     *
+     * @param request The request data element, e.g. {@code RSCPData.builder().tag(RSCPTag.TAG_EMS_REQ_POWER_PV).noneValue().build()}.
+     * @return A future completing with the response data element, or exceptionally if sending fails, the response has no
+     * element for the request, or the request alone does not fit into a frame.
+     */
+    public CompletableFuture<RSCPData> request(RSCPData request) {
+        CompletableFuture<RSCPData> future = new CompletableFuture<>();
+        int byteCount = request.getByteCount();
+        if (emptyFrameByteCount() + byteCount > maxFrameByteCount) {
+            future.completeExceptionally(new IllegalArgumentException("Request of " + byteCount + " bytes does not fit into a frame of at most " + maxFrameByteCount + " bytes."));
+            return future;
+        }
+
+        Map<RSCPData, List<CompletableFuture<RSCPData>>> fullBatch = null;
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("Batcher is closed."));
+                return future;
+            }
+            List<CompletableFuture<RSCPData>> sameRequest = batch.get(request);
+            if (sameRequest != null) {
+                sameRequest.add(future);
+                return future;
+            }
+            if (batchFrameByteCount + byteCount > maxFrameByteCount) {
+                fullBatch = takeBatch();
+            }
+            if (batch.isEmpty()) {
+                scheduleFlush();
+            }
+            List<CompletableFuture<RSCPData>> futures = new ArrayList<>(1);
+            futures.add(future);
+            batch.put(request, futures);
+            batchFrameByteCount += byteCount;
+        }
+
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+        return future;
+    }
+
+    /**
+     * Send the current batch now, without waiting for the batching window to end.
+     */
+    public void flush() {
+        Map<RSCPData, List<CompletableFuture<RSCPData>>> currentBatch;
+        synchronized (this) {
+            currentBatch = takeBatch();
+        }
+        if (!currentBatch.isEmpty()) {
+            send(currentBatch);
+        }
+    }
+
+    /**
+     * Send the current batch and stop batching. The session is not closed.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdown();
+    }
+
+    private static int emptyFrameByteCount() {
+        return RSCPFrame.offsetData + RSCPFrame.sizeCRC;
+    }
+
+    private void scheduleFlush() {
+        long generation = batchGeneration;
+        scheduledFlush = scheduler.schedule(() -> flushScheduled(generation), windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Send the batch a flush was scheduled for, unless it has been sent already.
+     */
+    private void flushScheduled(long generation) {
+        Map<RSCPData, List<CompletableFuture<RSCPData>>> currentBatch;
+        synchronized (this) {
+            if (generation != batchGeneration) {
+                return;
+            }
+            currentBatch = takeBatch();
+        }
+        if (!currentBatch.isEmpty()) {
+            send(currentBatch);
+        }
+    }
+
+    private Map<RSCPData, List<CompletableFuture<RSCPData>>> takeBatch() {
+        Map<RSCPData, List<CompletableFuture<RSCPData>>> taken = batch;
+        batch = new LinkedHashMap<>();
+        batchFrameByteCount = emptyFrameByteCount();
+        batchGeneration++;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return taken;
+    }
+
+    private void send(Map<RSCPData, List<CompletableFuture<RSCPData>>> requests) {
+        RSCPFrame frame = RSCPFrame.builder()
+                .timestamp(Instant.now())
+                .addData(new ArrayList<>(requests.keySet()))
+                .build();
+        logger.debug("Sending batch of " + requests.size() + " requests in " + frame.getFrameByteCount() + " bytes.");
+
+        session.send(frame).whenComplete((response, error) -> {
+            if (error != null) {
+                requests.values().forEach(futures -> futures.forEach(future -> future.completeExceptionally(error)));
+            } else {
+                distribute(requests, response);
+            }
+        });
+    }
+
+    private static void distribute(Map<RSCPData, List<CompletableFuture<RSCPData>>> requests, RSCPFrame response) {
+        // in request order, so repeated tags with different values are answered in order as well
+        Map<RSCPData, List<CompletableFuture<RSCPData>>> unanswered = new LinkedHashMap<>(requests);
+        for (RSCPData data : response.getData()) {
+            Iterator<Map.Entry<RSCPData, List<CompletableFuture<RSCPData>>>> it = unanswered.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<RSCPData, List<CompletableFuture<RSCPData>>> entry = it.next();
+                if (E3DCSession.responseTagId(entry.getKey().getDataTagId()) == data.getDataTagId()) {
+                    entry.getValue().forEach(future -> future.complete(data));
+                    it.remove();
+                    break;
+                }
+            }
+        }
+
+        for (Map.Entry<RSCPData, List<CompletableFuture<RSCPData>>> entry : unanswered.entrySet()) {
+            IllegalStateException error = new IllegalStateException("Response contains no element for request tag "
+                    + String.format("%08X", entry.getKey().getDataTagId()) + ".");
+            entry.getValue().forEach(future -> future.completeExceptionally(error));
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A pipelined RSCP connection: several requests can be in flight at once.</p>
+ * <p>Requests are encrypted and written in the order {@link E3DCSession#send(RSCPFrame)} is called. A reader task
+ * receives the responses and completes the future of the request they belong to. A response belongs to the oldest
+ * pending request whose first data element has the matching request tag, as the server answers e.g.
+ * {@link io.github.bvotteler.rscp.RSCPTag#TAG_EMS_REQ_POWER_PV} with {@link io.github.bvotteler.rscp.RSCPTag#TAG_EMS_POWER_PV}.
+ * Responses without a matching request, such as {@link io.github.bvotteler.rscp.RSCPTag#TAG_RSCP_GENERAL_ERROR},
+ * complete the oldest pending request.</p>
+ * <p>The session is thread-safe. It does not block inside synchronized sections, so it can be used from virtual threads.</p>
+ * <p>The session waits for responses as long as it is open, so use a timeout when waiting for a future. Once the first
+ * byte of a frame has been received, the rest of it must follow within the read timeout, or the session is closed.</p>
+ */
+public class E3DCSession implements Closeable {
+    static final int responseTagBit = 0x00800000;
+    public static final Duration defaultReadTimeout = Duration.ofSeconds(10);
+    private static final Logger logger = LoggerFactory.getLogger(E3DCSession.class.getSimpleName());
+    // runs each reader task on a daemon thread of its own
+    static final Executor readerThreadExecutor = runnable -> {
+        Thread thread = new Thread(runnable, "e3dc-session-reader");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    private final Socket socket;
+    private final AES256Helper crypto;
+    // held while encrypting and writing, the CBC chain requires frames to be sent in the order they were encrypted
+    private final ReentrantLock sendLock = new ReentrantLock();
+    // guarded by itself
+    private final Deque<PendingRequest> pendingRequests = new ArrayDeque<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile E3DCCaptureWriter captureWriter;
+
+    /**
+     * Create a session on an open connection and start receiving responses, using the {@link E3DCSession#defaultReadTimeout}.
+     *
+     * @param socket         The connected socket, e.g. from {@link E3DCConnector#openConnection(String, int)}.
+     * @param crypto         The crypto helper of this connection. It must not be used by anything else.
+     * @param readerExecutor Runs the reader task, which lives as long as the session.
+     */
+    public E3DCSession(Socket socket, AES256Helper crypto, Executor readerExecutor) {
+        this(socket, crypto, readerExecutor, defaultReadTimeout);
+    }
+
+    /**
+     * Create a session on an open connection and start receiving responses.
+     *
+     * @param socket         The connected socket, e.g. from {@link E3DCConnector#openConnection(String, int)}.
+     * @param crypto         The crypto helper of this connection. It must not be used by anything else.
+     * @param readerExecutor Runs the reader task, which lives as long as the session.
+     * @param readTimeout    How long the rest of a frame may take to arrive once its first byte was received. Zero
+     *                       waits forever.
+     */
+    public E3DCSession(Socket socket, AES256Helper crypto, Executor readerExecutor, Duration readTimeout) {
+        this.socket = socket;
+        this.crypto = crypto;
+        try {
+            socket.setSoTimeout(toReadTimeoutMillis(readTimeout));
+        } catch (SocketException e) {
+            logger.error("Failed to set read timeout, closing session.", e);
+            closeWithCause(e);
+        }
+        readerExecutor.execute(this::receiveResponses);
+    }
+
+    /**
+     * Connect to a device and create a session, receiving responses on a daemon thread.
+     *
+     * @param ipAddress The address of the device.
+     * @param port      The port of the device.
+     * @param crypto    The crypto helper of this connection.
+     * @return The session.
+     * @throws UnknownHostException If the host cannot be resolved.
+     */
+    public static E3DCSession open(String ipAddress, int port, AES256Helper crypto) throws UnknownHostException {
+        return new E3DCSession(E3DCConnector.openConnection(ipAddress, port), crypto, readerThreadExecutor);
+    }
+
+    /**
+     * <p>Send a request without waiting for the responses to earlier requests.</p>
+     *
+     * @param request The request frame.
+     * @return A future completing with the response frame, or exceptionally if the frame holds no data, sending fails
+     * or the session is closed before the response was received.
+     */
+    public CompletableFuture<RSCPFrame> send(RSCPFrame request) {
+        if (request.getData().isEmpty()) {
+            // the response is matched by the tag of the first element
+            CompletableFuture<RSCPFrame> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Request frame holds no data."));
+            return failed;
+        }
+        PendingRequest pendingRequest = new PendingRequest(responseTagId(request));
+        byte[] frame = request.getAsByteArray();
+
+        sendLock.lock();
+        try {
+            // register first, the response may arrive before write returns
+            synchronized (pendingRequests) {
+                if (closed.get()) {
+                    pendingRequest.future.completeExceptionally(new IllegalStateException("Session is closed."));
+                    return pendingRequest.future;
+                }
+                pendingRequests.add(pendingRequest);
+            }
+            byte[] encryptedFrame = crypto.encrypt(frame);
+            OutputStream out = socket.getOutputStream();
+            out.write(encryptedFrame);
+            out.flush();
+            capture(E3DCCaptureRecord.Direction.SENT, frame, encryptedFrame);
+        } catch (Exception e) {
+            logger.error("Error while encrypting and sending frame.", e);
+            // the stream may hold part of a frame now, so the connection cannot be used anymore
+            closeWithCause(e);
+        } finally {
+            sendLock.unlock();
+        }
+        return pendingRequest.future;
+    }
+
+    /**
+     * <p>Record the frames sent and received from now on, e.g. for replaying them later with {@link E3DCCaptureReader}.
+     * Encrypted frames are recorded for sent frames only.</p>
+     * <p>The writer flushes by itself once its flush interval has passed, when the next frame is recorded. The session
+     * neither flushes nor closes it, so close the writer after the session, or flush it to save the last frames of an
+     * idle session.</p>
+     * @param captureWriter The capture to append to, or {@code null} to stop recording.
+     */
+    public void setCaptureWriter(E3DCCaptureWriter captureWriter) {
+        this.captureWriter = captureWriter;
+    }
+
+    /**
+     * Get the number of requests sent for which no response has been received yet.
+     * @return The number of requests in flight.
+     */
+    public int getPendingRequestCount() {
+        synchronized (pendingRequests) {
+            return pendingRequests.size();
+        }
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    /**
+     * Close the connection. Pending requests complete exceptionally.
+     */
+    @Override
+    public void close() {
+        closeWithCause(new IOException("Session closed."));
+    }
+
+    /**
+     * Get the tag id a response to a request tag has, e.g. {@code 0x01800001} for {@code 0x01000001}.
+     */
+    static int responseTagId(int requestTagId) {
+        return requestTagId | responseTagBit;
+    }
+
+    private static int responseTagId(RSCPFrame request) {
+        return responseTagId(request.getData().get(0).getDataTagId());
+    }
+
+    private static int toReadTimeoutMillis(Duration readTimeout) {
+        if (readTimeout.isNegative()) {
+            throw new IllegalArgumentException("Read timeout must not be negative.");
+        }
+        long millis = readTimeout.toMillis();
+        // round up, a timeout of 0 would wait forever
+        if (millis == 0 && !readTimeout.isZero()) {
+            millis = 1;
+        }
+        return (int) Math.min(millis, Integer.MAX_VALUE);
+    }
+
+    private void receiveResponses() {
+        E3DCFrameReader frameReader = new E3DCFrameReader();
+        try {
+            InputStream in = socket.getInputStream();
+            while (!closed.get()) {
+                byte[] frame;
+                try {
+                    frame = frameReader.readFrame(in, crypto);
+                } catch (SocketTimeoutException e) {
+                    if (!frameReader.isInFrame()) {
+                        // nothing was received, the server may still be working on a response
+                        continue;
+                    }
+                    // part of a frame was consumed, the CBC chain is out of sync
+                    throw e;
+                }
+                capture(E3DCCaptureRecord.Direction.RECEIVED, frame, null);
+                onResponse(frame);
+            }
+        } catch (Exception e) {
+            if (!closed.get()) {
+                logger.error("Error while receiving frame, closing session.", e);
+            }
+            closeWithCause(e);
+        }
+    }
+
+    private void capture(E3DCCaptureRecord.Direction direction, byte[] frame, byte[] encryptedFrame) {
+        E3DCCaptureWriter writer = captureWriter;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.record(direction, Instant.now(), frame, encryptedFrame);
+        } catch (IOException e) {
+            logger.error("Failed to record frame, recording stopped.", e);
+            captureWriter = null;
+        }
+    }
+
+    private void onResponse(byte[] frame) {
+        RSCPFrame response;
+        try {
+            response = RSCPFrame.builder().buildFromRawBytes(frame);
+        } catch (RuntimeException e) {
+            logger.error("Received frame could not be decoded.", e);
+            completeOldest(null, e);
+            return;
+        }
+
+        List<RSCPData> data = response.getData();
+        int tagId = data.isEmpty() ? 0 : data.get(0).getDataTagId();
+        PendingRequest match = null;
+        synchronized (pendingRequests) {
+            Iterator<PendingRequest> it = pendingRequests.iterator();
+            while (it.hasNext()) {
+                PendingRequest candidate = it.next();
+                if (candidate.responseTagId == tagId) {
+                    it.remove();
+                    match = candidate;
+                    break;
+                }
+            }
+        }
+
+        if (match != null) {
+            match.future.complete(response);
+        } else {
+            completeOldest(response, null);
+        }
+    }
+
+    private void completeOldest(RSCPFrame response, Exception cause) {
+        PendingRequest oldest;
+        synchronized (pendingRequests) {
+            oldest = pendingRequests.poll();
+        }
+        if (oldest == null) {
+            logger.debug("Dropping frame received without a pending request.");
+        } else if (cause != null) {
+            oldest.future.completeExceptionally(cause);
+        } else {
+            oldest.future.complete(response);
+        }
+    }
+
+    private void closeWithCause(Exception cause) {
+        if (closed.compareAndSet(false, true)) {
+            E3DCConnector.silentlyCloseConnection(socket);
+        }
+
+        List<PendingRequest> failed;
+        synchronized (pendingRequests) {
+            failed = new ArrayList<>(pendingRequests);
+            pendingRequests.clear();
+        }
+        for (PendingRequest pendingRequest : failed) {
+            pendingRequest.future.completeExceptionally(cause);
+        }
+    }
+
+    private static class PendingRequest {
+        private final int responseTagId;
+        private final CompletableFuture<RSCPFrame> future = new CompletableFuture<>();
+
+        private PendingRequest(int responseTagId) {
+            this.responseTagId = responseTagId;
+        }
+    }
+}
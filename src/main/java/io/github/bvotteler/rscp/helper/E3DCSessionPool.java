@@ -0,0 +1,479 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPDataType;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.Socket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <p>Keeps open sessions to one device for reuse.</p>
+ * <p>Sessions opened through {@link Builder#endpoint(String, int, Supplier, String, String)} are authenticated before
+ * they are pooled, sessions from a custom {@link SessionFactory} should be as well.</p>
+ * <p>Sessions are taken with {@link E3DCSessionPool#acquire()} and handed back with
+ * {@link E3DCSessionPool#release(E3DCSession)}, keeping their connection and crypto state (key and IV chain) alive
+ * between polls. Idle sessions are health-checked periodically with a cheap {@link RSCPTag#TAG_INFO_REQ_TIME} request,
+ * and evicted if they fail, do not answer in time, or answer with anything but the time, e.g. with
+ * {@link RSCPTag#TAG_RSCP_GENERAL_ERROR} after losing their authentication. A session is taken out of the pool while
+ * it is checked, and callers wait for the check to finish if no other session is available.</p>
+ * <p>New sessions are opened on a background thread, never on the caller's thread. Failed attempts are retried with
+ * jittered exponential backoff while callers are waiting, so an unreachable device is not hammered with connection
+ * attempts. Waiting callers should bound their wait, e.g. with {@code acquire().get(timeout, unit)}.</p>
+ * <p>The pool is thread-safe.</p>
+ */
+public class E3DCSessionPool implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCSessionPool.class.getSimpleName());
+
+    private final SessionFactory sessionFactory;
+    private final int maxSessions;
+    private final long healthCheckTimeoutMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService connectExecutor;
+
+    // guarded by this
+    private final Deque<E3DCSession> idleSessions = new ArrayDeque<>();
+    private final Deque<CompletableFuture<E3DCSession>> waiters = new ArrayDeque<>();
+    // taken out of idleSessions while health-checked
+    private final Set<E3DCSession> checkedSessions = new HashSet<>();
+    // open sessions and connection attempts in progress
+    private int sessionCount;
+    private int failedAttempts;
+    private boolean closed;
+
+    private E3DCSessionPool(Builder builder) {
+        this.sessionFactory = builder.sessionFactory;
+        this.maxSessions = builder.maxSessions;
+        this.healthCheckTimeoutMillis = builder.healthCheckTimeout.toMillis();
+        this.initialBackoffMillis = builder.initialBackoff.toMillis();
+        this.maxBackoffMillis = builder.maxBackoff.toMillis();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-session-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.connectExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-session-pool-connect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long healthCheckIntervalMillis = builder.healthCheckInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::checkIdleSessions, healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Take a session from the pool, opening a new one if none is idle and the pool is not full.
+     * @return A future completing with a session once one is available, or exceptionally if the pool is closed.
+     */
+    public CompletableFuture<E3DCSession> acquire() {
+        CompletableFuture<E3DCSession> future = new CompletableFuture<>();
+        boolean connect = false;
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("Session pool is closed."));
+                return future;
+            }
+            E3DCSession session;
+            while ((session = idleSessions.poll()) != null) {
+                if (session.isOpen()) {
+                    future.complete(session);
+                    return future;
+                }
+                sessionCount--;
+            }
+            waiters.add(future);
+            if (sessionCount < maxSessions) {
+                sessionCount++;
+                connect = true;
+            }
+        }
+
+        if (connect) {
+            connectExecutor.execute(this::connect);
+        }
+        return future;
+    }
+
+    /**
+     * Hand a session back to the pool. Sessions that have been closed are evicted.
+     * @param session A session taken with {@link E3DCSessionPool#acquire()}.
+     */
+    public void release(E3DCSession session) {
+        if (session.isOpen()) {
+            handOver(session);
+        } else {
+            evict(session);
+        }
+    }
+
+    /**
+     * Get the number of sessions, including sessions in use and connection attempts in progress.
+     * @return The number of sessions.
+     */
+    public synchronized int getSessionCount() {
+        return sessionCount;
+    }
+
+    public synchronized int getIdleSessionCount() {
+        return idleSessions.size();
+    }
+
+    /**
+     * Close the idle sessions and stop health checks. Waiting callers fail, and sessions in use are closed when released.
+     */
+    @Override
+    public void close() {
+        List<E3DCSession> idle;
+        List<CompletableFuture<E3DCSession>> waiting;
+        synchronized (this) {
+            closed = true;
+            idle = new ArrayList<>(idleSessions);
+            idle.addAll(checkedSessions);
+            idleSessions.clear();
+            checkedSessions.clear();
+            sessionCount -= idle.size();
+            waiting = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        idle.forEach(E3DCSession::close);
+        waiting.forEach(waiter -> waiter.completeExceptionally(new IllegalStateException("Session pool is closed.")));
+        scheduler.shutdownNow();
+        connectExecutor.shutdownNow();
+    }
+
+    /**
+     * Get the delay before the next connection attempt: exponential in the number of failed attempts, capped, and
+     * randomized between half and the full delay so that pools of many devices do not retry in lockstep.
+     */
+    static long getBackoffMillis(int failedAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        long delay = maxBackoffMillis;
+        if (failedAttempts <= 31 && initialBackoffMillis <= maxBackoffMillis >> (failedAttempts - 1)) {
+            delay = initialBackoffMillis << (failedAttempts - 1);
+        }
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private void connect() {
+        E3DCSession session;
+        try {
+            session = sessionFactory.open();
+        } catch (Exception e) {
+            onConnectFailed(e);
+            return;
+        }
+        synchronized (this) {
+            failedAttempts = 0;
+        }
+        logger.debug("Opened pooled session.");
+        handOver(session);
+    }
+
+    private void onConnectFailed(Exception cause) {
+        int attempt;
+        long delay;
+        synchronized (this) {
+            if (closed || !hasWaiters()) {
+                sessionCount--;
+                return;
+            }
+            attempt = ++failedAttempts;
+            delay = getBackoffMillis(attempt, initialBackoffMillis, maxBackoffMillis);
+        }
+        logger.warn("Failed to open pooled session (attempt " + attempt + "), retrying in " + delay + " ms.", cause);
+        scheduler.schedule(() -> connectExecutor.execute(this::connect), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Pass a healthy session to the next waiting caller, or keep it idle.
+     */
+    private void handOver(E3DCSession session) {
+        CompletableFuture<E3DCSession> waiter = null;
+        synchronized (this) {
+            if (closed) {
+                sessionCount--;
+            } else {
+                while ((waiter = waiters.poll()) != null && waiter.isDone()) {
+                    // cancelled by the caller
+                }
+                if (waiter == null) {
+                    idleSessions.add(session);
+                    return;
+                }
+            }
+        }
+
+        if (waiter == null) {
+            session.close();
+        } else if (!waiter.complete(session)) {
+            handOver(session);
+        }
+    }
+
+    private void evict(E3DCSession session) {
+        session.close();
+        boolean connect = false;
+        synchronized (this) {
+            sessionCount--;
+            if (!closed && hasWaiters() && sessionCount < maxSessions) {
+                sessionCount++;
+                connect = true;
+            }
+        }
+        logger.debug("Evicted pooled session.");
+        if (connect) {
+            connectExecutor.execute(this::connect);
+        }
+    }
+
+    private boolean hasWaiters() {
+        waiters.removeIf(CompletableFuture::isDone);
+        return !waiters.isEmpty();
+    }
+
+    private void checkIdleSessions() {
+        List<E3DCSession> sessions;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            // taken out of the pool while checked, so a timed out check never closes a session in use
+            sessions = new ArrayList<>(idleSessions);
+            idleSessions.clear();
+            checkedSessions.addAll(sessions);
+        }
+
+        for (E3DCSession session : sessions) {
+            try {
+                // sending blocks on the socket, keep it off the scheduler thread
+                connectExecutor.execute(() -> checkSession(session));
+            } catch (RejectedExecutionException e) {
+                // pool closed meanwhile
+                onChecked(session, false);
+            }
+        }
+    }
+
+    private void checkSession(E3DCSession session) {
+        if (!session.isOpen()) {
+            onChecked(session, false);
+            return;
+        }
+        RSCPFrame request = RSCPFrame.builder()
+                .timestamp(Instant.now())
+                .addData(RSCPData.builder().tag(RSCPTag.TAG_INFO_REQ_TIME).noneValue().build())
+                .build();
+        CompletableFuture<RSCPFrame> response = session.send(request);
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            // fails the pending request, the session is not in the pool while checked
+            session.close();
+        }, healthCheckTimeoutMillis, TimeUnit.MILLISECONDS);
+        response.whenComplete((frame, error) -> {
+            timeout.cancel(false);
+            if (error != null) {
+                logger.debug("Health check failed.", error);
+                onChecked(session, false);
+            } else if (!isTimeResponse(frame)) {
+                logger.debug("Health check was not answered with the time, e.g. after losing authentication.");
+                onChecked(session, false);
+            } else {
+                onChecked(session, true);
+            }
+        });
+    }
+
+    /**
+     * Put a checked session back into the pool, or evict it.
+     */
+    private void onChecked(E3DCSession session, boolean healthy) {
+        synchronized (this) {
+            if (!checkedSessions.remove(session)) {
+                // evicted by close()
+                return;
+            }
+        }
+        if (healthy && session.isOpen()) {
+            handOver(session);
+        } else {
+            evict(session);
+        }
+    }
+
+    private static boolean isTimeResponse(RSCPFrame response) {
+        List<RSCPData> data = response.getData();
+        return !data.isEmpty() && data.get(0).getDataTag() == RSCPTag.TAG_INFO_TIME
+                && data.get(0).getDataType() != RSCPDataType.ERROR;
+    }
+
+    /**
+     * Opens new sessions for a pool, e.g. connecting and authenticating.
+     */
+    @FunctionalInterface
+    public interface SessionFactory {
+        E3DCSession open() throws Exception;
+    }
+
+    public static class Builder {
+        private static final Duration defaultEndpointTimeout = Duration.ofSeconds(5);
+
+        private SessionFactory sessionFactory;
+        private int maxSessions = 1;
+        private Duration healthCheckInterval = Duration.ofSeconds(30);
+        private Duration healthCheckTimeout = Duration.ofSeconds(5);
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(60);
+
+        /**
+         * Open sessions with a custom factory.
+         * @param sessionFactory The factory.
+         * @return The builder.
+         */
+        public Builder sessionFactory(SessionFactory sessionFactory) {
+            this.sessionFactory = sessionFactory;
+            return this;
+        }
+
+        /**
+         * Open authenticated sessions to a device, giving connecting and authenticating 5 seconds each.
+         * See {@link Builder#endpoint(String, int, Supplier, String, String, Duration)}.
+         * @param ipAddress     The address of the device.
+         * @param port          The port of the device.
+         * @param cryptoFactory Creates the crypto helper of each session, e.g. {@code () -> new BouncyAES256Helper(key)}.
+         * @param user          The user name, same as used to log in to the portal.
+         * @param password      The password, same as used to log in to the portal.
+         * @return The builder.
+         */
+        public Builder endpoint(String ipAddress, int port, Supplier<AES256Helper> cryptoFactory, String user, String password) {
+            return endpoint(ipAddress, port, cryptoFactory, user, password, defaultEndpointTimeout);
+        }
+
+        /**
+         * <p>Open authenticated sessions to a device with a single connection attempt each, leaving retries to the pool.</p>
+         * <p>A device answers requests with {@link RSCPTag#TAG_RSCP_GENERAL_ERROR} until the session is authenticated,
+         * health checks included, so each session is authenticated before it is handed out.</p>
+         * @param ipAddress     The address of the device.
+         * @param port          The port of the device.
+         * @param cryptoFactory Creates the crypto helper of each session, e.g. {@code () -> new BouncyAES256Helper(key)}.
+         * @param user          The user name, same as used to log in to the portal.
+         * @param password      The password, same as used to log in to the portal.
+         * @param timeout       The time connecting may take, and again the time to wait for the answer to authenticating.
+         * @return The builder.
+         */
+        public Builder endpoint(String ipAddress, int port, Supplier<AES256Helper> cryptoFactory, String user, String password,
+                                Duration timeout) {
+            long timeoutMillis = timeout.toMillis();
+            return sessionFactory(() -> {
+                Socket socket = E3DCConnector.openConnection(ipAddress, port, timeout).getOrElseThrow(e -> e);
+                E3DCSession session = new E3DCSession(socket, cryptoFactory.get(), E3DCSession.readerThreadExecutor);
+                try {
+                    E3DCAuthenticatedSession.authenticate(session, user, password).get(timeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    session.close();
+                    throw e;
+                }
+                return session;
+            });
+        }
+
+        public Builder maxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        public Builder healthCheckInterval(Duration healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        /**
+         * Set how long to wait for the answer to a health check before evicting the session.
+         * @param healthCheckTimeout The timeout.
+         * @return The builder.
+         */
+        public Builder healthCheckTimeout(Duration healthCheckTimeout) {
+            this.healthCheckTimeout = healthCheckTimeout;
+            return this;
+        }
+
+        /**
+         * Set the backoff between failed connection attempts. The delay doubles with each failure, up to the maximum.
+         * @param initialBackoff The delay after the first failure.
+         * @param maxBackoff The maximum delay.
+         * @return The builder.
+         */
+        public Builder backoff(Duration initialBackoff, Duration maxBackoff) {
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        public E3DCSessionPool build() {
+            validate();
+            return new E3DCSessionPool(this);
+        }
+
+        public void validate() {
+            if (sessionFactory == null) {
+                throw new IllegalStateException("Session factory or endpoint is required.");
+            }
+            if (maxSessions < 1) {
+                throw new IllegalStateException("Pool must allow at least one session.");
+            }
+            if (healthCheckInterval.isNegative() || healthCheckInterval.isZero() || healthCheckTimeout.isNegative()) {
+                throw new IllegalStateException("Health check interval must be positive, and timeout cannot be negative.");
+            }
+            if (initialBackoff.isNegative() || initialBackoff.isZero() || maxBackoff.compareTo(initialBackoff) < 0) {
+                throw new IllegalStateException("Initial backoff must be positive and cannot exceed the maximum backoff.");
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>Runs blocking RSCP sessions, one thread per device.</p>
+ * <p>On JDK 21 and later, every session runs on its own virtual thread, so sessions written in the blocking
+ * {@link E3DCConnector} style (open, send, receive) do not occupy a platform thread while waiting for a device.
+ * On older JDKs, a cached pool of daemon platform threads is used instead, with the same behavior.</p>
+ * <p>The connector, {@link E3DCFrameReader} and {@link BouncyAES256Helper} do not block inside synchronized
+ * sections, so session threads do not pin their carrier threads.</p>
+ */
+public class E3DCSessionRunner implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCSessionRunner.class.getSimpleName());
+    public static final Duration defaultConnectTimeout = Duration.ofSeconds(5);
+
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    E3DCSessionRunner(ExecutorService executor, boolean virtualThreads) {
+        this.executor = executor;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Create a runner using virtual threads if the JDK supports them, platform threads otherwise.
+     * @return The runner.
+     */
+    public static E3DCSessionRunner create() {
+        ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+        if (virtualThreadExecutor != null) {
+            return new E3DCSessionRunner(virtualThreadExecutor, true);
+        }
+        logger.debug("Virtual threads are not available, running sessions on platform threads.");
+        return createWithPlatformThreads();
+    }
+
+    /**
+     * Create a runner using a cached pool of daemon platform threads.
+     * @return The runner.
+     */
+    public static E3DCSessionRunner createWithPlatformThreads() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new E3DCSessionRunner(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-session-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }), false);
+    }
+
+    /**
+     * Check whether this runner runs sessions on virtual threads.
+     * @return {@code true} on JDK 21 and later, unless created with {@link E3DCSessionRunner#createWithPlatformThreads()}.
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Get the executor sessions are run on, e.g. to run further per device tasks on the same kind of thread.
+     * @return The executor.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Connect to a device and run a session on a thread of its own, connecting within the {@link E3DCSessionRunner#defaultConnectTimeout}.
+     * See {@link E3DCSessionRunner#runSession(String, int, Duration, Supplier, Session)}.
+     *
+     * @param ipAddress     The address of the device.
+     * @param port          The port of the device.
+     * @param cryptoFactory Creates the crypto helper for the session, e.g. {@code () -> new BouncyAES256Helper(key)}.
+     * @param session       The session, typically sending and receiving frames with {@link E3DCConnector}.
+     * @param <T>           The result type of the session.
+     * @return A future completing with the result of the session, or exceptionally if connecting or the session fails.
+     */
+    public <T> CompletableFuture<T> runSession(String ipAddress, int port, Supplier<AES256Helper> cryptoFactory, Session<T> session) {
+        return runSession(ipAddress, port, defaultConnectTimeout, cryptoFactory, session);
+    }
+
+    /**
+     * <p>Connect to a device and run a session on a thread of its own.</p>
+     * <p>The connection is opened with a single attempt of {@link E3DCConnector#openConnection(String, int, Duration)}
+     * on the session thread, and closed when the session ends.</p>
+     *
+     * @param ipAddress      The address of the device.
+     * @param port           The port of the device.
+     * @param connectTimeout The time connecting may take.
+     * @param cryptoFactory  Creates the crypto helper for the session, e.g. {@code () -> new BouncyAES256Helper(key)}.
+     * @param session        The session, typically sending and receiving frames with {@link E3DCConnector}.
+     * @param <T>            The result type of the session.
+     * @return A future completing with the result of the session, or exceptionally if connecting or the session fails.
+     * If connecting fails, the future fails with the exception from connecting, e.g. an {@link E3DCTimeoutException}.
+     */
+    public <T> CompletableFuture<T> runSession(String ipAddress, int port, Duration connectTimeout, Supplier<AES256Helper> cryptoFactory, Session<T> session) {
+        return CompletableFuture.supplyAsync(() -> {
+            Socket socket = null;
+            try {
+                socket = E3DCConnector.openConnection(ipAddress, port, connectTimeout)
+                        .getOrElseThrow(CompletionException::new);
+                return session.run(socket, cryptoFactory.get());
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Session failed.", e);
+            } finally {
+                if (socket != null) {
+                    E3DCConnector.silentlyCloseConnection(socket);
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * Stop accepting new sessions and interrupt the running ones.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // looked up at runtime, the library is compiled for Java 8
+            return (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                    .invoke();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * A blocking session with a device.
+     * @param <T> The result type of the session.
+     */
+    @FunctionalInterface
+    public interface Session<T> {
+        /**
+         * Run the session.
+         * @param socket The connected socket.
+         * @param crypto The crypto helper of this session.
+         * @return The result of the session.
+         * @throws Exception If the session fails.
+         */
+        T run(Socket socket, AES256Helper crypto) throws Exception;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Signals that connecting, sending or receiving did not finish before its deadline.
+ */
+public class E3DCTimeoutException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final Operation operation;
+    private final Duration timeout;
+
+    public E3DCTimeoutException(Operation operation, Duration timeout) {
+        super(operation.description + " did not finish within " + timeout.toMillis() + " ms.");
+        this.operation = operation;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Get the operation that timed out.
+     * @return The operation.
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Get the time the operation was given, measured from the call that started it.
+     * @return The timeout.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public enum Operation {
+        CONNECT("Connecting"),
+        SEND("Sending"),
+        RECEIVE("Receiving");
+
+        private final String description;
+
+        Operation(String description) {
+            this.description = description;
+        }
+    }
+}
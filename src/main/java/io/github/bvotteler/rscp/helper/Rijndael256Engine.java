@@ -0,0 +1,306 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.OutputLengthException;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.Pack;
+
+/**
+ * <p>Rijndael with a 256 bit block, as used by RSCP, implemented with lookup tables.</p>
+ * <p>Bouncy Castle's {@link org.bouncycastle.crypto.engines.RijndaelEngine} supports every block size and works on
+ * rows of the state. This engine only supports the 256 bit block and works on columns, so a round is 32 table lookups
+ * combining SubBytes, ShiftRows and MixColumns, like common AES implementations. Keys of 16, 24 or 32 bytes are
+ * supported, the block is always 32 bytes.</p>
+ * <p>Instances are not thread-safe, use one instance per direction as with any {@link BlockCipher}.</p>
+ */
+public class Rijndael256Engine implements BlockCipher {
+    private static final int blockSize = 32;
+    // columns per block, the number of rounds for a 256 bit block is 14 for every key size
+    private static final int columns = blockSize / 4;
+    private static final int rounds = 14;
+
+    private static final byte[] S = new byte[256];
+    private static final byte[] IS = new byte[256];
+    private static final int[] T0 = new int[256];
+    private static final int[] T1 = new int[256];
+    private static final int[] T2 = new int[256];
+    private static final int[] T3 = new int[256];
+    private static final int[] IT0 = new int[256];
+    private static final int[] IT1 = new int[256];
+    private static final int[] IT2 = new int[256];
+    private static final int[] IT3 = new int[256];
+
+    static {
+        // S-box from the multiplicative inverse in GF(2^8) followed by the affine transformation
+        int p = 1;
+        int q = 1;
+        do {
+            p = p ^ (p << 1) ^ ((p & 0x80) != 0 ? 0x1B : 0);
+            p &= 0xFF;
+            q ^= q << 1;
+            q ^= q << 2;
+            q ^= q << 4;
+            q &= 0xFF;
+            if ((q & 0x80) != 0) {
+                q ^= 0x09;
+            }
+            int s = q ^ rotl8(q, 1) ^ rotl8(q, 2) ^ rotl8(q, 3) ^ rotl8(q, 4) ^ 0x63;
+            S[p] = (byte) s;
+        } while (p != 1);
+        S[0] = 0x63;
+        for (int i = 0; i < 256; i++) {
+            IS[S[i] & 0xFF] = (byte) i;
+        }
+
+        // columns are little endian ints, byte 0 holds row 0
+        for (int i = 0; i < 256; i++) {
+            int s = S[i] & 0xFF;
+            int t = mul(s, 2) | s << 8 | s << 16 | mul(s, 3) << 24;
+            T0[i] = t;
+            T1[i] = Integer.rotateLeft(t, 8);
+            T2[i] = Integer.rotateLeft(t, 16);
+            T3[i] = Integer.rotateLeft(t, 24);
+
+            int is = IS[i] & 0xFF;
+            int it = mul(is, 0x0E) | mul(is, 0x09) << 8 | mul(is, 0x0D) << 16 | mul(is, 0x0B) << 24;
+            IT0[i] = it;
+            IT1[i] = Integer.rotateLeft(it, 8);
+            IT2[i] = Integer.rotateLeft(it, 16);
+            IT3[i] = Integer.rotateLeft(it, 24);
+        }
+    }
+
+    private int[] rk;
+    private boolean forEncryption;
+
+    @Override
+    public void init(boolean forEncryption, CipherParameters params) {
+        if (!(params instanceof KeyParameter)) {
+            throw new IllegalArgumentException("invalid parameter passed to Rijndael256 init - " + params.getClass().getName());
+        }
+        byte[] key = ((KeyParameter) params).getKey();
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("Key length not 128/192/256 bits.");
+        }
+        this.rk = expandKey(key, forEncryption);
+        this.forEncryption = forEncryption;
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return "Rijndael";
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public int processBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        if (rk == null) {
+            throw new IllegalStateException("Rijndael256 engine not initialised");
+        }
+        if (inOff > in.length - blockSize) {
+            throw new DataLengthException("input buffer too short");
+        }
+        if (outOff > out.length - blockSize) {
+            throw new OutputLengthException("output buffer too short");
+        }
+        if (forEncryption) {
+            encryptBlock(in, inOff, out, outOff);
+        } else {
+            decryptBlock(in, inOff, out, outOff);
+        }
+        return blockSize;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    private void encryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        int[] rk = this.rk;
+        int s0 = Pack.littleEndianToInt(in, inOff) ^ rk[0];
+        int s1 = Pack.littleEndianToInt(in, inOff + 4) ^ rk[1];
+        int s2 = Pack.littleEndianToInt(in, inOff + 8) ^ rk[2];
+        int s3 = Pack.littleEndianToInt(in, inOff + 12) ^ rk[3];
+        int s4 = Pack.littleEndianToInt(in, inOff + 16) ^ rk[4];
+        int s5 = Pack.littleEndianToInt(in, inOff + 20) ^ rk[5];
+        int s6 = Pack.littleEndianToInt(in, inOff + 24) ^ rk[6];
+        int s7 = Pack.littleEndianToInt(in, inOff + 28) ^ rk[7];
+        int t0, t1, t2, t3, t4, t5, t6, t7;
+
+        int k = columns;
+        for (int round = 1; round < rounds; round++, k += columns) {
+            t0 = T0[s0 & 0xFF] ^ T1[(s1 >>> 8) & 0xFF] ^ T2[(s3 >>> 16) & 0xFF] ^ T3[s4 >>> 24] ^ rk[k];
+            t1 = T0[s1 & 0xFF] ^ T1[(s2 >>> 8) & 0xFF] ^ T2[(s4 >>> 16) & 0xFF] ^ T3[s5 >>> 24] ^ rk[k + 1];
+            t2 = T0[s2 & 0xFF] ^ T1[(s3 >>> 8) & 0xFF] ^ T2[(s5 >>> 16) & 0xFF] ^ T3[s6 >>> 24] ^ rk[k + 2];
+            t3 = T0[s3 & 0xFF] ^ T1[(s4 >>> 8) & 0xFF] ^ T2[(s6 >>> 16) & 0xFF] ^ T3[s7 >>> 24] ^ rk[k + 3];
+            t4 = T0[s4 & 0xFF] ^ T1[(s5 >>> 8) & 0xFF] ^ T2[(s7 >>> 16) & 0xFF] ^ T3[s0 >>> 24] ^ rk[k + 4];
+            t5 = T0[s5 & 0xFF] ^ T1[(s6 >>> 8) & 0xFF] ^ T2[(s0 >>> 16) & 0xFF] ^ T3[s1 >>> 24] ^ rk[k + 5];
+            t6 = T0[s6 & 0xFF] ^ T1[(s7 >>> 8) & 0xFF] ^ T2[(s1 >>> 16) & 0xFF] ^ T3[s2 >>> 24] ^ rk[k + 6];
+            t7 = T0[s7 & 0xFF] ^ T1[(s0 >>> 8) & 0xFF] ^ T2[(s2 >>> 16) & 0xFF] ^ T3[s3 >>> 24] ^ rk[k + 7];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            s4 = t4;
+            s5 = t5;
+            s6 = t6;
+            s7 = t7;
+        }
+
+        t0 = (S[s0 & 0xFF] & 0xFF) ^ (S[(s1 >>> 8) & 0xFF] & 0xFF) << 8 ^ (S[(s3 >>> 16) & 0xFF] & 0xFF) << 16 ^ S[s4 >>> 24] << 24 ^ rk[k];
+        t1 = (S[s1 & 0xFF] & 0xFF) ^ (S[(s2 >>> 8) & 0xFF] & 0xFF) << 8 ^ (S[(s4 >>> 16) & 0xFF] & 0xFF) << 16 ^ S[s5 >>> 24] << 24 ^ rk[k + 1];
+        t2 = (S[s2 & 0xFF] & 0xFF) ^ (S[(s3 >>> 8) & 0xFF] & 0xFF) << 8 ^ (S[(s5 >>> 16) & 0xFF] & 0xFF) << 16 ^ S[s6 >>> 24] << 24 ^ rk[k + 2];
+        t3 = (S[s3 & 0xFF] & 0xFF) ^ (S[(s4 >>> 8) & 0xFF] & 0xFF) << 8 ^ (S[(s6 >>> 16) & 0xFF] & 0xFF) << 16 ^ S[s7 >>> 24] << 24 ^ rk[k + 3];
+        t4 = (S[s4 & 0xFF] & 0xFF) ^ (S[(s5 >>> 8) & 0xFF] & 0xFF) << 8 ^ (S[(s7 >>> 16) & 0xFF] & 0xFF) << 16 ^ S[s0 >>> 24] << 24 ^ rk[k + 4];
+        t5 = (S[s5 & 0xFF] & 0xFF) ^ (S[(s6 >>> 8) & 0xFF] & 0xFF) << 8 ^ (S[(s0 >>> 16) & 0xFF] & 0xFF) << 16 ^ S[s1 >>> 24] << 24 ^ rk[k + 5];
+        t6 = (S[s6 & 0xFF] & 0xFF) ^ (S[(s7 >>> 8) & 0xFF] & 0xFF) << 8 ^ (S[(s1 >>> 16) & 0xFF] & 0xFF) << 16 ^ S[s2 >>> 24] << 24 ^ rk[k + 6];
+        t7 = (S[s7 & 0xFF] & 0xFF) ^ (S[(s0 >>> 8) & 0xFF] & 0xFF) << 8 ^ (S[(s2 >>> 16) & 0xFF] & 0xFF) << 16 ^ S[s3 >>> 24] << 24 ^ rk[k + 7];
+
+        Pack.intToLittleEndian(t0, out, outOff);
+        Pack.intToLittleEndian(t1, out, outOff + 4);
+        Pack.intToLittleEndian(t2, out, outOff + 8);
+        Pack.intToLittleEndian(t3, out, outOff + 12);
+        Pack.intToLittleEndian(t4, out, outOff + 16);
+        Pack.intToLittleEndian(t5, out, outOff + 20);
+        Pack.intToLittleEndian(t6, out, outOff + 24);
+        Pack.intToLittleEndian(t7, out, outOff + 28);
+    }
+
+    private void decryptBlock(byte[] in, int inOff, byte[] out, int outOff) {
+        int[] rk = this.rk;
+        int s0 = Pack.littleEndianToInt(in, inOff) ^ rk[rounds * columns];
+        int s1 = Pack.littleEndianToInt(in, inOff + 4) ^ rk[rounds * columns + 1];
+        int s2 = Pack.littleEndianToInt(in, inOff + 8) ^ rk[rounds * columns + 2];
+        int s3 = Pack.littleEndianToInt(in, inOff + 12) ^ rk[rounds * columns + 3];
+        int s4 = Pack.littleEndianToInt(in, inOff + 16) ^ rk[rounds * columns + 4];
+        int s5 = Pack.littleEndianToInt(in, inOff + 20) ^ rk[rounds * columns + 5];
+        int s6 = Pack.littleEndianToInt(in, inOff + 24) ^ rk[rounds * columns + 6];
+        int s7 = Pack.littleEndianToInt(in, inOff + 28) ^ rk[rounds * columns + 7];
+        int t0, t1, t2, t3, t4, t5, t6, t7;
+
+        int k = (rounds - 1) * columns;
+        for (int round = rounds - 1; round > 0; round--, k -= columns) {
+            t0 = IT0[s0 & 0xFF] ^ IT1[(s7 >>> 8) & 0xFF] ^ IT2[(s5 >>> 16) & 0xFF] ^ IT3[s4 >>> 24] ^ rk[k];
+            t1 = IT0[s1 & 0xFF] ^ IT1[(s0 >>> 8) & 0xFF] ^ IT2[(s6 >>> 16) & 0xFF] ^ IT3[s5 >>> 24] ^ rk[k + 1];
+            t2 = IT0[s2 & 0xFF] ^ IT1[(s1 >>> 8) & 0xFF] ^ IT2[(s7 >>> 16) & 0xFF] ^ IT3[s6 >>> 24] ^ rk[k + 2];
+            t3 = IT0[s3 & 0xFF] ^ IT1[(s2 >>> 8) & 0xFF] ^ IT2[(s0 >>> 16) & 0xFF] ^ IT3[s7 >>> 24] ^ rk[k + 3];
+            t4 = IT0[s4 & 0xFF] ^ IT1[(s3 >>> 8) & 0xFF] ^ IT2[(s1 >>> 16) & 0xFF] ^ IT3[s0 >>> 24] ^ rk[k + 4];
+            t5 = IT0[s5 & 0xFF] ^ IT1[(s4 >>> 8) & 0xFF] ^ IT2[(s2 >>> 16) & 0xFF] ^ IT3[s1 >>> 24] ^ rk[k + 5];
+            t6 = IT0[s6 & 0xFF] ^ IT1[(s5 >>> 8) & 0xFF] ^ IT2[(s3 >>> 16) & 0xFF] ^ IT3[s2 >>> 24] ^ rk[k + 6];
+            t7 = IT0[s7 & 0xFF] ^ IT1[(s6 >>> 8) & 0xFF] ^ IT2[(s4 >>> 16) & 0xFF] ^ IT3[s3 >>> 24] ^ rk[k + 7];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            s4 = t4;
+            s5 = t5;
+            s6 = t6;
+            s7 = t7;
+        }
+
+        t0 = (IS[s0 & 0xFF] & 0xFF) ^ (IS[(s7 >>> 8) & 0xFF] & 0xFF) << 8 ^ (IS[(s5 >>> 16) & 0xFF] & 0xFF) << 16 ^ IS[s4 >>> 24] << 24 ^ rk[0];
+        t1 = (IS[s1 & 0xFF] & 0xFF) ^ (IS[(s0 >>> 8) & 0xFF] & 0xFF) << 8 ^ (IS[(s6 >>> 16) & 0xFF] & 0xFF) << 16 ^ IS[s5 >>> 24] << 24 ^ rk[1];
+        t2 = (IS[s2 & 0xFF] & 0xFF) ^ (IS[(s1 >>> 8) & 0xFF] & 0xFF) << 8 ^ (IS[(s7 >>> 16) & 0xFF] & 0xFF) << 16 ^ IS[s6 >>> 24] << 24 ^ rk[2];
+        t3 = (IS[s3 & 0xFF] & 0xFF) ^ (IS[(s2 >>> 8) & 0xFF] & 0xFF) << 8 ^ (IS[(s0 >>> 16) & 0xFF] & 0xFF) << 16 ^ IS[s7 >>> 24] << 24 ^ rk[3];
+        t4 = (IS[s4 & 0xFF] & 0xFF) ^ (IS[(s3 >>> 8) & 0xFF] & 0xFF) << 8 ^ (IS[(s1 >>> 16) & 0xFF] & 0xFF) << 16 ^ IS[s0 >>> 24] << 24 ^ rk[4];
+        t5 = (IS[s5 & 0xFF] & 0xFF) ^ (IS[(s4 >>> 8) & 0xFF] & 0xFF) << 8 ^ (IS[(s2 >>> 16) & 0xFF] & 0xFF) << 16 ^ IS[s1 >>> 24] << 24 ^ rk[5];
+        t6 = (IS[s6 & 0xFF] & 0xFF) ^ (IS[(s5 >>> 8) & 0xFF] & 0xFF) << 8 ^ (IS[(s3 >>> 16) & 0xFF] & 0xFF) << 16 ^ IS[s2 >>> 24] << 24 ^ rk[6];
+        t7 = (IS[s7 & 0xFF] & 0xFF) ^ (IS[(s6 >>> 8) & 0xFF] & 0xFF) << 8 ^ (IS[(s4 >>> 16) & 0xFF] & 0xFF) << 16 ^ IS[s3 >>> 24] << 24 ^ rk[7];
+
+        Pack.intToLittleEndian(t0, out, outOff);
+        Pack.intToLittleEndian(t1, out, outOff + 4);
+        Pack.intToLittleEndian(t2, out, outOff + 8);
+        Pack.intToLittleEndian(t3, out, outOff + 12);
+        Pack.intToLittleEndian(t4, out, outOff + 16);
+        Pack.intToLittleEndian(t5, out, outOff + 20);
+        Pack.intToLittleEndian(t6, out, outOff + 24);
+        Pack.intToLittleEndian(t7, out, outOff + 28);
+    }
+
+    /**
+     * Expand the key into one round key per round plus one. For decryption, the inner round keys get InvMixColumns
+     * applied, so decryption can use the same round structure as encryption (the equivalent inverse cipher).
+     */
+    private static int[] expandKey(byte[] key, boolean forEncryption) {
+        int keyColumns = key.length / 4;
+        int[] w = new int[columns * (rounds + 1)];
+        for (int i = 0; i < keyColumns; i++) {
+            w[i] = Pack.littleEndianToInt(key, i * 4);
+        }
+        int rcon = 1;
+        for (int i = keyColumns; i < w.length; i++) {
+            int temp = w[i - 1];
+            if (i % keyColumns == 0) {
+                temp = subWord(Integer.rotateRight(temp, 8)) ^ rcon;
+                rcon = mul(rcon, 2);
+            } else if (keyColumns > 6 && i % keyColumns == 4) {
+                temp = subWord(temp);
+            }
+            w[i] = w[i - keyColumns] ^ temp;
+        }
+
+        if (!forEncryption) {
+            for (int i = columns; i < rounds * columns; i++) {
+                int c = w[i];
+                // IT0[S[x]] is InvMixColumns applied to a column holding x in row 0
+                w[i] = IT0[S[c & 0xFF] & 0xFF] ^ IT1[S[(c >>> 8) & 0xFF] & 0xFF]
+                        ^ IT2[S[(c >>> 16) & 0xFF] & 0xFF] ^ IT3[S[c >>> 24] & 0xFF];
+            }
+        }
+        return w;
+    }
+
+    private static int subWord(int word) {
+        return (S[word & 0xFF] & 0xFF) | (S[(word >>> 8) & 0xFF] & 0xFF) << 8
+                | (S[(word >>> 16) & 0xFF] & 0xFF) << 16 | (S[word >>> 24] & 0xFF) << 24;
+    }
+
+    /**
+     * Multiply two elements of GF(2^8), reduced by the Rijndael polynomial.
+     */
+    private static int mul(int a, int b) {
+        int product = 0;
+        while (b != 0) {
+            if ((b & 1) != 0) {
+                product ^= a;
+            }
+            a = (a << 1) ^ ((a & 0x80) != 0 ? 0x11B : 0);
+            b >>>= 1;
+        }
+        return product;
+    }
+
+    private static int rotl8(int x, int shift) {
+        return ((x << shift) | (x >>> (8 - shift))) & 0xFF;
+    }
+}
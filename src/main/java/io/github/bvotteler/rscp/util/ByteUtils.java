@@ -56,6 +56,22 @@ public class ByteUtils {
         return buffer.getShort();
     }
 
+    public static int unsignedShortFromLittleEndianBytes(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+    }
+
+    public static int intFromLittleEndianBytes(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    public static long longFromLittleEndianBytes(byte[] bytes, int offset) {
+        return (intFromLittleEndianBytes(bytes, offset) & 0xFFFFFFFFL)
+                | ((long) intFromLittleEndianBytes(bytes, offset + 4)) << 32;
+    }
+
     public static byte[] hexStringToByteArray(String s) {
         int len = s.length();
         byte[] data = new byte[len / 2];
@@ -86,6 +102,18 @@ public class ByteUtils {
         return (int) checksum.getValue();
     }
 
+    public static int calculateCRC32Checksum(ByteBuffer buffer, int start, int length) {
+        if ((start + length) > buffer.limit()) {
+            throw new IllegalArgumentException("Buffer too small for start or length.");
+        }
+
+        ByteBuffer range = buffer.duplicate();
+        range.limit(start + length);
+        range.position(start);
+        CRC32 checksum = new CRC32();
+        checksum.update(range);
+        return (int) checksum.getValue();
+    }
 
     public static byte[] reverseByteArray(byte[] bytes) {
         if (bytes == null) {
@@ -130,6 +158,26 @@ public class ByteUtils {
         return truncatedBytes;
     }
 
+    public static boolean rangeEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static int rangeHashCode(byte[] bytes, int offset, int length) {
+        int result = 1;
+        for (int i = offset; i < offset + length; i++) {
+            result = 31 * result + bytes[i];
+        }
+        return result;
+    }
+
     public static byte[] copyBytesIntoNewArray(byte[] src, int offset, int length) {
         byte[] copy = new byte[length];
         System.arraycopy(src, offset, copy, 0, length);
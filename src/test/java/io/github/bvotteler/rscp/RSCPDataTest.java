@@ -7,13 +7,20 @@ import org.junit.Test;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.fail;
 
 public class RSCPDataTest {
@@ -101,7 +108,125 @@ public class RSCPDataTest {
         assertThat(container.getContainerData(), hasSize(13));
     }
 
-    private byte[] getSampleDBResponseContainerData() {
+    @Test
+    public void builder__from_raw_with_offset_and_thousands_of_siblings() {
+        int leafCount = 5000;
+        RSCPData leaf = RSCPData.builder().tag(RSCPTag.TAG_DB_BAT_POWER_IN).float32Value(42.0F).build();
+        int leafSize = leaf.getByteCount();
+        int offset = 3;
+        byte[] raw = new byte[offset + leafCount * leafSize + 2];
+        for (int i = 0; i < leafCount; i++) {
+            System.arraycopy(leaf.getAsByteArray(), 0, raw, offset + i * leafSize, leafSize);
+        }
+
+        List<RSCPData> dataList = RSCPData.builder().buildFromRawBytes(raw, offset, leafCount * leafSize);
+
+        assertThat(dataList, hasSize(leafCount));
+        assertThat(dataList.get(leafCount - 1), equalTo(leaf));
+    }
+
+    @Test
+    public void container_data_is_decoded_once_and_shared() throws Exception {
+        RSCPData container = RSCPData.builder().buildFromRawBytes(getSampleDBResponseContainerData()).get(12);
+
+        List<RSCPData> first = container.getContainerData();
+        assertThat(container.getContainerData(), sameInstance(first));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            RSCPData otherContainer = RSCPData.builder().buildFromRawBytes(getSampleDBResponseContainerData()).get(12);
+            List<Future<List<RSCPData>>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(otherContainer::getContainerData));
+            }
+            for (Future<List<RSCPData>> result : results) {
+                assertThat(result.get(), equalTo(first));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void container_data_cannot_be_modified() {
+        RSCPData container = buildSampleDBRequestContainer(Instant.ofEpochSecond(42L), Duration.ofSeconds(900L), Duration.ofSeconds(900L));
+        container.getContainerData().clear();
+    }
+
+    @Test
+    public void primitive_accessors_match_optional_accessors() {
+        List<RSCPData> dataList = RSCPData.builder().buildFromRawBytes(getSampleDBResponseContainerData());
+
+        RSCPData batPowerOut = dataList.get(1);
+        assertThat(batPowerOut.getFloat(-1.0F), equalTo(batPowerOut.getValueAsFloat().get()));
+        assertThat(batPowerOut.getDoubleOrThrow(), equalTo(232.0));
+
+        RSCPData batCycleCount = dataList.get(9);
+        assertThat(batCycleCount.getInt(-1), equalTo(batCycleCount.getValueAsInt().get()));
+        assertThat(batCycleCount.getLongOrThrow(), equalTo(batCycleCount.getValueAsLong().get()));
+        assertThat(batCycleCount.getShort((short) -1), equalTo((short) -1));
+    }
+
+    @Test
+    public void primitive_accessors_widen_according_to_data_type() {
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).char8Value((byte) -2).build().getInt(0), equalTo(-2));
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).uchar8Value((byte) -2).build().getInt(0), equalTo(254));
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).int16Value((short) -2).build().getLong(0), equalTo(-2L));
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).uint16Value((short) -2).build().getLong(0), equalTo(65534L));
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).int32Value(-2).build().getLong(0), equalTo(-2L));
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).uint32Value(-2).build().getLong(0), equalTo(4294967294L));
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).int64Value(Long.MIN_VALUE).build().getLong(0), equalTo(Long.MIN_VALUE));
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).double64Value(-1.5).build().getDouble(0.0), equalTo(-1.5));
+        assertThat(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).stringValue("1").build().getInt(7), equalTo(7));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void primitive_accessor_throws_for_incompatible_data_type() {
+        RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).int64Value(1L).build().getIntOrThrow();
+    }
+
+    @Test
+    public void unknown_tag_id_is_preserved_and_encoded_unchanged() {
+        RSCPData.setUnknownTagLogging(RSCPData.UnknownTagLogging.NONE);
+        try {
+            RSCPData unknown = RSCPData.builder().tagId(0x01800FFF).int32Value(42).build();
+            byte[] raw = unknown.getAsByteArray();
+
+            List<RSCPData> decoded = RSCPData.builder().buildFromRawBytes(raw);
+
+            assertThat(decoded, hasSize(1));
+            assertThat(decoded.get(0).getDataTag(), equalTo(RSCPTag.UNKNOWN));
+            assertThat(decoded.get(0).getDataTagId(), equalTo(0x01800FFF));
+            assertThat(decoded.get(0).getAsByteArray(), equalTo(raw));
+            assertThat(decoded.get(0), equalTo(unknown));
+            assertThat(decoded.get(0), not(equalTo(RSCPData.builder().tagId(0x01800FFE).int32Value(42).build())));
+        } finally {
+            RSCPData.setUnknownTagLogging(RSCPData.UnknownTagLogging.ONCE_PER_TAG_ID);
+        }
+    }
+
+    @Test
+    public void container_can_be_built_one_value_at_a_time() {
+        RSCPData expected = buildSampleDBRequestContainer(Instant.ofEpochSecond(42L), Duration.ofSeconds(900L), Duration.ofSeconds(900L));
+
+        RSCPData.Builder builder = RSCPData.builder().tag(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY);
+        for (RSCPData child : expected.getContainerData()) {
+            builder.containerValue(child);
+        }
+        RSCPData actual = builder.build();
+
+        assertThat(actual, equalTo(expected));
+        assertThat(actual.getByteCount(), equalTo(expected.getByteCount()));
+        assertThat(actual.getContainerData(), equalTo(expected.getContainerData()));
+        assertThat(actual.getAsByteArray(), equalTo(expected.getAsByteArray()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void builder__validation_fails_for_empty_container() {
+        RSCPData.builder().tag(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY).containerValues(Collections.emptyList()).build();
+    }
+
+    static byte[] getSampleDBResponseContainerData() {
         final String testContainerData = "02 00 80 06 0a 04 00 00 00 00 00 03 00 80 06 0a 04 00 00 00 68 43 04 00 80 06 0a 04 00 00 00 04 43 05 00 80 06 0a 04 00 00 00 e0 40 06 00 80 06 0a 04 00 00 00 40 41 07 00 80 06 0a 04 00 00 00 be 43 08 00 80 06 0a 04 00 00 00 00 00 09 00 80 06 0a 04 00 00 00 00 00 0a 00 80 06 0a 04 00 00 00 e8 41 0b 00 80 06 06 04 00 5d 01 00 00 0c 00 80 06 0a 04 00 c8 55 c4 42 0d 00 80 06 0a 04 00 28 af c1 42 20 00 80 06 0e 8f 00 01 00 80 06 0a 04 00 00 00 00 00 02 00 80 06 0a 04 00 00 00 00 00 03 00 80 06 0a 04 00 00 00 00 00 04 00 80 06 0a 04 00 00 00 00 00 05 00 80 06 0a 04 00 00 00 00 00 06 00 80 06 0a 04 00 00 00 00 00 07 00 80 06 0a 04 00 00 00 00 00 08 00 80 06 0a 04 00 00 00 00 00 09 00 80 06 0a 04 00 00 00 00 00 0a 00 80 06 0a 04 00 00 00 f4 41 0b 00 80 06 06 04 00 5d 01 00 00 0c 00 80 06 0a 04 00 00 00 c8 42 0d 00 80 06 0a 04 00 00 00 c8 42".replaceAll("\\s+", "");
         return ByteUtils.hexStringToByteArray(testContainerData);
     }
@@ -0,0 +1,114 @@
+package io.github.bvotteler.rscp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+public class RSCPEventDecoderTest {
+    @Test
+    public void decodes_leaf_values_of_known_container_data() {
+        List<String> events = new ArrayList<>();
+        byte[] raw = RSCPDataTest.getSampleDBResponseContainerData();
+
+        RSCPEventDecoder.decodeData(raw, 0, raw.length, new RSCPDataHandler() {
+            @Override
+            public boolean onContainerStart(RSCPTag tag) {
+                events.add("start " + tag);
+                return true;
+            }
+
+            @Override
+            public void onContainerEnd(RSCPTag tag) {
+                events.add("end " + tag);
+            }
+
+            @Override
+            public void onLong(RSCPTag tag, long value) {
+                events.add(tag + "=" + value);
+            }
+
+            @Override
+            public void onDouble(RSCPTag tag, double value) {
+                events.add(tag + "=" + value);
+            }
+        });
+
+        // 12 values, then a container with 13 values
+        assertThat(events, hasSize(12 + 1 + 13 + 1));
+        assertThat(events.get(1), equalTo(RSCPTag.TAG_DB_BAT_POWER_OUT + "=232.0"));
+        assertThat(events.get(9), equalTo(RSCPTag.TAG_DB_BAT_CYCLE_COUNT + "=349"));
+        assertThat(events.get(12), equalTo("start " + RSCPTag.TAG_DB_VALUE_CONTAINER));
+        assertThat(events.get(26), equalTo("end " + RSCPTag.TAG_DB_VALUE_CONTAINER));
+    }
+
+    @Test
+    public void unknown_tags_are_reported_with_raw_id() {
+        List<String> events = new ArrayList<>();
+        byte[] raw = RSCPData.builder().tagId(0x7F000001).int32Value(5).build().getAsByteArray();
+
+        RSCPEventDecoder.decodeData(raw, 0, raw.length, new RSCPDataHandler() {
+            @Override
+            public void onUnknownTag(int tagId, RSCPDataType dataType) {
+                events.add(Integer.toHexString(tagId) + " " + dataType);
+            }
+
+            @Override
+            public void onLong(RSCPTag tag, long value) {
+                events.add(tag + "=" + value);
+            }
+        });
+
+        assertThat(events, contains("7f000001 " + RSCPDataType.INT32, RSCPTag.UNKNOWN + "=5"));
+    }
+
+    @Test
+    public void skipped_containers_are_not_decoded() {
+        List<RSCPTag> tags = new ArrayList<>();
+        byte[] raw = RSCPDataTest.getSampleDBResponseContainerData();
+
+        RSCPEventDecoder.decodeData(raw, 0, raw.length, new RSCPDataHandler() {
+            @Override
+            public boolean onContainerStart(RSCPTag tag) {
+                return false;
+            }
+
+            @Override
+            public void onContainerEnd(RSCPTag tag) {
+                tags.add(tag);
+            }
+
+            @Override
+            public void onFloat(RSCPTag tag, float value) {
+                tags.add(tag);
+            }
+        });
+
+        // 11 floats outside of the container, the cycle count is an int
+        assertThat(tags, hasSize(11));
+    }
+
+    @Test
+    public void decodes_known_db_request_frame() {
+        List<Long> timestampSeconds = new ArrayList<>();
+
+        RSCPEventDecoder.decodeFrame(RSCPFrameTest.getKnownDBRequestFrame(), new RSCPDataHandler() {
+            @Override
+            public void onFrameStart(long epochSeconds, int nanos) {
+                timestampSeconds.add(epochSeconds);
+            }
+
+            @Override
+            public void onTimestamp(RSCPTag tag, long seconds, int nanos) {
+                timestampSeconds.add(seconds);
+            }
+        });
+
+        assertThat(timestampSeconds, contains(1505891066L, 1505309400L, 900L, 900L));
+    }
+}
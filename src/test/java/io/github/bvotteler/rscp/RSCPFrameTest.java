@@ -4,8 +4,12 @@ import io.github.bvotteler.rscp.util.ByteUtils;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -167,6 +171,112 @@ public class RSCPFrameTest {
 
     }
 
+    @Test
+    public void largeHistoryFrameWithThousandsOfSiblingsToFrame() {
+        int valueContainerCount = 2200;
+        List<RSCPData> valueContainers = new ArrayList<>(valueContainerCount);
+        for (int i = 0; i < valueContainerCount; i++) {
+            valueContainers.add(RSCPData.builder()
+                    .tag(RSCPTag.TAG_DB_VALUE_CONTAINER)
+                    .containerValues(Arrays.asList(
+                            RSCPData.builder().tag(RSCPTag.TAG_DB_BAT_POWER_IN).float32Value(i).build(),
+                            RSCPData.builder().tag(RSCPTag.TAG_DB_BAT_POWER_OUT).float32Value(-i).build()))
+                    .build());
+        }
+        RSCPData historyContainer = RSCPData.builder()
+                .tag(RSCPTag.TAG_DB_HISTORY_DATA_DAY)
+                .containerValues(valueContainers)
+                .build();
+
+        byte[] raw = RSCPFrame.builder()
+                .addData(historyContainer)
+                .timestamp(Instant.ofEpochSecond(14))
+                .build()
+                .getAsByteArray();
+        // data section uses the full unsigned range of the 2 byte length field
+        assertThat(raw.length > Short.MAX_VALUE + offsetData + sizeCRC, is(true));
+
+        RSCPFrame frame = RSCPFrame.builder().buildFromRawBytes(raw);
+
+        assertThat(frame.getData(), hasSize(1));
+        List<RSCPData> siblings = frame.getData().get(0).getContainerData();
+        assertThat(siblings, hasSize(valueContainerCount));
+
+        List<RSCPData> lastValues = siblings.get(valueContainerCount - 1).getContainerData();
+        assertThat(lastValues.get(0).getValueAsFloat(), equalTo(Optional.of((float) valueContainerCount - 1)));
+        assertThat(lastValues.get(1).getValueAsFloat(), equalTo(Optional.of((float) -(valueContainerCount - 1))));
+    }
+
+    @Test
+    public void knownDbRequestToViewFrame() {
+        byte[] raw = getKnownDBRequestFrame();
+
+        RSCPFrame copied = RSCPFrame.builder().buildFromRawBytes(raw);
+        RSCPFrame view = RSCPFrame.builder().buildViewFromRawBytes(raw);
+
+        assertThat(view, equalTo(copied));
+        assertThat(view.getData().get(0).getContainerData(), equalTo(copied.getData().get(0).getContainerData()));
+        assertThat(view.getAsByteArray(), equalTo(copied.getAsByteArray()));
+    }
+
+    @Test
+    public void viewFrameSharesRawBytes() {
+        byte[] raw = getSampleAuthResponseMessage();
+        RSCPFrame view = RSCPFrame.builder().buildViewFromRawBytes(raw);
+        RSCPData authData = view.getData().get(0);
+        assertThat(authData.getValueAsInt(), equalTo(Optional.of(10)));
+
+        // auth level is the last byte of the data section
+        raw[offsetData + 7] = 4;
+
+        assertThat(authData.getValueAsInt(), equalTo(Optional.of(4)));
+    }
+
+    @Test
+    public void knownDbRequestFrameWrittenToDirectBuffer() {
+        byte[] raw = getKnownDBRequestFrame();
+        RSCPFrame frame = RSCPFrame.builder().buildFromRawBytes(raw);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(raw.length + 10);
+        buffer.position(5);
+        int written = frame.writeTo(buffer);
+
+        assertThat(written, equalTo(raw.length));
+        assertThat(buffer.position(), equalTo(5 + raw.length));
+        assertThat(buffer.order(), equalTo(ByteOrder.BIG_ENDIAN));
+
+        byte[] actual = new byte[raw.length];
+        buffer.position(5);
+        buffer.get(actual);
+        // includes the original checksum
+        assertThat(actual, equalTo(raw));
+        assertThat(frame.getAsByteArray(), equalTo(raw));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void writeToFailsIfBufferIsTooSmall() {
+        RSCPFrame frame = RSCPFrame.builder().buildFromRawBytes(getKnownDBRequestFrame());
+        frame.writeTo(ByteBuffer.allocate(frame.getFrameByteCount() - 1));
+    }
+
+    @Test
+    public void frameTemplateOnlyPatchesTimestampAndChecksum() {
+        RSCPFrame.Builder frameBuilder = RSCPFrame.builder()
+                .addData(RSCPData.builder().tag(RSCPTag.TAG_EMS_REQ_POWER_PV).noneValue().build())
+                .addData(RSCPData.builder().tag(RSCPTag.TAG_EMS_REQ_BAT_SOC).noneValue().build());
+        RSCPFrameTemplate template = RSCPFrameTemplate.fromFrame(frameBuilder.timestamp(Instant.EPOCH).build());
+
+        Instant first = Instant.ofEpochSecond(1505309400L, 123456789);
+        byte[] firstBytes = template.encode(first);
+        assertThat(firstBytes, equalTo(frameBuilder.timestamp(first).build().getAsByteArray()));
+
+        Instant second = first.plusMillis(1001);
+        byte[] secondBytes = template.encode(second);
+        assertThat(secondBytes, sameInstance(firstBytes));
+        assertThat(secondBytes, equalTo(frameBuilder.timestamp(second).build().getAsByteArray()));
+        assertThat(RSCPFrame.builder().buildFromRawBytes(secondBytes).getTimestamp(), equalTo(second));
+    }
+
     private byte[] getKnownAuthFrameForTestCreds() {
         // built using 'testuser@example.com' and 'SuperSecret123'
         String template = "E3DC00114D61D45F0000000000CEED343700010000000E3000020000000D14007465737475736572406578616D706C652E636F6D030000000D0E00537570657253656372657431323360C48640";
@@ -209,7 +319,7 @@ public class RSCPFrameTest {
         return ByteUtils.hexStringToByteArray(testAuthResponse);
     }
 
-    private byte[] getKnownDBRequestFrame() {
+    static byte[] getKnownDBRequestFrame() {
         final String testDBReqFrame = "e3 dc 00 11 fa 12 c2 59 00 00 00 00 c0 72 4c 12 40 00 00 01 00 06 0e 39 00 01 01 00 06 0f 0c 00 d8 32 b9 59 00 00 00 00 00 00 00 00 02 01 00 06 0f 0c 00 84 03 00 00 00 00 00 00 00 00 00 00 03 01 00 06 0f 0c 00 84 03 00 00 00 00 00 00 00 00 00 00 2d 56 ff ec".replaceAll("\\s+", "");
         return ByteUtils.hexStringToByteArray(testDBReqFrame);
     }
@@ -0,0 +1,192 @@
+package io.github.bvotteler.rscp;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class RSCPStreamDecoderTest {
+    @Test
+    public void reports_same_events_as_event_decoder_for_any_chunk_size() {
+        byte[] frame = buildDBResponseFrame();
+        List<String> expected = new ArrayList<>();
+        RSCPEventDecoder.decodeFrame(frame, new RecordingHandler(expected, true));
+        RSCPEventDecoder.decodeFrame(frame, new RecordingHandler(expected, true));
+
+        byte[] twoFrames = Arrays.copyOf(frame, frame.length * 2);
+        System.arraycopy(frame, 0, twoFrames, frame.length, frame.length);
+        Random random = new Random(1);
+        for (int chunkSize : new int[]{1, 2, 7, 18, 33, twoFrames.length, -1}) {
+            List<String> actual = new ArrayList<>();
+            RSCPStreamDecoder decoder = new RSCPStreamDecoder(new RecordingHandler(actual, true));
+            int offset = 0;
+            while (offset < twoFrames.length) {
+                // -1 picks random chunk sizes
+                int length = Math.min(twoFrames.length - offset, chunkSize > 0 ? chunkSize : 1 + random.nextInt(40));
+                decoder.feed(twoFrames, offset, length);
+                offset += length;
+            }
+
+            assertThat("chunk size " + chunkSize, actual, equalTo(expected));
+            assertThat(decoder.getFrameCount(), equalTo(2L));
+            assertThat(decoder.isAtFrameBoundary(), equalTo(true));
+        }
+    }
+
+    @Test
+    public void skipped_containers_are_not_decoded() {
+        byte[] frame = buildDBResponseFrame();
+        List<String> expected = new ArrayList<>();
+        RSCPEventDecoder.decodeFrame(frame, new RecordingHandler(expected, false));
+        List<String> actual = new ArrayList<>();
+        RSCPStreamDecoder decoder = new RSCPStreamDecoder(new RecordingHandler(actual, false));
+
+        for (int offset = 0; offset < frame.length; offset += 5) {
+            decoder.feed(frame, offset, Math.min(5, frame.length - offset));
+        }
+
+        assertThat(actual, equalTo(expected));
+        assertThat(decoder.isAtFrameBoundary(), equalTo(true));
+    }
+
+    @Test
+    public void closes_empty_and_nested_containers() {
+        // the builder does not build empty containers, so the first element is turned into one below
+        RSCPData empty = RSCPData.builder().tag(RSCPTag.TAG_DB_VALUE_CONTAINER).noneValue().build();
+        RSCPData nested = RSCPData.builder().tag(RSCPTag.TAG_DB_HISTORY_DATA_DAY)
+                .containerValues(Arrays.asList(empty,
+                        RSCPData.builder().tag(RSCPTag.TAG_DB_VALUE_CONTAINER).containerValues(Arrays.asList(
+                                RSCPData.builder().tag(RSCPTag.TAG_DB_BAT_POWER_IN).int32Value(15).build())).build()))
+                .build();
+        byte[] frame = RSCPFrame.builder().timestamp(Instant.ofEpochSecond(1)).addData(nested).build().getAsByteArray();
+        frame[RSCPFrame.offsetData + RSCPData.offsetData + RSCPData.offsetDataType] = RSCPDataType.CONTAINER.getValue();
+        List<String> expected = new ArrayList<>();
+        RSCPEventDecoder.decodeFrame(frame, new RecordingHandler(expected, true));
+        List<String> actual = new ArrayList<>();
+
+        RSCPStreamDecoder decoder = new RSCPStreamDecoder(new RecordingHandler(actual, true));
+        for (byte b : frame) {
+            decoder.feed(new byte[]{b}, 0, 1);
+        }
+
+        assertThat(actual, equalTo(expected));
+        assertThat(actual.get(3), equalTo("end " + RSCPTag.TAG_DB_VALUE_CONTAINER));
+        assertThat(actual.get(actual.size() - 1), equalTo("end " + RSCPTag.TAG_DB_HISTORY_DATA_DAY));
+    }
+
+    @Test
+    public void stops_decoding_section_at_truncated_element() {
+        byte[] frame = buildDBResponseFrame();
+        // the second element of the container claims more bytes than the container holds
+        int secondElement = RSCPFrame.offsetData + 2 * RSCPData.offsetData + 4;
+        frame[secondElement + RSCPData.offsetDataLength] = (byte) 0xF0;
+        frame[secondElement + RSCPData.offsetDataLength + 1] = (byte) 0xFF;
+        List<String> expected = new ArrayList<>();
+        RSCPEventDecoder.decodeFrame(frame, new RecordingHandler(expected, true));
+        List<String> actual = new ArrayList<>();
+
+        RSCPStreamDecoder decoder = new RSCPStreamDecoder(new RecordingHandler(actual, true));
+        decoder.feed(frame, 0, frame.length);
+
+        assertThat(actual, equalTo(expected));
+        assertThat(actual.size(), equalTo(4));
+        assertThat(decoder.isAtFrameBoundary(), equalTo(true));
+    }
+
+    @Test
+    public void reports_raw_id_of_unknown_tags() {
+        byte[] frame = RSCPFrame.builder()
+                .timestamp(Instant.ofEpochSecond(1505309400L))
+                .addData(RSCPData.builder().tagId(0x7F000001).containerValues(Arrays.asList(
+                        RSCPData.builder().tagId(0x7F000002).int32Value(5).build())).build())
+                .build()
+                .getAsByteArray();
+        List<String> expected = new ArrayList<>();
+        RSCPEventDecoder.decodeFrame(frame, new RecordingHandler(expected, true));
+        List<String> actual = new ArrayList<>();
+        RSCPStreamDecoder decoder = new RSCPStreamDecoder(new RecordingHandler(actual, true));
+
+        for (int offset = 0; offset < frame.length; offset += 3) {
+            decoder.feed(frame, offset, Math.min(3, frame.length - offset));
+        }
+
+        assertThat(actual, equalTo(expected));
+        assertThat(actual.subList(1, actual.size()), equalTo(Arrays.asList(
+                "unknown 7f000001 " + RSCPDataType.CONTAINER, "start " + RSCPTag.UNKNOWN,
+                "unknown 7f000002 " + RSCPDataType.INT32, RSCPTag.UNKNOWN + "=5",
+                "end " + RSCPTag.UNKNOWN)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_data_without_magic_bytes() {
+        new RSCPStreamDecoder(new RSCPDataHandler() {
+        }).feed(new byte[RSCPFrame.offsetData], 0, RSCPFrame.offsetData);
+    }
+
+    private static byte[] buildDBResponseFrame() {
+        List<RSCPData> data = RSCPData.builder().buildFromRawBytes(RSCPDataTest.getSampleDBResponseContainerData());
+        return RSCPFrame.builder()
+                .timestamp(Instant.ofEpochSecond(1505309400L, 123))
+                .addData(RSCPData.builder().tag(RSCPTag.TAG_DB_HISTORY_DATA_YEAR).containerValues(data).build())
+                .withChecksum()
+                .build()
+                .getAsByteArray();
+    }
+
+    private static class RecordingHandler implements RSCPDataHandler {
+        private final List<String> events;
+        private final boolean decodeContainers;
+
+        RecordingHandler(List<String> events, boolean decodeContainers) {
+            this.events = events;
+            this.decodeContainers = decodeContainers;
+        }
+
+        @Override
+        public void onFrameStart(long epochSeconds, int nanos) {
+            events.add("frame " + epochSeconds + "." + nanos);
+        }
+
+        @Override
+        public void onUnknownTag(int tagId, RSCPDataType dataType) {
+            events.add("unknown " + Integer.toHexString(tagId) + " " + dataType);
+        }
+
+        @Override
+        public boolean onContainerStart(RSCPTag tag) {
+            events.add("start " + tag);
+            return decodeContainers;
+        }
+
+        @Override
+        public void onContainerEnd(RSCPTag tag) {
+            events.add("end " + tag);
+        }
+
+        @Override
+        public void onLong(RSCPTag tag, long value) {
+            events.add(tag + "=" + value);
+        }
+
+        @Override
+        public void onDouble(RSCPTag tag, double value) {
+            events.add(tag + "=" + value);
+        }
+
+        @Override
+        public void onTimestamp(RSCPTag tag, long seconds, int nanos) {
+            events.add(tag + "=" + seconds + "." + nanos);
+        }
+
+        @Override
+        public void onBytes(RSCPTag tag, RSCPDataType dataType, byte[] bytes, int offset, int length) {
+            events.add(tag + "=" + dataType + Arrays.toString(Arrays.copyOfRange(bytes, offset, offset + length)));
+        }
+    }
+}
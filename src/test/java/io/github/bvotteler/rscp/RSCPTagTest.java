@@ -0,0 +1,37 @@
+package io.github.bvotteler.rscp;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class RSCPTagTest {
+    @Test
+    public void every_tag_can_be_found_by_id_and_bytes() {
+        for (RSCPTag tag : RSCPTag.values()) {
+            assertThat(RSCPTag.fromId(tag.getId()), equalTo(tag));
+            assertThat(RSCPTag.getTagForBytes(tag.getValueAsBytes()), equalTo(tag));
+        }
+    }
+
+    @Test
+    public void id_matches_hex_string() {
+        assertThat(RSCPTag.TAG_EMS_POWER_PV.getId(), equalTo(0x01800001));
+        assertThat(RSCPTag.UNKNOWN.getId(), equalTo(0xFFFFFFFF));
+        assertThat(RSCPTag.getTagForHexString("01800001"), equalTo(RSCPTag.TAG_EMS_POWER_PV));
+    }
+
+    @Test
+    public void unknown_ids_are_not_found() {
+        assertThat(RSCPTag.fromId(0x7FFFFFFE), nullValue());
+        assertThat(RSCPTag.getTagForBytes(new byte[] { 0x01, (byte) 0x80 }), nullValue());
+    }
+
+    @Test
+    public void value_as_bytes_cannot_alter_tag() {
+        RSCPTag.TAG_EMS_POWER_PV.getValueAsBytes()[0] = 0x7F;
+
+        assertThat(RSCPTag.TAG_EMS_POWER_PV.getValueAsBytes(), equalTo(new byte[] { 0x01, (byte) 0x80, 0x00, 0x01 }));
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.bvotteler.rscp.helper;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.RijndaelEngine;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.paddings.ZeroBytePadding;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class BouncyAES256HelperTest {
+    private static final String key = "SuperSecret123";
+
+    @Test
+    public void matches_cipher_built_per_message() throws InvalidCipherTextException {
+        BouncyAES256Helper helper = new BouncyAES256Helper(key);
+        byte[] aesKey = paddedKey(key);
+        byte[] iv = new byte[32];
+        Arrays.fill(iv, (byte) 0xFF);
+
+        Random random = new Random(1);
+        for (int length : new int[]{1, 31, 32, 33, 64, 100, 1024, 65536, 7}) {
+            byte[] message = new byte[length];
+            random.nextBytes(message);
+
+            byte[] expected = encryptPerMessage(aesKey, iv, message);
+            assertThat("length " + length, helper.encrypt(message), equalTo(expected));
+            System.arraycopy(expected, expected.length - 32, iv, 0, 32);
+        }
+    }
+
+    @Test
+    public void decrypts_chain_of_messages() {
+        BouncyAES256Helper sender = new BouncyAES256Helper(key);
+        BouncyAES256Helper receiver = new BouncyAES256Helper(key);
+
+        Random random = new Random(2);
+        for (int length : new int[]{1, 32, 33, 1000, 64, 5}) {
+            byte[] message = new byte[length];
+            random.nextBytes(message);
+            // trailing zeros are indistinguishable from padding
+            message[length - 1] = 1;
+
+            assertThat(receiver.decrypt(sender.encrypt(message)), equalTo(message));
+        }
+    }
+
+    @Test
+    public void encrypts_and_decrypts_in_place() {
+        BouncyAES256Helper reference = new BouncyAES256Helper(key);
+        BouncyAES256Helper sender = new BouncyAES256Helper(key);
+        BouncyAES256Helper receiver = new BouncyAES256Helper(key);
+
+        Random random = new Random(3);
+        for (int length : new int[]{1, 32, 33, 1000}) {
+            byte[] message = new byte[length];
+            random.nextBytes(message);
+            message[length - 1] = 1;
+            byte[] expected = reference.encrypt(message);
+
+            // leading and trailing bytes around the message must stay untouched
+            byte[] buffer = new byte[8 + AES256Helper.getEncryptedLength(length) + 8];
+            System.arraycopy(message, 0, buffer, 8, length);
+            assertThat(sender.encrypt(buffer, 8, length, buffer, 8), equalTo(expected.length));
+            assertThat(Arrays.copyOfRange(buffer, 8, 8 + expected.length), equalTo(expected));
+
+            assertThat(receiver.decrypt(buffer, 8, expected.length, buffer, 8), equalTo(length));
+            assertThat(Arrays.copyOfRange(buffer, 8, 8 + length), equalTo(message));
+            assertThat(Arrays.copyOfRange(buffer, 8 + length, 8 + expected.length), equalTo(new byte[expected.length - length]));
+            assertThat(buffer[0], equalTo((byte) 0));
+            assertThat(buffer[buffer.length - 1], equalTo((byte) 0));
+        }
+    }
+
+    @Test
+    public void encrypts_and_decrypts_direct_buffers() {
+        BouncyAES256Helper reference = new BouncyAES256Helper(key);
+        BouncyAES256Helper sender = new BouncyAES256Helper(key);
+        BouncyAES256Helper receiver = new BouncyAES256Helper(key);
+
+        byte[] message = new byte[70];
+        new Random(4).nextBytes(message);
+        message[69] = 1;
+        byte[] expected = reference.encrypt(message);
+
+        ByteBuffer src = ByteBuffer.allocateDirect(message.length);
+        src.put(message).flip();
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(expected.length);
+        assertThat(sender.encrypt(src, encrypted), equalTo(expected.length));
+        assertThat(src.remaining(), equalTo(0));
+        encrypted.flip();
+        byte[] encryptedBytes = new byte[encrypted.remaining()];
+        encrypted.duplicate().get(encryptedBytes);
+        assertThat(encryptedBytes, equalTo(expected));
+
+        ByteBuffer decrypted = ByteBuffer.allocate(expected.length);
+        assertThat(receiver.decrypt(encrypted, decrypted), equalTo(message.length));
+        assertThat(decrypted.position(), equalTo(message.length));
+        assertThat(Arrays.copyOf(decrypted.array(), message.length), equalTo(message));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void rejects_too_small_output_buffer() {
+        new BouncyAES256Helper(key).encrypt(ByteBuffer.allocate(32), ByteBuffer.allocate(32));
+    }
+
+    @Test
+    public void uses_separate_decryption_iv() throws InvalidCipherTextException {
+        byte[] aesKey = paddedKey(key);
+        byte[] ivEnc = new byte[32];
+        byte[] ivDec = new byte[32];
+        Arrays.fill(ivEnc, (byte) 0xFF);
+        Arrays.fill(ivDec, (byte) 0x11);
+        byte[] message = "decrypted with its own IV".getBytes();
+
+        BouncyAES256Helper helper = new BouncyAES256Helper(key);
+        helper.init(aesKey, ivEnc, ivDec);
+
+        assertThat(helper.decrypt(encryptPerMessage(aesKey, ivDec, message)), equalTo(message));
+    }
+
+    @Test
+    public void restores_iv_snapshot() {
+        BouncyAES256Helper sender = new BouncyAES256Helper(key);
+        BouncyAES256Helper receiver = new BouncyAES256Helper(key);
+        byte[] first = "first message".getBytes();
+        byte[] second = "second message".getBytes();
+        receiver.decrypt(sender.encrypt(first));
+
+        BouncyAES256Helper.IvSnapshot senderState = sender.snapshot();
+        BouncyAES256Helper.IvSnapshot receiverState = receiver.snapshot();
+        byte[] encryptedSecond = sender.encrypt(second);
+        assertThat(receiver.decrypt(encryptedSecond), equalTo(second));
+
+        // both chains continue from the snapshot, as if the second message had not been sent
+        sender.restore(senderState);
+        receiver.restore(receiverState);
+        assertThat(sender.encrypt(second), equalTo(encryptedSecond));
+        assertThat(receiver.decrypt(encryptedSecond), equalTo(second));
+
+        // a fresh helper resumes the session from a snapshot
+        BouncyAES256Helper resumed = new BouncyAES256Helper(key);
+        resumed.restore(receiverState);
+        assertThat(resumed.decrypt(encryptedSecond), equalTo(second));
+    }
+
+    @Test
+    public void encrypts_and_decrypts_on_separate_threads() throws Exception {
+        BouncyAES256Helper peer = new BouncyAES256Helper(key);
+        BouncyAES256Helper shared = new BouncyAES256Helper(key);
+        BouncyAES256Helper reference = new BouncyAES256Helper(key);
+        int messageCount = 2000;
+        byte[][] messages = new byte[messageCount][];
+        byte[][] incoming = new byte[messageCount][];
+        Random random = new Random(5);
+        for (int i = 0; i < messageCount; i++) {
+            messages[i] = new byte[1 + random.nextInt(300)];
+            random.nextBytes(messages[i]);
+            messages[i][messages[i].length - 1] = 1;
+            incoming[i] = peer.encrypt(messages[i]);
+        }
+
+        byte[][] outgoing = new byte[messageCount][];
+        Thread sender = new Thread(() -> {
+            for (int i = 0; i < messageCount; i++) {
+                outgoing[i] = shared.encrypt(messages[i]);
+            }
+        });
+        sender.start();
+        for (int i = 0; i < messageCount; i++) {
+            assertThat(shared.decrypt(incoming[i]), equalTo(messages[i]));
+        }
+        sender.join();
+
+        for (int i = 0; i < messageCount; i++) {
+            assertThat(outgoing[i], equalTo(reference.encrypt(messages[i])));
+        }
+    }
+
+    /**
+     * How messages were encrypted before the ciphers were kept between messages.
+     */
+    private static byte[] encryptPerMessage(byte[] aesKey, byte[] iv, byte[] message) throws InvalidCipherTextException {
+        PaddedBufferedBlockCipher cipher = new PaddedBufferedBlockCipher(
+                CBCBlockCipher.newInstance(new RijndaelEngine(256)), new ZeroBytePadding());
+        cipher.init(true, new ParametersWithIV(new KeyParameter(aesKey, 0, 32), iv, 0, 32));
+        byte[] encrypted = new byte[cipher.getOutputSize(message.length)];
+        int length = cipher.processBytes(message, 0, message.length, encrypted, 0);
+        cipher.doFinal(encrypted, length);
+        return encrypted;
+    }
+
+    static byte[] paddedKey(String key) {
+        byte[] aesKey = new byte[32];
+        Arrays.fill(aesKey, (byte) 0xFF);
+        byte[] keyBytes = key.getBytes();
+        System.arraycopy(keyBytes, 0, aesKey, 0, Math.min(keyBytes.length, aesKey.length));
+        return aesKey;
+    }
+}
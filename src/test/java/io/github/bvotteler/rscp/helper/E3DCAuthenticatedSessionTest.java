@@ -0,0 +1,188 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class E3DCAuthenticatedSessionTest {
+    private static final String key = "SuperSecret123";
+    private static final String user = "user";
+    private static final String password = "password";
+    // requests with this value are answered with a frame holding an unknown data type
+    private static final int undecodableValue = -1;
+
+    // the simulated device forgets the authentication when cleared
+    private final AtomicBoolean authenticated = new AtomicBoolean();
+    // the simulated device leaves requests unanswered while set
+    private final AtomicBoolean holdResponses = new AtomicBoolean();
+    private final List<E3DCSession> connections = new CopyOnWriteArrayList<>();
+    private LoopbackEchoServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new LoopbackEchoServer(key, this::respond);
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void authenticates_once_for_many_requests() throws Exception {
+        try (E3DCAuthenticatedSession session = createSession(password)) {
+            for (int i = 0; i < 10; i++) {
+                assertThat(session.send(request(i)).get(10, TimeUnit.SECONDS).getData().get(0).getIntOrThrow(), equalTo(i));
+            }
+
+            assertThat(session.getAuthLevel(), equalTo((short) 10));
+            assertThat(session.getMetrics().getConnections(), equalTo(1L));
+            assertThat(session.getMetrics().getAuthentications(), equalTo(1L));
+        }
+    }
+
+    @Test
+    public void general_error_authenticates_again_and_repeats_request() throws Exception {
+        try (E3DCAuthenticatedSession session = createSession(password)) {
+            session.send(request(1)).get(10, TimeUnit.SECONDS);
+            authenticated.set(false);
+
+            RSCPFrame response = session.send(request(2)).get(10, TimeUnit.SECONDS);
+
+            assertThat(response.getData().get(0).getIntOrThrow(), equalTo(2));
+            assertThat(session.getMetrics().getConnections(), equalTo(1L));
+            assertThat(session.getMetrics().getAuthentications(), equalTo(2L));
+            assertThat(session.getMetrics().getReauthenticationsAfterError(), equalTo(1L));
+        }
+    }
+
+    @Test
+    public void dropped_connection_is_reopened() throws Exception {
+        try (E3DCAuthenticatedSession session = createSession(password)) {
+            session.send(request(1)).get(10, TimeUnit.SECONDS);
+            connections.get(0).close();
+
+            RSCPFrame response = session.send(request(2)).get(10, TimeUnit.SECONDS);
+
+            assertThat(response.getData().get(0).getIntOrThrow(), equalTo(2));
+            assertThat(session.getMetrics().getConnections(), equalTo(2L));
+            assertThat(session.getMetrics().getAuthentications(), equalTo(2L));
+            assertThat(session.getMetrics().getReconnectsAfterDrop(), equalTo(1L));
+        }
+    }
+
+    @Test
+    public void requests_failing_on_same_dropped_connection_reconnect_once() throws Exception {
+        try (E3DCAuthenticatedSession session = createSession(password)) {
+            session.send(request(1)).get(10, TimeUnit.SECONDS);
+            holdResponses.set(true);
+            List<CompletableFuture<RSCPFrame>> responses = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                responses.add(session.send(request(i)));
+            }
+            waitForPendingRequests(connections.get(0), 5);
+            holdResponses.set(false);
+            connections.get(0).close();
+
+            for (int i = 0; i < responses.size(); i++) {
+                assertThat(responses.get(i).get(10, TimeUnit.SECONDS).getData().get(0).getIntOrThrow(), equalTo(i));
+            }
+            assertThat(session.getMetrics().getConnections(), equalTo(2L));
+            assertThat(session.getMetrics().getReconnectsAfterDrop(), equalTo(1L));
+        }
+    }
+
+    @Test
+    public void undecodable_response_fails_only_its_request() throws Exception {
+        try (E3DCAuthenticatedSession session = createSession(password)) {
+            session.send(request(1)).get(10, TimeUnit.SECONDS);
+
+            try {
+                session.send(request(undecodableValue)).get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // expected
+            }
+
+            assertThat(session.send(request(2)).get(10, TimeUnit.SECONDS).getData().get(0).getIntOrThrow(), equalTo(2));
+            assertThat(session.getMetrics().getConnections(), equalTo(1L));
+            assertThat(session.getMetrics().getReconnectsAfterDrop(), equalTo(0L));
+        }
+    }
+
+    @Test
+    public void rejected_credentials_fail_request() throws Exception {
+        try (E3DCAuthenticatedSession session = createSession("wrong")) {
+            try {
+                session.send(request(1)).get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // expected
+            }
+
+            assertThat(session.getAuthLevel(), equalTo((short) -1));
+            assertThat(session.getMetrics().getAuthenticationFailures(), equalTo(1L));
+            assertThat(connections.get(0).isOpen(), equalTo(false));
+        }
+    }
+
+    private E3DCAuthenticatedSession createSession(String password) {
+        return new E3DCAuthenticatedSession(() -> {
+            E3DCSession connection = E3DCSession.open("127.0.0.1", server.getPort(), new BouncyAES256Helper(key));
+            connections.add(connection);
+            return connection;
+        }, user, password, E3DCSession.readerThreadExecutor);
+    }
+
+    private static void waitForPendingRequests(E3DCSession connection, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (connection.getPendingRequestCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private byte[] respond(byte[] frame) {
+        RSCPData request = RSCPFrame.builder().buildFromRawBytes(frame).getData().get(0);
+        RSCPData response;
+        if (holdResponses.get()) {
+            return null;
+        } else if (request.getDataTag() == RSCPTag.TAG_EMS_REQ_POWER_PV && request.getInt(0) == undecodableValue) {
+            byte[] undecodable = E3DCSessionTest.answerEachElement(frame);
+            // data type of the first element, right after the frame header and the tag
+            undecodable[22] = (byte) 0x7F;
+            return undecodable;
+        } else if (request.getDataTag() == RSCPTag.TAG_RSCP_REQ_AUTHENTICATION) {
+            List<RSCPData> credentials = request.getContainerData();
+            boolean accepted = user.equals(credentials.get(0).getValueAsString().orElse(null))
+                    && password.equals(credentials.get(1).getValueAsString().orElse(null));
+            authenticated.set(accepted);
+            response = RSCPData.builder().tag(RSCPTag.TAG_RSCP_AUTHENTICATION).char8Value((byte) (accepted ? 10 : 0)).build();
+        } else if (!authenticated.get()) {
+            response = RSCPData.builder().tag(RSCPTag.TAG_RSCP_GENERAL_ERROR).int32Value(0).build();
+        } else {
+            return E3DCSessionTest.answerEachElement(frame);
+        }
+        return RSCPFrame.builder().timestamp(Instant.now()).addData(response).build().getAsByteArray();
+    }
+
+    private static RSCPFrame request(int value) {
+        return RSCPFrame.builder()
+                .timestamp(Instant.now())
+                .addData(RSCPData.builder().tag(RSCPTag.TAG_EMS_REQ_POWER_PV).int32Value(value).build())
+                .build();
+    }
+}
@@ -0,0 +1,217 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class E3DCCaptureReaderTest {
+    private static final String key = "SuperSecret123";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void records_are_read_back() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.delete(path);
+        byte[] frame = E3DCFrameReaderTest.buildFrame(3);
+        byte[] encrypted = new BouncyAES256Helper(key).encrypt(frame);
+        Instant timestamp = Instant.ofEpochSecond(1505891066L, 123456789);
+
+        try (E3DCCaptureWriter writer = E3DCCaptureWriter.open(path, true)) {
+            writer.record(E3DCCaptureRecord.Direction.SENT, timestamp, frame, encrypted);
+            writer.record(E3DCCaptureRecord.Direction.RECEIVED, timestamp.plusMillis(5), frame, null);
+        }
+
+        try (E3DCCaptureReader reader = E3DCCaptureReader.open(path)) {
+            E3DCCaptureRecord sent = reader.next();
+            assertThat(sent.getDirection(), equalTo(E3DCCaptureRecord.Direction.SENT));
+            assertThat(sent.getTimestamp(), equalTo(timestamp));
+            assertThat(sent.getFrame(), equalTo(frame));
+            assertThat(sent.getEncryptedFrame(), equalTo(encrypted));
+
+            E3DCCaptureRecord received = reader.next();
+            assertThat(received.getDirection(), equalTo(E3DCCaptureRecord.Direction.RECEIVED));
+            assertThat(received.getTimestamp(), equalTo(timestamp.plusMillis(5)));
+            assertThat(received.getEncryptedFrame(), nullValue());
+            assertThat(reader.hasNext(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void records_across_mapping_windows_are_read() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.delete(path);
+        List<byte[]> frames = new ArrayList<>();
+        try (E3DCCaptureWriter writer = E3DCCaptureWriter.open(path, true)) {
+            for (int i = 1; i <= 50; i++) {
+                byte[] frame = E3DCFrameReaderTest.buildFrame(i);
+                frames.add(frame);
+                writer.record(E3DCCaptureRecord.Direction.SENT, Instant.ofEpochSecond(i), frame, frame);
+            }
+        }
+
+        // windows smaller than most records
+        try (E3DCCaptureReader reader = new E3DCCaptureReader(FileChannel.open(path, StandardOpenOption.READ), 100)) {
+            for (byte[] frame : frames) {
+                E3DCCaptureRecord record = reader.next();
+                assertThat(record.getFrame(), equalTo(frame));
+                assertThat(record.getEncryptedFrame(), equalTo(frame));
+            }
+            assertThat(reader.hasNext(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void incomplete_last_record_ends_capture() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.delete(path);
+        try (E3DCCaptureWriter writer = E3DCCaptureWriter.open(path, false)) {
+            writer.record(E3DCCaptureRecord.Direction.SENT, Instant.now(), E3DCFrameReaderTest.buildFrame(1), null);
+            writer.record(E3DCCaptureRecord.Direction.SENT, Instant.now(), E3DCFrameReaderTest.buildFrame(10), null);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        try (E3DCCaptureReader reader = E3DCCaptureReader.open(path)) {
+            reader.next();
+            assertThat(reader.hasNext(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void writer_flushes_once_interval_passed() throws Exception {
+        Path buffered = folder.newFile().toPath();
+        Path flushed = folder.newFile().toPath();
+        Files.delete(buffered);
+        Files.delete(flushed);
+
+        try (E3DCCaptureWriter bufferingWriter = E3DCCaptureWriter.open(buffered, false, Duration.ofHours(1));
+             E3DCCaptureWriter flushingWriter = E3DCCaptureWriter.open(flushed, false, Duration.ZERO)) {
+            bufferingWriter.record(E3DCCaptureRecord.Direction.SENT, Instant.now(), E3DCFrameReaderTest.buildFrame(1), null);
+            flushingWriter.record(E3DCCaptureRecord.Direction.SENT, Instant.now(), E3DCFrameReaderTest.buildFrame(1), null);
+
+            assertThat(Files.size(buffered), equalTo((long) E3DCCaptureWriter.magic.length));
+            try (E3DCCaptureReader reader = E3DCCaptureReader.open(flushed)) {
+                assertThat(reader.replay(Double.POSITIVE_INFINITY, record -> { }), equalTo(1L));
+            }
+        }
+    }
+
+    @Test
+    public void writer_appends_to_existing_capture() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.delete(path);
+        for (int i = 0; i < 2; i++) {
+            try (E3DCCaptureWriter writer = E3DCCaptureWriter.open(path, false)) {
+                writer.record(E3DCCaptureRecord.Direction.SENT, Instant.now(), E3DCFrameReaderTest.buildFrame(1), null);
+            }
+        }
+
+        try (E3DCCaptureReader reader = E3DCCaptureReader.open(path)) {
+            assertThat(reader.replay(Double.POSITIVE_INFINITY, record -> { }), equalTo(2L));
+        }
+    }
+
+    @Test
+    public void writer_drops_incomplete_last_record_before_appending() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.delete(path);
+        try (E3DCCaptureWriter writer = E3DCCaptureWriter.open(path, true)) {
+            writer.record(E3DCCaptureRecord.Direction.SENT, Instant.now(), E3DCFrameReaderTest.buildFrame(1), null);
+            writer.record(E3DCCaptureRecord.Direction.SENT, Instant.now(), E3DCFrameReaderTest.buildFrame(10), new byte[64]);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        byte[] appended = E3DCFrameReaderTest.buildFrame(2);
+        try (E3DCCaptureWriter writer = E3DCCaptureWriter.open(path, false)) {
+            writer.record(E3DCCaptureRecord.Direction.RECEIVED, Instant.now(), appended, null);
+        }
+
+        try (E3DCCaptureReader reader = E3DCCaptureReader.open(path)) {
+            assertThat(reader.next().getDirection(), equalTo(E3DCCaptureRecord.Direction.SENT));
+            assertThat(reader.next().getFrame(), equalTo(appended));
+            assertThat(reader.hasNext(), equalTo(false));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void other_files_are_rejected() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.write(path, "not a capture".getBytes());
+
+        E3DCCaptureWriter.open(path, false);
+    }
+
+    @Test
+    public void replay_keeps_time_between_records() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.delete(path);
+        Instant start = Instant.now();
+        try (E3DCCaptureWriter writer = E3DCCaptureWriter.open(path, false)) {
+            writer.record(E3DCCaptureRecord.Direction.SENT, start, E3DCFrameReaderTest.buildFrame(1), null);
+            writer.record(E3DCCaptureRecord.Direction.SENT, start.plusMillis(400), E3DCFrameReaderTest.buildFrame(1), null);
+        }
+
+        try (E3DCCaptureReader reader = E3DCCaptureReader.open(path)) {
+            long startNanos = System.nanoTime();
+            reader.replay(4, record -> { });
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), greaterThanOrEqualTo(100L));
+        }
+    }
+
+    @Test
+    public void recorded_session_replays_against_simulator() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.delete(path);
+        try (E3DCSimulator simulator = E3DCSimulator.builder().aesPassword(key).credentials("user", "password").build().start()) {
+            try (E3DCCaptureWriter writer = E3DCCaptureWriter.open(path, true);
+                 E3DCSession session = E3DCSession.open("127.0.0.1", simulator.getPort(), new BouncyAES256Helper(key))) {
+                session.setCaptureWriter(writer);
+                E3DCAuthenticatedSession.authenticate(session, "user", "password").get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < 5; i++) {
+                    session.send(RSCPFrame.builder()
+                            .timestamp(Instant.now())
+                            .addData(RSCPData.builder().tag(RSCPTag.TAG_EMS_REQ_POWER_PV).noneValue().build())
+                            .build()).get(10, TimeUnit.SECONDS);
+                }
+            }
+
+            List<RSCPFrame> responses = new ArrayList<>();
+            try (E3DCCaptureReader reader = E3DCCaptureReader.open(path);
+                 E3DCSession session = E3DCSession.open("127.0.0.1", simulator.getPort(), new BouncyAES256Helper(key))) {
+                reader.replay(Double.POSITIVE_INFINITY, record -> {
+                    if (record.getDirection() == E3DCCaptureRecord.Direction.SENT) {
+                        RSCPFrame request = RSCPFrame.builder().buildFromRawBytes(record.getFrame());
+                        responses.add(session.send(request).join());
+                    }
+                });
+            }
+
+            assertThat(responses.size(), equalTo(6));
+            assertThat(responses.get(5).getData().get(0).getDataTag(), equalTo(RSCPTag.TAG_EMS_POWER_PV));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPDataHandler;
+import io.vavr.control.Either;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+
+public class E3DCConnectorTest {
+    private static final String key = "SuperSecret123";
+
+    private LoopbackEchoServer server;
+    private Socket socket;
+
+    @After
+    public void stopServer() throws IOException {
+        if (socket != null) {
+            E3DCConnector.silentlyCloseConnection(socket);
+        }
+        server.close();
+    }
+
+    @Test
+    public void frame_received_within_timeout() throws IOException {
+        server = new LoopbackEchoServer(key);
+        socket = E3DCConnector.openConnection("127.0.0.1", server.getPort(), Duration.ofSeconds(10)).get();
+        byte[] frame = E3DCFrameReaderTest.buildFrame(10);
+
+        assertThat(E3DCConnector.sendFrameToServer(socket, new BouncyAES256Helper(key)::encrypt, frame, Duration.ofSeconds(10)).isRight(), equalTo(true));
+        Either<Exception, byte[]> response = E3DCConnector.receiveFrameFromServer(socket, new BouncyAES256Helper(key)::decrypt,
+                new E3DCFrameReader(), Instant.now().plusSeconds(10));
+
+        assertThat(response.get(), equalTo(frame));
+        assertThat(socket.getSoTimeout(), equalTo(10000));
+    }
+
+    @Test
+    public void receive_times_out_at_deadline() throws IOException {
+        server = new LoopbackEchoServer(key, frame -> null);
+        socket = E3DCConnector.openConnection("127.0.0.1", server.getPort(), Duration.ofSeconds(10)).get();
+        E3DCConnector.sendFrameToServer(socket, new BouncyAES256Helper(key)::encrypt, E3DCFrameReaderTest.buildFrame(1), Duration.ofSeconds(10));
+
+        long start = System.nanoTime();
+        Either<Exception, byte[]> response = E3DCConnector.receiveFrameFromServer(socket, new BouncyAES256Helper(key)::decrypt,
+                new E3DCFrameReader(), Duration.ofMillis(100));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start), lessThan(Duration.ofSeconds(5)));
+        assertThat(response.getLeft(), instanceOf(E3DCTimeoutException.class));
+        assertThat(((E3DCTimeoutException) response.getLeft()).getOperation(), equalTo(E3DCTimeoutException.Operation.RECEIVE));
+    }
+
+    @Test
+    public void frame_decrypted_in_place_received_within_timeout() throws IOException {
+        server = new LoopbackEchoServer(key);
+        socket = E3DCConnector.openConnection("127.0.0.1", server.getPort(), Duration.ofSeconds(3)).get();
+        byte[] frame = E3DCFrameReaderTest.buildFrame(10);
+
+        E3DCConnector.sendFrameToServer(socket, new BouncyAES256Helper(key)::encrypt, frame, Duration.ofSeconds(10));
+        Either<Exception, byte[]> response = E3DCConnector.receiveFrameFromServer(socket, new BouncyAES256Helper(key),
+                new E3DCFrameReader(), Instant.now().plusSeconds(10));
+
+        assertThat(response.get(), equalTo(frame));
+        // reads time out like the connect
+        assertThat(socket.getSoTimeout(), equalTo(3000));
+    }
+
+    @Test
+    public void streamed_receive_times_out_at_deadline() throws IOException {
+        server = new LoopbackEchoServer(key, frame -> null);
+        socket = E3DCConnector.openConnection("127.0.0.1", server.getPort(), Duration.ofSeconds(10)).get();
+        E3DCConnector.sendFrameToServer(socket, new BouncyAES256Helper(key)::encrypt, E3DCFrameReaderTest.buildFrame(1), Duration.ofSeconds(10));
+
+        long start = System.nanoTime();
+        Either<Exception, Integer> response = E3DCConnector.receiveFrameFromServer(socket, new BouncyAES256Helper(key),
+                new E3DCFrameReader(), new RSCPDataHandler() {
+                }, Duration.ofMillis(100));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start), lessThan(Duration.ofSeconds(5)));
+        assertThat(((E3DCTimeoutException) response.getLeft()).getOperation(), equalTo(E3DCTimeoutException.Operation.RECEIVE));
+    }
+
+    @Test
+    public void send_after_deadline_does_not_encrypt() throws IOException {
+        server = new LoopbackEchoServer(key);
+        socket = E3DCConnector.openConnection("127.0.0.1", server.getPort(), Duration.ofSeconds(10)).get();
+        AtomicInteger encryptions = new AtomicInteger();
+
+        Either<Exception, Integer> result = E3DCConnector.sendFrameToServer(socket, frame -> {
+            encryptions.incrementAndGet();
+            return frame;
+        }, E3DCFrameReaderTest.buildFrame(1), Instant.now().minusSeconds(1));
+
+        assertThat(result.getLeft(), instanceOf(E3DCTimeoutException.class));
+        assertThat(encryptions.get(), equalTo(0));
+    }
+
+    @Test
+    public void connect_without_time_left_times_out() throws IOException {
+        server = new LoopbackEchoServer(key);
+
+        Either<Exception, Socket> result = E3DCConnector.openConnection("127.0.0.1", server.getPort(), Duration.ZERO);
+
+        assertThat(((E3DCTimeoutException) result.getLeft()).getOperation(), equalTo(E3DCTimeoutException.Operation.CONNECT));
+    }
+}
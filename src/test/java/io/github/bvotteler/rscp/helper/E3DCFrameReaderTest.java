@@ -0,0 +1,214 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPDataHandler;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPStreamDecoder;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+public class E3DCFrameReaderTest {
+    private static final String key = "SuperSecret123";
+
+    @Test
+    public void reads_one_frame_at_a_time_from_fragmented_stream() throws IOException {
+        byte[] smallFrame = buildFrame(1);
+        byte[] largeFrame = buildFrame(300);
+        AES256Helper sender = new BouncyAES256Helper(key);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(sender.encrypt(smallFrame));
+        stream.write(sender.encrypt(largeFrame));
+        stream.write(sender.encrypt(smallFrame));
+
+        InputStream in = new FragmentingInputStream(new ByteArrayInputStream(stream.toByteArray()), 7);
+        AES256Helper receiver = new BouncyAES256Helper(key);
+        E3DCFrameReader reader = new E3DCFrameReader();
+
+        assertThat(reader.readFrame(in, receiver::decrypt), equalTo(smallFrame));
+        assertThat(reader.readFrame(in, receiver::decrypt), equalTo(largeFrame));
+        assertThat(reader.readFrame(in, receiver::decrypt), equalTo(smallFrame));
+    }
+
+    @Test
+    public void skips_padding_block_after_frame_filling_whole_blocks() throws IOException {
+        byte[] wholeBlocksFrame = buildFrame(30);
+        assertThat(wholeBlocksFrame.length % 32, equalTo(0));
+        byte[] nextFrame = buildFrame(2);
+        AES256Helper sender = new BouncyAES256Helper(key);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(sender.encrypt(wholeBlocksFrame));
+        stream.write(sender.encrypt(nextFrame));
+
+        InputStream in = new ByteArrayInputStream(stream.toByteArray());
+        AES256Helper receiver = new BouncyAES256Helper(key);
+        E3DCFrameReader reader = new E3DCFrameReader();
+
+        assertThat(reader.readFrame(in, receiver::decrypt), equalTo(wholeBlocksFrame));
+        assertThat(reader.readFrame(in, receiver::decrypt), equalTo(nextFrame));
+    }
+
+    @Test
+    public void streams_frames_into_decoder() throws IOException {
+        // about 55 KB, close to the largest possible frame
+        byte[] largeFrame = buildFrame(5000);
+        byte[] wholeBlocksFrame = buildFrame(30);
+        byte[] smallFrame = buildFrame(1);
+        AES256Helper sender = new BouncyAES256Helper(key);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(sender.encrypt(largeFrame));
+        stream.write(sender.encrypt(wholeBlocksFrame));
+        stream.write(sender.encrypt(smallFrame));
+
+        InputStream in = new FragmentingInputStream(new ByteArrayInputStream(stream.toByteArray()), 1000);
+        AES256Helper receiver = new BouncyAES256Helper(key);
+        E3DCFrameReader reader = new E3DCFrameReader();
+        List<Long> values = new ArrayList<>();
+        RSCPStreamDecoder decoder = new RSCPStreamDecoder(new RSCPDataHandler() {
+            @Override
+            public void onLong(RSCPTag tag, long value) {
+                values.add(value);
+            }
+        });
+
+        assertThat(reader.readFrame(in, receiver, decoder), equalTo(largeFrame.length));
+        assertThat(values.size(), equalTo(5000));
+        assertThat(values.get(4999), equalTo(4999L));
+        assertThat(reader.readFrame(in, receiver, decoder), equalTo(wholeBlocksFrame.length));
+        assertThat(reader.readFrame(in, receiver, decoder), equalTo(smallFrame.length));
+        assertThat(values.size(), equalTo(5000 + 30 + 1));
+        assertThat(decoder.getFrameCount(), equalTo(3L));
+    }
+
+    @Test
+    public void undecodable_streamed_frame_fails_with_io_exception_and_keeps_stream_in_sync() throws IOException {
+        byte[] undecodableFrame = buildFrame(300);
+        // data type of the first element, right after the frame header and the tag
+        undecodableFrame[22] = (byte) 0x7F;
+        byte[] smallFrame = buildFrame(1);
+        AES256Helper sender = new BouncyAES256Helper(key);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(sender.encrypt(undecodableFrame));
+        stream.write(sender.encrypt(smallFrame));
+
+        InputStream in = new ByteArrayInputStream(stream.toByteArray());
+        AES256Helper receiver = new BouncyAES256Helper(key);
+        E3DCFrameReader reader = new E3DCFrameReader();
+        RSCPStreamDecoder decoder = new RSCPStreamDecoder(new RSCPDataHandler() { });
+
+        try {
+            reader.readFrame(in, receiver, decoder);
+            fail("Undecodable frame was accepted.");
+        } catch (IOException e) {
+            // expected
+        }
+        assertThat(reader.readFrame(in, receiver, decoder), equalTo(smallFrame.length));
+    }
+
+    @Test
+    public void timeout_after_padding_block_is_not_in_frame() throws IOException {
+        byte[] wholeBlocksFrame = buildFrame(30);
+        InputStream in = new TimingOutInputStream(new ByteArrayInputStream(new BouncyAES256Helper(key).encrypt(wholeBlocksFrame)));
+        AES256Helper receiver = new BouncyAES256Helper(key);
+        E3DCFrameReader reader = new E3DCFrameReader();
+
+        assertThat(reader.readFrame(in, receiver), equalTo(wholeBlocksFrame));
+        try {
+            reader.readFrame(in, receiver);
+            fail("Expected read to time out.");
+        } catch (SocketTimeoutException e) {
+            assertThat(reader.isInFrame(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void timeout_within_frame_is_in_frame() throws IOException {
+        byte[] encrypted = new BouncyAES256Helper(key).encrypt(buildFrame(300));
+        InputStream in = new TimingOutInputStream(new ByteArrayInputStream(Arrays.copyOf(encrypted, 40)));
+        E3DCFrameReader reader = new E3DCFrameReader();
+
+        try {
+            reader.readFrame(in, new BouncyAES256Helper(key));
+            fail("Expected read to time out.");
+        } catch (SocketTimeoutException e) {
+            assertThat(reader.isInFrame(), equalTo(true));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void fails_on_truncated_frame() throws IOException {
+        byte[] encrypted = new BouncyAES256Helper(key).encrypt(buildFrame(300));
+        InputStream in = new ByteArrayInputStream(encrypted, 0, encrypted.length - 32);
+
+        new E3DCFrameReader().readFrame(in, new BouncyAES256Helper(key)::decrypt);
+    }
+
+    @Test(expected = IOException.class)
+    public void fails_on_wrong_key() throws IOException {
+        byte[] encrypted = new BouncyAES256Helper(key).encrypt(buildFrame(1));
+
+        new E3DCFrameReader().readFrame(new ByteArrayInputStream(encrypted), new BouncyAES256Helper("wrong")::decrypt);
+    }
+
+    static byte[] buildFrame(int valueCount) {
+        RSCPFrame.Builder builder = RSCPFrame.builder().timestamp(Instant.ofEpochSecond(1505309400L));
+        for (int i = 0; i < valueCount; i++) {
+            builder.addData(RSCPData.builder().tag(RSCPTag.TAG_EMS_POWER_PV).int32Value(i).build());
+        }
+        return builder.build().getAsByteArray();
+    }
+
+    // behaves like a socket with a read timeout once the data has been read
+    private static class TimingOutInputStream extends FilterInputStream {
+        TimingOutInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytesRead = super.read(b, off, len);
+            if (bytesRead == -1) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            return bytesRead;
+        }
+    }
+
+    private static class FragmentingInputStream extends FilterInputStream {
+        private final int maxBytesPerRead;
+
+        FragmentingInputStream(InputStream in, int maxBytesPerRead) {
+            super(in);
+            this.maxBytesPerRead = maxBytesPerRead;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, maxBytesPerRead));
+        }
+    }
+}
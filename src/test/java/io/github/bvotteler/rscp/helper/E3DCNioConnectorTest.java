@@ -0,0 +1,158 @@
+package io.github.bvotteler.rscp.helper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+
+public class E3DCNioConnectorTest {
+    private static final String key = "SuperSecret123";
+
+    private LoopbackEchoServer server;
+
+    @Before
+    public void startEchoServer() throws IOException {
+        server = new LoopbackEchoServer(key);
+    }
+
+    @After
+    public void stopEchoServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void many_sessions_share_one_selector_thread() throws Exception {
+        int sessionCount = 50;
+        int framesPerSession = 3;
+        byte[] smallFrame = E3DCFrameReaderTest.buildFrame(1);
+        byte[] largeFrame = E3DCFrameReaderTest.buildFrame(3000);
+        BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+        try (E3DCNioConnector connector = new E3DCNioConnector()) {
+            List<E3DCNioSession> sessions = new ArrayList<>();
+            for (int i = 0; i < sessionCount; i++) {
+                sessions.add(connector.connect("127.0.0.1", server.getPort(), new BouncyAES256Helper(key),
+                        (session, frame) -> received.add(frame)).get(5, TimeUnit.SECONDS));
+            }
+            assertThat(connector.getSessionCount(), equalTo(sessionCount));
+
+            for (E3DCNioSession session : sessions) {
+                session.send(smallFrame);
+                session.send(largeFrame);
+                session.send(smallFrame);
+            }
+
+            int largeFrames = 0;
+            for (int i = 0; i < sessionCount * framesPerSession; i++) {
+                byte[] frame = received.poll(10, TimeUnit.SECONDS);
+                if (frame.length == largeFrame.length) {
+                    assertThat(frame, equalTo(largeFrame));
+                    largeFrames++;
+                } else {
+                    assertThat(frame, equalTo(smallFrame));
+                }
+            }
+            assertThat(largeFrames, equalTo(sessionCount));
+        }
+    }
+
+    @Test
+    public void skips_padding_block_after_frame_filling_whole_blocks() throws Exception {
+        byte[] wholeBlocksFrame = E3DCFrameReaderTest.buildFrame(30);
+        assertThat(wholeBlocksFrame.length % 32, equalTo(0));
+        byte[] nextFrame = E3DCFrameReaderTest.buildFrame(2);
+        BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+
+        try (E3DCNioConnector connector = new E3DCNioConnector()) {
+            E3DCNioSession session = connector.connect("127.0.0.1", server.getPort(), new BouncyAES256Helper(key),
+                    (s, frame) -> received.add(frame)).get(5, TimeUnit.SECONDS);
+
+            session.send(wholeBlocksFrame);
+            session.send(nextFrame);
+
+            assertThat(received.poll(5, TimeUnit.SECONDS), equalTo(wholeBlocksFrame));
+            assertThat(received.poll(5, TimeUnit.SECONDS), equalTo(nextFrame));
+        }
+    }
+
+    @Test
+    public void listener_is_not_called_on_selector_thread() throws Exception {
+        BlockingQueue<String> listenerThreads = new LinkedBlockingQueue<>();
+        try (E3DCNioConnector connector = new E3DCNioConnector()) {
+            E3DCNioSession session = connector.connect("127.0.0.1", server.getPort(), new BouncyAES256Helper(key),
+                    (s, frame) -> listenerThreads.add(Thread.currentThread().getName())).get(5, TimeUnit.SECONDS);
+
+            session.send(E3DCFrameReaderTest.buildFrame(1));
+
+            assertThat(listenerThreads.poll(5, TimeUnit.SECONDS), not(equalTo("e3dc-nio-selector")));
+        }
+    }
+
+    @Test
+    public void listener_on_selector_thread_can_close_connector() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        AtomicLong closeMillis = new AtomicLong(-1);
+        // run callbacks on the selector thread itself
+        E3DCNioConnector connector = new E3DCNioConnector(Runnable::run);
+        E3DCNioSession session = connector.connect("127.0.0.1", server.getPort(), new BouncyAES256Helper(key),
+                new E3DCNioSession.FrameListener() {
+                    @Override
+                    public void onFrame(E3DCNioSession session, byte[] frame) {
+                        long start = System.nanoTime();
+                        connector.close();
+                        closeMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+
+                    @Override
+                    public void onClosed(E3DCNioSession session, Exception cause) {
+                        closed.countDown();
+                    }
+                }).get(5, TimeUnit.SECONDS);
+
+        session.send(E3DCFrameReaderTest.buildFrame(1));
+
+        assertThat(closed.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(closeMillis.get(), lessThan(1000L));
+        assertThat(connector.connect("127.0.0.1", server.getPort(), new BouncyAES256Helper(key), (s, frame) -> {
+        }).isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void listener_is_told_when_server_closes_connection() throws Exception {
+        CountDownLatch closed = new CountDownLatch(1);
+        try (E3DCNioConnector connector = new E3DCNioConnector()) {
+            E3DCNioSession session = connector.connect("127.0.0.1", server.getPort(), new BouncyAES256Helper(key),
+                    new E3DCNioSession.FrameListener() {
+                        @Override
+                        public void onFrame(E3DCNioSession session, byte[] frame) {
+                        }
+
+                        @Override
+                        public void onClosed(E3DCNioSession session, Exception cause) {
+                            closed.countDown();
+                        }
+                    }).get(5, TimeUnit.SECONDS);
+
+            // not a frame, the echo server gives up on the connection
+            session.send(new byte[] { 1, 2, 3 });
+
+            assertThat(closed.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(session.isOpen(), is(false));
+            assertThat(connector.getSessionCount(), equalTo(0));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class E3DCRequestBatcherTest {
+    private static final String key = "SuperSecret123";
+
+    // sizes of the frames received by the server
+    private final List<Integer> receivedFrameSizes = new CopyOnWriteArrayList<>();
+    private LoopbackEchoServer server;
+    private E3DCSession session;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new LoopbackEchoServer(key, frame -> {
+            receivedFrameSizes.add(frame.length);
+            return E3DCSessionTest.answerEachElement(frame);
+        });
+        session = E3DCSession.open("127.0.0.1", server.getPort(), new BouncyAES256Helper(key));
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        session.close();
+        server.close();
+    }
+
+    @Test
+    public void requests_within_window_share_one_frame() throws Exception {
+        try (E3DCRequestBatcher batcher = new E3DCRequestBatcher(session, Duration.ofSeconds(10))) {
+            CompletableFuture<RSCPData> pv = batcher.request(request(RSCPTag.TAG_EMS_REQ_POWER_PV, 1));
+            CompletableFuture<RSCPData> soc = batcher.request(request(RSCPTag.TAG_EMS_REQ_BAT_SOC, 2));
+            CompletableFuture<RSCPData> time = batcher.request(request(RSCPTag.TAG_INFO_REQ_TIME, 3));
+            batcher.flush();
+
+            assertThat(pv.get(10, TimeUnit.SECONDS).getDataTag(), equalTo(RSCPTag.TAG_EMS_POWER_PV));
+            assertThat(pv.get().getIntOrThrow(), equalTo(1));
+            assertThat(soc.get(10, TimeUnit.SECONDS).getDataTag(), equalTo(RSCPTag.TAG_EMS_BAT_SOC));
+            assertThat(soc.get().getIntOrThrow(), equalTo(2));
+            assertThat(time.get(10, TimeUnit.SECONDS).getDataTag(), equalTo(RSCPTag.TAG_INFO_TIME));
+            assertThat(receivedFrameSizes.size(), equalTo(1));
+        }
+    }
+
+    @Test
+    public void window_end_sends_batch() throws Exception {
+        try (E3DCRequestBatcher batcher = new E3DCRequestBatcher(session, Duration.ofMillis(20))) {
+            CompletableFuture<RSCPData> pv = batcher.request(request(RSCPTag.TAG_EMS_REQ_POWER_PV, 1));
+
+            assertThat(pv.get(10, TimeUnit.SECONDS).getIntOrThrow(), equalTo(1));
+        }
+    }
+
+    @Test
+    public void identical_requests_are_sent_once() throws Exception {
+        try (E3DCRequestBatcher batcher = new E3DCRequestBatcher(session, Duration.ofSeconds(10))) {
+            CompletableFuture<RSCPData> first = batcher.request(request(RSCPTag.TAG_EMS_REQ_POWER_PV, 1));
+            CompletableFuture<RSCPData> second = batcher.request(request(RSCPTag.TAG_EMS_REQ_POWER_PV, 1));
+            batcher.flush();
+
+            assertThat(first.get(10, TimeUnit.SECONDS), equalTo(second.get(10, TimeUnit.SECONDS)));
+            int singleElementFrameSize = RSCPFrame.offsetData + request(RSCPTag.TAG_EMS_REQ_POWER_PV, 1).getByteCount() + RSCPFrame.sizeCRC;
+            assertThat(receivedFrameSizes.get(0), equalTo(singleElementFrameSize));
+        }
+    }
+
+    @Test
+    public void batches_respect_maximum_frame_size() throws Exception {
+        int maxFrameByteCount = 100;
+        try (E3DCRequestBatcher batcher = new E3DCRequestBatcher(session, Duration.ofSeconds(10), maxFrameByteCount)) {
+            List<CompletableFuture<RSCPData>> responses = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                responses.add(batcher.request(request(RSCPTag.TAG_EMS_REQ_POWER_PV, i)));
+            }
+            batcher.flush();
+
+            for (int i = 0; i < responses.size(); i++) {
+                assertThat(responses.get(i).get(10, TimeUnit.SECONDS).getIntOrThrow(), equalTo(i));
+            }
+            assertThat(receivedFrameSizes.size(), greaterThan(1));
+            for (int size : receivedFrameSizes) {
+                assertThat(size, lessThanOrEqualTo(maxFrameByteCount));
+            }
+        }
+    }
+
+    @Test
+    public void batch_after_full_batch_waits_for_its_own_window() throws Exception {
+        int maxFrameByteCount = 100;
+        int requestsPerFrame = (maxFrameByteCount - RSCPFrame.offsetData - RSCPFrame.sizeCRC) / request(RSCPTag.TAG_EMS_REQ_POWER_PV, 0).getByteCount();
+        try (E3DCRequestBatcher batcher = new E3DCRequestBatcher(session, Duration.ofMillis(300), maxFrameByteCount)) {
+            CompletableFuture<RSCPData> first = batcher.request(request(RSCPTag.TAG_EMS_REQ_POWER_PV, 0));
+            Thread.sleep(200);
+            // fill the first batch, the last request starts a second batch
+            CompletableFuture<RSCPData> last = null;
+            for (int i = 1; i <= requestsPerFrame; i++) {
+                last = batcher.request(request(RSCPTag.TAG_EMS_REQ_POWER_PV, i));
+            }
+            assertThat(first.get(10, TimeUnit.SECONDS).getIntOrThrow(), equalTo(0));
+
+            // the flush scheduled for the first batch must not send the second one
+            Thread.sleep(150);
+            assertThat(last.isDone(), equalTo(false));
+            assertThat(last.get(10, TimeUnit.SECONDS).getIntOrThrow(), equalTo(requestsPerFrame));
+        }
+    }
+
+    @Test
+    public void request_larger_than_frame_fails() {
+        try (E3DCRequestBatcher batcher = new E3DCRequestBatcher(session, Duration.ofSeconds(10), 100)) {
+            RSCPData large = RSCPData.builder().tag(RSCPTag.TAG_EMS_REQ_POWER_PV).byteArrayValue(new byte[200]).build();
+
+            assertThat(batcher.request(large).isCompletedExceptionally(), equalTo(true));
+        }
+    }
+
+    private static RSCPData request(RSCPTag tag, int value) {
+        return RSCPData.builder().tag(tag).int32Value(value).build();
+    }
+}
@@ -0,0 +1,240 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class E3DCSessionPoolTest {
+    private static final String key = "SuperSecret123";
+    private static final String user = "user";
+    private static final String password = "password";
+
+    private final AtomicInteger authentications = new AtomicInteger();
+
+    private LoopbackEchoServer server;
+
+    @After
+    public void stopServer() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void released_session_is_reused() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, E3DCSessionTest::answerEachElement));
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .endpoint("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), user, password)
+                .build()) {
+            E3DCSession session = pool.acquire().get(10, TimeUnit.SECONDS);
+            pool.release(session);
+
+            assertThat(pool.acquire().get(10, TimeUnit.SECONDS), sameInstance(session));
+            assertThat(pool.getSessionCount(), equalTo(1));
+        }
+    }
+
+    @Test
+    public void endpoint_sessions_are_authenticated_before_use() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, E3DCSessionTest::answerEachElement));
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .endpoint("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), user, password)
+                .build()) {
+            pool.acquire().get(10, TimeUnit.SECONDS);
+
+            assertThat(authentications.get(), equalTo(1));
+        }
+    }
+
+    @Test
+    public void waiting_caller_gets_released_session() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, E3DCSessionTest::answerEachElement));
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .endpoint("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), user, password)
+                .maxSessions(1)
+                .build()) {
+            E3DCSession session = pool.acquire().get(10, TimeUnit.SECONDS);
+            CompletableFuture<E3DCSession> waiting = pool.acquire();
+            assertThat(waiting.isDone(), equalTo(false));
+
+            pool.release(session);
+            assertThat(waiting.get(10, TimeUnit.SECONDS), sameInstance(session));
+        }
+    }
+
+    @Test
+    public void closed_session_is_evicted_on_release() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, E3DCSessionTest::answerEachElement));
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .endpoint("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), user, password)
+                .build()) {
+            E3DCSession session = pool.acquire().get(10, TimeUnit.SECONDS);
+            session.close();
+            pool.release(session);
+
+            assertThat(pool.getSessionCount(), equalTo(0));
+            assertThat(pool.acquire().get(10, TimeUnit.SECONDS).isOpen(), equalTo(true));
+        }
+    }
+
+    @Test
+    public void unanswered_health_check_evicts_session() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, f -> null));
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .endpoint("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), user, password)
+                .healthCheckInterval(Duration.ofMillis(20))
+                .healthCheckTimeout(Duration.ofMillis(50))
+                .build()) {
+            E3DCSession session = pool.acquire().get(10, TimeUnit.SECONDS);
+            pool.release(session);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (pool.getSessionCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(pool.getSessionCount(), equalTo(0));
+            assertThat(session.isOpen(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void health_check_answered_with_general_error_evicts_session() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, f -> RSCPFrame.builder()
+                .timestamp(Instant.now())
+                .addData(RSCPData.builder().tag(RSCPTag.TAG_RSCP_GENERAL_ERROR).int32Value(0).build())
+                .build()
+                .getAsByteArray()));
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .endpoint("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), user, password)
+                .healthCheckInterval(Duration.ofMillis(20))
+                .healthCheckTimeout(Duration.ofMillis(1000))
+                .build()) {
+            E3DCSession session = pool.acquire().get(10, TimeUnit.SECONDS);
+            pool.release(session);
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (session.isOpen() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(session.isOpen(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void session_is_not_handed_out_while_checked() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, f -> null));
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .endpoint("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), user, password)
+                .healthCheckInterval(Duration.ofMillis(20))
+                .healthCheckTimeout(Duration.ofMillis(300))
+                .build()) {
+            E3DCSession session = pool.acquire().get(10, TimeUnit.SECONDS);
+            pool.release(session);
+            // let a check start
+            Thread.sleep(100);
+
+            // the check times out and closes the checked session, the caller gets a new one
+            E3DCSession acquired = pool.acquire().get(10, TimeUnit.SECONDS);
+            Thread.sleep(400);
+            assertThat(acquired, not(sameInstance(session)));
+            assertThat(acquired.isOpen(), equalTo(true));
+            assertThat(session.isOpen(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void answered_health_check_keeps_session() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, E3DCSessionTest::answerEachElement));
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .endpoint("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), user, password)
+                .healthCheckInterval(Duration.ofMillis(20))
+                .healthCheckTimeout(Duration.ofMillis(1000))
+                .build()) {
+            E3DCSession session = pool.acquire().get(10, TimeUnit.SECONDS);
+            pool.release(session);
+            Thread.sleep(200);
+
+            assertThat(pool.acquire().get(10, TimeUnit.SECONDS), sameInstance(session));
+        }
+    }
+
+    @Test
+    public void failed_connects_are_retried_with_backoff() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> authenticateOr(frame, E3DCSessionTest::answerEachElement));
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean reachable = new AtomicBoolean();
+
+        try (E3DCSessionPool pool = E3DCSessionPool.builder()
+                .sessionFactory(() -> {
+                    attempts.incrementAndGet();
+                    if (!reachable.get()) {
+                        throw new IOException("Site is down.");
+                    }
+                    return E3DCSession.open("127.0.0.1", server.getPort(), new BouncyAES256Helper(key));
+                })
+                .backoff(Duration.ofMillis(5), Duration.ofMillis(20))
+                .build()) {
+            CompletableFuture<E3DCSession> session = pool.acquire();
+            Thread.sleep(100);
+            assertThat(session.isDone(), equalTo(false));
+            assertThat(attempts.get(), greaterThan(1));
+
+            reachable.set(true);
+            assertThat(session.get(10, TimeUnit.SECONDS).isOpen(), equalTo(true));
+        }
+    }
+
+    @Test
+    public void backoff_grows_exponentially_with_jitter_and_cap() {
+        for (int failedAttempts = 1; failedAttempts <= 40; failedAttempts++) {
+            long expected = Math.min(1000L, 10L << Math.min(failedAttempts - 1, 20));
+            long backoff = E3DCSessionPool.getBackoffMillis(failedAttempts, 10, 1000);
+
+            assertThat(backoff, greaterThanOrEqualTo(expected / 2));
+            assertThat(backoff, lessThanOrEqualTo(expected));
+        }
+    }
+
+    /**
+     * Accept any authentication, and pass other requests on to the responder.
+     */
+    private byte[] authenticateOr(byte[] frame, Function<byte[], byte[]> responder) {
+        RSCPData request = RSCPFrame.builder().buildFromRawBytes(frame).getData().get(0);
+        if (request.getDataTag() != RSCPTag.TAG_RSCP_REQ_AUTHENTICATION) {
+            return responder.apply(frame);
+        }
+        authentications.incrementAndGet();
+        return RSCPFrame.builder()
+                .timestamp(Instant.now())
+                .addData(RSCPData.builder().tag(RSCPTag.TAG_RSCP_AUTHENTICATION).char8Value((byte) 10).build())
+                .build()
+                .getAsByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.bvotteler.rscp.helper;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class E3DCSessionRunnerTest {
+    private static final String key = "SuperSecret123";
+
+    @Test
+    public void runs_blocking_sessions_concurrently() throws Exception {
+        byte[] frame = E3DCFrameReaderTest.buildFrame(10);
+
+        try (LoopbackEchoServer server = new LoopbackEchoServer(key);
+             E3DCSessionRunner runner = E3DCSessionRunner.create()) {
+            List<CompletableFuture<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(runner.runSession("127.0.0.1", server.getPort(), () -> new BouncyAES256Helper(key), (socket, crypto) -> {
+                    E3DCConnector.sendFrameToServer(socket, crypto::encrypt, frame).get();
+                    return E3DCConnector.receiveFrameFromServer(socket, crypto::decrypt).get();
+                }));
+            }
+
+            for (CompletableFuture<byte[]> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS), equalTo(frame));
+            }
+        }
+    }
+
+    @Test
+    public void failed_connect_fails_session_without_retrying() throws Exception {
+        int closedPort;
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = serverSocket.getLocalPort();
+        }
+
+        try (E3DCSessionRunner runner = E3DCSessionRunner.create()) {
+            CompletableFuture<Boolean> result = runner.runSession("127.0.0.1", closedPort, Duration.ofSeconds(2),
+                    () -> new BouncyAES256Helper(key), (socket, crypto) -> true);
+
+            try {
+                result.get(3, TimeUnit.SECONDS);
+                fail("Expected connecting to fail.");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(IOException.class));
+            }
+        }
+    }
+
+    @Test
+    public void uses_virtual_threads_on_jdk_21() throws Exception {
+        assumeTrue("Virtual threads need JDK 21, run with gradle testJdk21.", isJdk21OrLater());
+
+        try (E3DCSessionRunner runner = E3DCSessionRunner.create()) {
+            assertThat(runner.isUsingVirtualThreads(), equalTo(true));
+            CompletableFuture<Boolean> virtual = CompletableFuture.supplyAsync(E3DCSessionRunnerTest::isVirtualThread,
+                    runner.getExecutor());
+            assertThat(virtual.get(10, TimeUnit.SECONDS), equalTo(true));
+        }
+    }
+
+    @Test
+    public void holds_ten_thousand_idle_sessions_on_virtual_threads() throws Exception {
+        assumeTrue("Virtual threads need JDK 21, run with gradle testJdk21.", isJdk21OrLater());
+        int sessionCount = 10000;
+        CountDownLatch started = new CountDownLatch(sessionCount);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (E3DCSessionRunner runner = E3DCSessionRunner.create()) {
+            for (int i = 0; i < sessionCount; i++) {
+                runner.getExecutor().execute(() -> {
+                    started.countDown();
+                    try {
+                        // idle, like a session waiting for its next poll
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            assertThat(started.await(30, TimeUnit.SECONDS), equalTo(true));
+            release.countDown();
+        }
+    }
+
+    private static boolean isJdk21OrLater() {
+        String version = System.getProperty("java.specification.version");
+        return !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+    }
+
+    private static boolean isVirtualThread() {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
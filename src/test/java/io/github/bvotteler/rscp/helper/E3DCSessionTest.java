@@ -0,0 +1,169 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+
+public class E3DCSessionTest {
+    private static final String key = "SuperSecret123";
+    private static final RSCPTag[] requestTags = {
+            RSCPTag.TAG_EMS_REQ_POWER_PV, RSCPTag.TAG_EMS_REQ_BAT_SOC, RSCPTag.TAG_INFO_REQ_TIME, RSCPTag.TAG_INFO_REQ_SERIAL_NUMBER
+    };
+
+    private LoopbackEchoServer server;
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void pipelined_requests_get_their_own_responses() throws Exception {
+        server = new LoopbackEchoServer(key, E3DCSessionTest::answerEachElement);
+
+        try (E3DCSession session = E3DCSession.open("127.0.0.1", server.getPort(), new BouncyAES256Helper(key))) {
+            List<CompletableFuture<RSCPFrame>> responses = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                responses.add(session.send(request(requestTags[i % requestTags.length], i)));
+            }
+
+            for (int i = 0; i < responses.size(); i++) {
+                RSCPData data = responses.get(i).get(10, TimeUnit.SECONDS).getData().get(0);
+                assertThat(data.getDataTagId(), equalTo(requestTags[i % requestTags.length].getId() | 0x00800000));
+                assertThat(data.getIntOrThrow(), equalTo(i));
+            }
+            assertThat(session.getPendingRequestCount(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void unmatched_response_completes_oldest_request() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> request(RSCPTag.TAG_RSCP_GENERAL_ERROR, 0).getAsByteArray());
+
+        try (E3DCSession session = E3DCSession.open("127.0.0.1", server.getPort(), new BouncyAES256Helper(key))) {
+            CompletableFuture<RSCPFrame> first = session.send(request(RSCPTag.TAG_EMS_REQ_POWER_PV, 1));
+            CompletableFuture<RSCPFrame> second = session.send(request(RSCPTag.TAG_EMS_REQ_POWER_PV, 2));
+
+            assertThat(first.get(10, TimeUnit.SECONDS).getData().get(0).getDataTag(), equalTo(RSCPTag.TAG_RSCP_GENERAL_ERROR));
+            assertThat(second.get(10, TimeUnit.SECONDS).getData().get(0).getDataTag(), equalTo(RSCPTag.TAG_RSCP_GENERAL_ERROR));
+        }
+    }
+
+    @Test
+    public void close_fails_pending_requests() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> null);
+
+        E3DCSession session = E3DCSession.open("127.0.0.1", server.getPort(), new BouncyAES256Helper(key));
+        CompletableFuture<RSCPFrame> response = session.send(request(RSCPTag.TAG_INFO_REQ_TIME, 0));
+        session.close();
+
+        try {
+            response.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IOException.class));
+        }
+        assertThat(response.isCompletedExceptionally(), equalTo(true));
+        assertThat(session.send(request(RSCPTag.TAG_INFO_REQ_TIME, 0)).isCompletedExceptionally(), equalTo(true));
+    }
+
+    @Test
+    public void empty_frame_fails_future_instead_of_throwing() throws Exception {
+        server = new LoopbackEchoServer(key, E3DCSessionTest::answerEachElement);
+
+        try (E3DCSession session = E3DCSession.open("127.0.0.1", server.getPort(), new BouncyAES256Helper(key))) {
+            RSCPFrame emptyFrame = request(RSCPTag.TAG_INFO_REQ_TIME, 0);
+            emptyFrame.getData().clear();
+
+            CompletableFuture<RSCPFrame> response = session.send(emptyFrame);
+
+            try {
+                response.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+            }
+            assertThat(response.isCompletedExceptionally(), equalTo(true));
+            assertThat(session.isOpen(), equalTo(true));
+        }
+    }
+
+    @Test
+    public void response_slower_than_read_timeout_keeps_session_open() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return answerEachElement(frame);
+        });
+
+        Socket socket = E3DCConnector.openConnection("127.0.0.1", server.getPort());
+        try (E3DCSession session = new E3DCSession(socket, new BouncyAES256Helper(key), E3DCSession.readerThreadExecutor, Duration.ofMillis(100))) {
+            CompletableFuture<RSCPFrame> response = session.send(request(RSCPTag.TAG_INFO_REQ_TIME, 1));
+
+            assertThat(response.get(10, TimeUnit.SECONDS).getData().get(0).getDataTag(), equalTo(RSCPTag.TAG_INFO_TIME));
+            assertThat(session.isOpen(), equalTo(true));
+        }
+    }
+
+    @Test
+    public void frame_stalling_past_read_timeout_closes_session() throws Exception {
+        server = new LoopbackEchoServer(key, frame -> null);
+
+        try (ServerSocket stallingServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Socket socket = E3DCConnector.openConnection("127.0.0.1", stallingServer.getLocalPort());
+            try (Socket serverSide = stallingServer.accept();
+                 E3DCSession session = new E3DCSession(socket, new BouncyAES256Helper(key), E3DCSession.readerThreadExecutor, Duration.ofMillis(100))) {
+                CompletableFuture<RSCPFrame> response = session.send(request(RSCPTag.TAG_INFO_REQ_TIME, 1));
+                // the start of a frame, the rest never follows
+                serverSide.getOutputStream().write(new byte[10]);
+                serverSide.getOutputStream().flush();
+
+                try {
+                    response.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause(), instanceOf(SocketTimeoutException.class));
+                }
+                assertThat(response.isCompletedExceptionally(), equalTo(true));
+                assertThat(session.isOpen(), equalTo(false));
+            }
+        }
+    }
+
+    private static RSCPFrame request(RSCPTag tag, int value) {
+        return RSCPFrame.builder()
+                .timestamp(Instant.now())
+                .addData(RSCPData.builder().tag(tag).int32Value(value).build())
+                .build();
+    }
+
+    static byte[] answerEachElement(byte[] frame) {
+        RSCPFrame.Builder response = RSCPFrame.builder().timestamp(Instant.now());
+        for (RSCPData data : RSCPFrame.builder().buildFromRawBytes(frame).getData()) {
+            response.addData(RSCPData.builder()
+                    .tagId(E3DCSession.responseTagId(data.getDataTagId()))
+                    .int32Value(data.getInt(0))
+                    .build());
+        }
+        return response.build().getAsByteArray();
+    }
+}
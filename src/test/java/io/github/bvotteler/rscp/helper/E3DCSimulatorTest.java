@@ -0,0 +1,152 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPDataType;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class E3DCSimulatorTest {
+    private static final String key = "SuperSecret123";
+    private static final String user = "user";
+    private static final String password = "password";
+
+    @Test
+    public void answers_after_authentication() throws Exception {
+        try (E3DCSimulator simulator = simulator().build().start();
+             E3DCSession session = E3DCSession.open("127.0.0.1", simulator.getPort(), new BouncyAES256Helper(key))) {
+            assertThat(sendForFirst(session, request(RSCPTag.TAG_EMS_REQ_POWER_PV)).getDataTag(), equalTo(RSCPTag.TAG_RSCP_GENERAL_ERROR));
+
+            assertThat(E3DCAuthenticatedSession.authenticate(session, user, password).get(10, TimeUnit.SECONDS), equalTo((short) E3DCSimulator.authLevelUser));
+            RSCPData pv = sendForFirst(session, request(RSCPTag.TAG_EMS_REQ_POWER_PV));
+            assertThat(pv.getDataTag(), equalTo(RSCPTag.TAG_EMS_POWER_PV));
+            assertThat(pv.getIntOrThrow(), both(greaterThanOrEqualTo(0)).and(lessThanOrEqualTo(8000)));
+
+            RSCPData soc = sendForFirst(session, request(RSCPTag.TAG_EMS_REQ_BAT_SOC));
+            assertThat(soc.getIntOrThrow(), both(greaterThanOrEqualTo(0)).and(lessThanOrEqualTo(100)));
+        }
+    }
+
+    @Test
+    public void rejects_wrong_credentials() throws Exception {
+        try (E3DCSimulator simulator = simulator().build().start();
+             E3DCSession session = E3DCSession.open("127.0.0.1", simulator.getPort(), new BouncyAES256Helper(key))) {
+            try {
+                E3DCAuthenticatedSession.authenticate(session, user, "wrong").get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+            }
+        }
+    }
+
+    @Test
+    public void answers_containers_element_by_element() throws Exception {
+        try (E3DCSimulator simulator = simulator().build().start();
+             E3DCSession session = authenticatedSession(simulator)) {
+            RSCPData batRequest = RSCPData.builder()
+                    .tag(RSCPTag.TAG_BAT_REQ_DATA)
+                    .containerValue(RSCPData.builder().tag(RSCPTag.TAG_BAT_INDEX).uint16Value((short) 0).build())
+                    .containerValue(RSCPData.builder().tag(RSCPTag.TAG_BAT_REQ_RSOC).noneValue().build())
+                    .containerValue(RSCPData.builder().tag(RSCPTag.TAG_BAT_REQ_DEVICE_NAME).noneValue().build())
+                    .build();
+
+            RSCPData batData = sendForFirst(session, batRequest);
+
+            assertThat(batData.getDataTag(), equalTo(RSCPTag.TAG_BAT_DATA));
+            List<RSCPData> values = batData.getContainerData();
+            assertThat(values.get(0).getDataTag(), equalTo(RSCPTag.TAG_BAT_INDEX));
+            assertThat(values.get(1).getDataTag(), equalTo(RSCPTag.TAG_BAT_RSOC));
+            assertThat(values.get(2).getDataTag(), equalTo(RSCPTag.TAG_BAT_DEVICE_NAME));
+            assertThat(values.get(2).getDataType(), equalTo(RSCPDataType.ERROR));
+        }
+    }
+
+    @Test
+    public void fragmented_history_reply_is_reassembled() throws Exception {
+        try (E3DCSimulator simulator = simulator().fragmentSize(7).latency(Duration.ofMillis(5), Duration.ofMillis(5)).build().start();
+             E3DCSession session = authenticatedSession(simulator)) {
+            RSCPData historyRequest = RSCPData.builder()
+                    .tag(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY)
+                    .containerValue(RSCPData.builder().tag(RSCPTag.TAG_DB_REQ_HISTORY_TIME_START).timestampValue(Instant.ofEpochSecond(1505858400L)).build())
+                    .containerValue(RSCPData.builder().tag(RSCPTag.TAG_DB_REQ_HISTORY_TIME_INTERVAL).timestampValue(Duration.ofMinutes(15)).build())
+                    .containerValue(RSCPData.builder().tag(RSCPTag.TAG_DB_REQ_HISTORY_TIME_SPAN).timestampValue(Duration.ofDays(1)).build())
+                    .build();
+
+            RSCPData history = sendForFirst(session, historyRequest);
+
+            assertThat(history.getDataTag(), equalTo(RSCPTag.TAG_DB_HISTORY_DATA_DAY));
+            // sum container plus one value container per 15 minutes
+            assertThat(history.getContainerData().size(), equalTo(1 + 96));
+        }
+    }
+
+    @Test
+    public void same_seed_gives_same_values() throws Exception {
+        try (E3DCSimulator first = simulator().seed(7).build().start();
+             E3DCSimulator second = simulator().seed(7).build().start();
+             E3DCSession firstSession = authenticatedSession(first);
+             E3DCSession secondSession = authenticatedSession(second)) {
+            RSCPData firstSoc = sendForFirst(firstSession, request(RSCPTag.TAG_EMS_REQ_BAT_SOC));
+            RSCPData secondSoc = sendForFirst(secondSession, request(RSCPTag.TAG_EMS_REQ_BAT_SOC));
+
+            assertThat(firstSoc, equalTo(secondSoc));
+        }
+    }
+
+    @Test
+    public void injected_errors_are_answered_as_general_error() throws Exception {
+        try (E3DCSimulator simulator = simulator().generalErrorProbability(1).build().start();
+             E3DCSession session = authenticatedSession(simulator)) {
+            assertThat(sendForFirst(session, request(RSCPTag.TAG_INFO_REQ_TIME)).getDataTag(), equalTo(RSCPTag.TAG_RSCP_GENERAL_ERROR));
+        }
+    }
+
+    @Test
+    public void injected_drops_close_the_connection() throws Exception {
+        try (E3DCSimulator simulator = simulator().dropProbability(1).build().start();
+             E3DCSession session = E3DCSession.open("127.0.0.1", simulator.getPort(), new BouncyAES256Helper(key))) {
+            try {
+                session.send(frame(request(RSCPTag.TAG_INFO_REQ_TIME))).get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(IOException.class));
+            }
+            assertThat(session.isOpen(), equalTo(false));
+        }
+    }
+
+    private static E3DCSimulator.Builder simulator() {
+        return E3DCSimulator.builder().aesPassword(key).credentials(user, password);
+    }
+
+    private static E3DCSession authenticatedSession(E3DCSimulator simulator) throws Exception {
+        E3DCSession session = E3DCSession.open("127.0.0.1", simulator.getPort(), new BouncyAES256Helper(key));
+        E3DCAuthenticatedSession.authenticate(session, user, password).get(10, TimeUnit.SECONDS);
+        return session;
+    }
+
+    private static RSCPData sendForFirst(E3DCSession session, RSCPData request) throws Exception {
+        return session.send(frame(request)).get(10, TimeUnit.SECONDS).getData().get(0);
+    }
+
+    private static RSCPData request(RSCPTag tag) {
+        return RSCPData.builder().tag(tag).noneValue().build();
+    }
+
+    private static RSCPFrame frame(RSCPData data) {
+        return RSCPFrame.builder().timestamp(Instant.now()).addData(data).build();
+    }
+}
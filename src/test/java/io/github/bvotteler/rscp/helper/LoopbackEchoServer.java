@@ -0,0 +1,73 @@
+package io.github.bvotteler.rscp.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.function.Function;
+
+/**
+ * Accepts connections on a loopback port and answers every received frame, encrypted with its own IV chain.
+ * By default, frames are sent straight back. A responder returning {@code null} leaves a frame unanswered.
+ */
+class LoopbackEchoServer implements Closeable {
+    private final String key;
+    private final Function<byte[], byte[]> responder;
+    private final ServerSocket serverSocket;
+
+    LoopbackEchoServer(String key) throws IOException {
+        this(key, Function.identity());
+    }
+
+    LoopbackEchoServer(String key, Function<byte[], byte[]> responder) throws IOException {
+        this.key = key;
+        this.responder = responder;
+        this.serverSocket = new ServerSocket(0);
+        startDaemon(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    startDaemon(() -> echoFrames(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void echoFrames(Socket socket) {
+        AES256Helper crypto = new BouncyAES256Helper(key);
+        E3DCFrameReader reader = new E3DCFrameReader();
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            while (true) {
+                byte[] frame = reader.readFrame(in, crypto::decrypt);
+                byte[] response = responder.apply(frame);
+                if (response != null) {
+                    out.write(crypto.encrypt(response));
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // connection closed
+        }
+    }
+
+    private static void startDaemon(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
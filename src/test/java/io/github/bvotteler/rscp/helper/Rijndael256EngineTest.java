@@ -0,0 +1,88 @@
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.util.ByteUtils;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.engines.RijndaelEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class Rijndael256EngineTest {
+    private static final String key = "SuperSecret123";
+
+    @Test
+    public void matches_bouncy_castle_engine_for_all_key_sizes() {
+        Random random = new Random(1);
+        for (int keyLength : new int[]{16, 24, 32}) {
+            byte[] aesKey = new byte[keyLength];
+            random.nextBytes(aesKey);
+            BlockCipher expectedEncrypt = init(new RijndaelEngine(256), true, aesKey);
+            BlockCipher expectedDecrypt = init(new RijndaelEngine(256), false, aesKey);
+            BlockCipher actualEncrypt = init(new Rijndael256Engine(), true, aesKey);
+            BlockCipher actualDecrypt = init(new Rijndael256Engine(), false, aesKey);
+
+            for (int i = 0; i < 100; i++) {
+                byte[] block = new byte[32];
+                random.nextBytes(block);
+
+                byte[] expected = new byte[32];
+                byte[] actual = new byte[32];
+                expectedEncrypt.processBlock(block, 0, expected, 0);
+                actualEncrypt.processBlock(block, 0, actual, 0);
+                assertThat("encrypt, key length " + keyLength, actual, equalTo(expected));
+
+                expectedDecrypt.processBlock(block, 0, expected, 0);
+                actualDecrypt.processBlock(block, 0, actual, 0);
+                assertThat("decrypt, key length " + keyLength, actual, equalTo(expected));
+            }
+        }
+    }
+
+    @Test
+    public void processes_block_in_place() {
+        byte[] aesKey = BouncyAES256HelperTest.paddedKey(key);
+        BlockCipher encrypt = init(new Rijndael256Engine(), true, aesKey);
+        BlockCipher decrypt = init(new Rijndael256Engine(), false, aesKey);
+        byte[] block = new byte[40];
+        new Random(2).nextBytes(block);
+        byte[] original = block.clone();
+
+        encrypt.processBlock(block, 4, block, 4);
+        decrypt.processBlock(block, 4, block, 4);
+
+        assertThat(block, equalTo(original));
+    }
+
+    @Test
+    public void helper_encrypts_known_frames_like_bouncy_castle_engine() {
+        byte[][] frames = {
+                // authentication request using 'testuser@example.com' and 'SuperSecret123'
+                ByteUtils.hexStringToByteArray("E3DC00114D61D45F0000000000CEED343700010000000E3000020000000D14007465737475736572406578616D706C652E636F6D030000000D0E00537570657253656372657431323360C48640"),
+                // database history request
+                ByteUtils.hexStringToByteArray(("e3 dc 00 11 fa 12 c2 59 00 00 00 00 c0 72 4c 12 40 00 00 01 00 06 0e 39 00 01 01 00 06 0f 0c 00 d8 32 b9 59 00 00 00 00 00 00 00 00 02 01 00 06 0f 0c 00 84 03 00 00 00 00 00 00 00 00 00 00 03 01 00 06 0f 0c 00 84 03 00 00 00 00 00 00 00 00 00 00 2d 56 ff ec").replaceAll("\\s+", ""))
+        };
+        BouncyAES256Helper expectedSender = new BouncyAES256Helper(key, BouncyAES256Helper.getEngineFactory(BouncyAES256Helper.engineBouncyCastle));
+        BouncyAES256Helper actualSender = new BouncyAES256Helper(key, BouncyAES256Helper.getEngineFactory(BouncyAES256Helper.engineTable));
+        BouncyAES256Helper actualReceiver = new BouncyAES256Helper(key, Rijndael256Engine::new);
+
+        for (byte[] frame : frames) {
+            byte[] encrypted = actualSender.encrypt(frame);
+            assertThat(encrypted, equalTo(expectedSender.encrypt(frame)));
+            assertThat(actualReceiver.decrypt(encrypted), equalTo(frame));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejects_unknown_engine_name() {
+        BouncyAES256Helper.getEngineFactory("des");
+    }
+
+    private static BlockCipher init(BlockCipher cipher, boolean forEncryption, byte[] key) {
+        cipher.init(forEncryption, new KeyParameter(key));
+        return cipher;
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPDataType;
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.RSCPTag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A local stand-in for an E3DC device, for load and latency tests without real hardware.</p>
+ * <p>The simulator listens on the loopback interface and speaks RSCP like a device: frames are encrypted with
+ * {@link BouncyAES256Helper}, each connection must authenticate with {@link RSCPTag#TAG_RSCP_REQ_AUTHENTICATION}
+ * first, and requests are answered with the matching response tags. Default answers with synthetic but plausible
+ * values are provided for common EMS, BAT, PVI, WB, INFO and DB history requests, and more can be added with
+ * {@link Builder#respond(RSCPTag, TagResponder)}. Requests without an answer get an {@link RSCPDataType#ERROR}
+ * element, containers are answered element by element.</p>
+ * <p>Latency, jitter, fragmentation of replies into small TCP writes, general errors and dropped connections can be
+ * configured. With a fixed {@link Builder#seed(long)}, values and injected errors are reproducible per connection.</p>
+ */
+public class E3DCSimulator implements Closeable {
+    /**
+     * The auth level granted for correct credentials.
+     */
+    public static final byte authLevelUser = 10;
+    /**
+     * The error code sent for requests the simulator has no answer for.
+     */
+    public static final int errorNotHandled = 1;
+    private static final Logger logger = LoggerFactory.getLogger(E3DCSimulator.class.getSimpleName());
+
+    private final Builder config;
+    private final Map<Integer, TagResponder> responders;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong requestFrameCount = new AtomicLong();
+    private ServerSocket serverSocket;
+
+    private E3DCSimulator(Builder builder) {
+        this.config = builder;
+        this.responders = new HashMap<>(builder.responders);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Start listening for connections.
+     * @return This simulator.
+     * @throws IOException If the port cannot be bound.
+     */
+    public E3DCSimulator start() throws IOException {
+        serverSocket = new ServerSocket(config.port, 50, InetAddress.getLoopbackAddress());
+        startDaemon("e3dc-simulator", this::acceptConnections);
+        logger.debug("Simulator listening on port " + getPort() + ".");
+        return this;
+    }
+
+    /**
+     * Get the port the simulator listens on, e.g. if started with port 0.
+     * @return The local port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the number of connections accepted since the simulator was started.
+     * @return The number of connections.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Get the number of request frames received on all connections.
+     * @return The number of frames.
+     */
+    public long getRequestFrameCount() {
+        return requestFrameCount.get();
+    }
+
+    /**
+     * Stop listening and close all connections.
+     */
+    @Override
+    public void close() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        connections.forEach(E3DCConnector::silentlyCloseConnection);
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                int connectionIndex = connectionCount.getAndIncrement();
+                connections.add(socket);
+                startDaemon("e3dc-simulator-" + connectionIndex, () -> serve(socket, new Random(config.seed + connectionIndex)));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket, Random random) {
+        AES256Helper crypto = new BouncyAES256Helper(config.aesPassword);
+        E3DCFrameReader frameReader = new E3DCFrameReader();
+        SimulatedSite site = new SimulatedSite(random);
+        // replies are delayed on a writer thread, so the latency does not hold back reading the following requests
+        ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-simulator-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long lastReplyNanos = System.nanoTime();
+        boolean authenticated = false;
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            while (true) {
+                RSCPFrame request = RSCPFrame.builder().buildFromRawBytes(frameReader.readFrame(in, crypto));
+                requestFrameCount.incrementAndGet();
+
+                if (random.nextDouble() < config.dropProbability) {
+                    logger.debug("Dropping connection (injected).");
+                    return;
+                }
+
+                List<RSCPData> responses = new ArrayList<>();
+                for (RSCPData data : request.getData()) {
+                    if (data.getDataTag() == RSCPTag.TAG_RSCP_REQ_AUTHENTICATION) {
+                        authenticated = isValidAuthentication(data);
+                        responses.add(RSCPData.builder()
+                                .tag(RSCPTag.TAG_RSCP_AUTHENTICATION)
+                                .char8Value(authenticated ? authLevelUser : (byte) 0)
+                                .build());
+                    } else if (!authenticated || random.nextDouble() < config.generalErrorProbability) {
+                        responses = Collections.singletonList(generalError());
+                        break;
+                    } else {
+                        responses.add(respond(data, site));
+                    }
+                }
+
+                byte[] frame = RSCPFrame.builder()
+                        .timestamp(Instant.now())
+                        .addData(responses)
+                        .build()
+                        .getAsByteArray();
+                // never earlier than the previous reply, replies must be encrypted and sent in order
+                long replyNanos = Math.max(lastReplyNanos, System.nanoTime() + config.latency.toNanos() + jitterNanos(random));
+                lastReplyNanos = replyNanos;
+                writer.schedule(() -> {
+                    try {
+                        write(out, crypto.encrypt(frame));
+                    } catch (IOException e) {
+                        E3DCConnector.silentlyCloseConnection(socket);
+                    }
+                }, replyNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException e) {
+            // connection closed
+        } catch (RuntimeException e) {
+            logger.error("Simulator failed to answer a request, closing connection.", e);
+        } finally {
+            writer.shutdownNow();
+            connections.remove(socket);
+        }
+    }
+
+    private boolean isValidAuthentication(RSCPData authContainer) {
+        String user = null;
+        String password = null;
+        for (RSCPData credential : authContainer.getContainerData()) {
+            if (credential.getDataTag() == RSCPTag.TAG_RSCP_AUTHENTICATION_USER) {
+                user = credential.getValueAsString().orElse(null);
+            } else if (credential.getDataTag() == RSCPTag.TAG_RSCP_AUTHENTICATION_PASSWORD) {
+                password = credential.getValueAsString().orElse(null);
+            }
+        }
+        return config.user.equals(user) && config.password.equals(password);
+    }
+
+    private RSCPData respond(RSCPData request, SimulatedSite site) {
+        TagResponder responder = responders.get(request.getDataTagId());
+        if (responder != null) {
+            return responder.respond(request, site);
+        }
+        if (request.getDataType() == RSCPDataType.CONTAINER) {
+            List<RSCPData> children = new ArrayList<>();
+            for (RSCPData child : request.getContainerData()) {
+                children.add(respondToChild(child, site));
+            }
+            return RSCPData.builder()
+                    .tagId(E3DCSession.responseTagId(request.getDataTagId()))
+                    .containerValues(children)
+                    .build();
+        }
+        return error(request);
+    }
+
+    private RSCPData respondToChild(RSCPData child, SimulatedSite site) {
+        if (!responders.containsKey(child.getDataTagId()) && child.getDataType() != RSCPDataType.CONTAINER
+                && child.getDataType() != RSCPDataType.NONE) {
+            // a parameter such as TAG_BAT_INDEX, which the device repeats in its answer
+            return child;
+        }
+        return respond(child, site);
+    }
+
+    private static RSCPData error(RSCPData request) {
+        byte[] errorCode = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(errorNotHandled).array();
+        return RSCPData.builder()
+                .tagId(E3DCSession.responseTagId(request.getDataTagId()))
+                .valueOfType(RSCPDataType.ERROR, errorCode)
+                .build();
+    }
+
+    private static RSCPData generalError() {
+        return RSCPData.builder().tag(RSCPTag.TAG_RSCP_GENERAL_ERROR).int32Value(errorNotHandled).build();
+    }
+
+    private long jitterNanos(Random random) {
+        long jitter = config.jitter.toNanos();
+        return jitter == 0 ? 0 : (long) ((random.nextDouble() * 2 - 1) * jitter);
+    }
+
+    private void write(OutputStream out, byte[] encrypted) throws IOException {
+        int fragmentSize = config.fragmentSize > 0 ? config.fragmentSize : encrypted.length;
+        for (int offset = 0; offset < encrypted.length; offset += fragmentSize) {
+            out.write(encrypted, offset, Math.min(fragmentSize, encrypted.length - offset));
+            out.flush();
+        }
+    }
+
+    private static void startDaemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Answers one request element.
+     */
+    @FunctionalInterface
+    public interface TagResponder {
+        /**
+         * Answer a request.
+         * @param request The request element, e.g. {@link RSCPTag#TAG_EMS_REQ_POWER_PV}.
+         * @param site The simulated state of the device, for values consistent with other answers.
+         * @return The response element, e.g. {@link RSCPTag#TAG_EMS_POWER_PV}.
+         */
+        RSCPData respond(RSCPData request, SimulatedSite site);
+    }
+
+    /**
+     * <p>The simulated power flows of a device with PV, battery, wallbox and grid connection, one per connection.</p>
+     * <p>PV follows the sun between 6:00 and 18:00 UTC, the home draws a base load, the battery takes the surplus and
+     * the grid covers the rest. Each call adds a little noise.</p>
+     */
+    public static class SimulatedSite {
+        private static final double peakPvPower = 8000;
+        private static final double maxBatteryPower = 3000;
+        private final Random random;
+        private double stateOfCharge;
+
+        SimulatedSite(Random random) {
+            this.random = random;
+            this.stateOfCharge = 20 + random.nextDouble() * 60;
+        }
+
+        public int getPvPower(Instant time) {
+            ZonedDateTime utc = time.atZone(ZoneOffset.UTC);
+            double hour = utc.getHour() + utc.getMinute() / 60.0;
+            double sun = Math.max(0, Math.sin(Math.PI * (hour - 6) / 12));
+            return (int) (peakPvPower * sun * (0.9 + 0.1 * random.nextDouble()));
+        }
+
+        public int getHomePower() {
+            return 350 + random.nextInt(600);
+        }
+
+        public int getWallboxPower() {
+            return random.nextInt(4) == 0 ? 3700 : 0;
+        }
+
+        /**
+         * @return Battery power, positive while charging.
+         */
+        public int getBatteryPower(int pvPower, int homePower) {
+            double surplus = pvPower - homePower;
+            double power = Math.max(-maxBatteryPower, Math.min(maxBatteryPower, surplus));
+            if ((power > 0 && stateOfCharge >= 100) || (power < 0 && stateOfCharge <= 0)) {
+                power = 0;
+            }
+            stateOfCharge = Math.max(0, Math.min(100, stateOfCharge + power / 10000));
+            return (int) power;
+        }
+
+        /**
+         * @return Grid power, positive while drawing from the grid.
+         */
+        public int getGridPower(int pvPower, int homePower, int batteryPower) {
+            return homePower + batteryPower - pvPower;
+        }
+
+        public int getStateOfCharge() {
+            return (int) Math.round(stateOfCharge);
+        }
+    }
+
+    public static class Builder {
+        private int port;
+        private String aesPassword;
+        private String user;
+        private String password;
+        private Duration latency = Duration.ZERO;
+        private Duration jitter = Duration.ZERO;
+        private int fragmentSize;
+        private double generalErrorProbability;
+        private double dropProbability;
+        private long seed = 42;
+        private final Map<Integer, TagResponder> responders = new HashMap<>(E3DCSimulatorResponders.defaults());
+
+        /**
+         * Set the port to listen on. Defaults to 0, picking a free port.
+         * @param port The port.
+         * @return The builder.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder aesPassword(String aesPassword) {
+            this.aesPassword = aesPassword;
+            return this;
+        }
+
+        /**
+         * Set the credentials connections must authenticate with.
+         * @param user The user name.
+         * @param password The password.
+         * @return The builder.
+         */
+        public Builder credentials(String user, String password) {
+            this.user = user;
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * Delay each reply by a fixed latency, plus or minus a random jitter. Like network latency, the delay does not
+         * hold back the following requests, so pipelined requests are answered with overlapping delays.
+         * @param latency The average delay.
+         * @param jitter The maximum deviation from the average delay.
+         * @return The builder.
+         */
+        public Builder latency(Duration latency, Duration jitter) {
+            this.latency = latency;
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Write each reply in pieces of at most the given size, flushing in between, to test reassembly.
+         * @param fragmentSize The maximum number of bytes per write, or 0 to write replies at once.
+         * @return The builder.
+         */
+        public Builder fragmentSize(int fragmentSize) {
+            this.fragmentSize = fragmentSize;
+            return this;
+        }
+
+        /**
+         * Answer a share of request frames with {@link RSCPTag#TAG_RSCP_GENERAL_ERROR}.
+         * @param probability The probability per frame, from 0 to 1.
+         * @return The builder.
+         */
+        public Builder generalErrorProbability(double probability) {
+            this.generalErrorProbability = probability;
+            return this;
+        }
+
+        /**
+         * Close the connection instead of answering a share of request frames.
+         * @param probability The probability per frame, from 0 to 1.
+         * @return The builder.
+         */
+        public Builder dropProbability(double probability) {
+            this.dropProbability = probability;
+            return this;
+        }
+
+        /**
+         * Set the seed of the random values and injected errors. Each connection uses the seed plus its index.
+         * @param seed The seed.
+         * @return The builder.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Answer a request tag, replacing the default answer if there is one.
+         * @param requestTag The request tag, e.g. {@link RSCPTag#TAG_EMS_REQ_POWER_PV}.
+         * @param responder Creates the answer.
+         * @return The builder.
+         */
+        public Builder respond(RSCPTag requestTag, TagResponder responder) {
+            responders.put(requestTag.getId(), responder);
+            return this;
+        }
+
+        public E3DCSimulator build() {
+            validate();
+            return new E3DCSimulator(this);
+        }
+
+        public void validate() {
+            if (aesPassword == null || user == null || password == null) {
+                throw new IllegalStateException("AES password and credentials are required.");
+            }
+            if (latency.isNegative() || jitter.isNegative() || fragmentSize < 0) {
+                throw new IllegalStateException("Latency, jitter and fragment size cannot be negative.");
+            }
+            if (generalErrorProbability < 0 || generalErrorProbability > 1 || dropProbability < 0 || dropProbability > 1) {
+                throw new IllegalStateException("Probabilities must be between 0 and 1.");
+            }
+        }
+    }
+}
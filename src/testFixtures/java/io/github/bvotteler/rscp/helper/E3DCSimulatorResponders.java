@@ -0,0 +1,171 @@
+/*
+ *  MIT License
+ *
+ *  Copyright (c) 2023. Brendon Votteler
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package io.github.bvotteler.rscp.helper;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPTag;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default answers of the {@link E3DCSimulator}.
+ */
+class E3DCSimulatorResponders {
+    // keeps DB history replies well below the 64 KB frame limit
+    static final int maxHistoryValues = 500;
+
+    private E3DCSimulatorResponders() {
+    }
+
+    static Map<Integer, E3DCSimulator.TagResponder> defaults() {
+        Map<Integer, E3DCSimulator.TagResponder> responders = new HashMap<>();
+
+        // EMS
+        put(responders, RSCPTag.TAG_EMS_REQ_POWER_PV, (request, site) -> int32(RSCPTag.TAG_EMS_POWER_PV, site.getPvPower(Instant.now())));
+        put(responders, RSCPTag.TAG_EMS_REQ_POWER_HOME, (request, site) -> int32(RSCPTag.TAG_EMS_POWER_HOME, site.getHomePower()));
+        put(responders, RSCPTag.TAG_EMS_REQ_POWER_BAT, (request, site) -> {
+            int pv = site.getPvPower(Instant.now());
+            return int32(RSCPTag.TAG_EMS_POWER_BAT, site.getBatteryPower(pv, site.getHomePower()));
+        });
+        put(responders, RSCPTag.TAG_EMS_REQ_POWER_GRID, (request, site) -> {
+            int pv = site.getPvPower(Instant.now());
+            int home = site.getHomePower();
+            return int32(RSCPTag.TAG_EMS_POWER_GRID, site.getGridPower(pv, home, site.getBatteryPower(pv, home)));
+        });
+        put(responders, RSCPTag.TAG_EMS_REQ_POWER_ADD, (request, site) -> int32(RSCPTag.TAG_EMS_POWER_ADD, 0));
+        put(responders, RSCPTag.TAG_EMS_REQ_POWER_WB_ALL, (request, site) -> int32(RSCPTag.TAG_EMS_POWER_WB_ALL, site.getWallboxPower()));
+        put(responders, RSCPTag.TAG_EMS_REQ_BAT_SOC, (request, site) -> RSCPData.builder()
+                .tag(RSCPTag.TAG_EMS_BAT_SOC)
+                .uchar8Value((byte) site.getStateOfCharge())
+                .build());
+        put(responders, RSCPTag.TAG_EMS_REQ_AUTARKY, (request, site) -> float32(RSCPTag.TAG_EMS_AUTARKY, 60 + site.getStateOfCharge() / 4f));
+        put(responders, RSCPTag.TAG_EMS_REQ_SELF_CONSUMPTION, (request, site) -> float32(RSCPTag.TAG_EMS_SELF_CONSUMPTION, 70 + site.getStateOfCharge() / 5f));
+
+        // INFO
+        put(responders, RSCPTag.TAG_INFO_REQ_TIME, (request, site) -> RSCPData.builder()
+                .tag(RSCPTag.TAG_INFO_TIME)
+                .timestampValue(Instant.now())
+                .build());
+        put(responders, RSCPTag.TAG_INFO_REQ_SERIAL_NUMBER, (request, site) -> RSCPData.builder()
+                .tag(RSCPTag.TAG_INFO_SERIAL_NUMBER)
+                .stringValue("S10-000000000001")
+                .build());
+
+        // BAT, PVI and WB requests are containers holding an index and the requested values
+        put(responders, RSCPTag.TAG_BAT_REQ_RSOC, (request, site) -> float32(RSCPTag.TAG_BAT_RSOC, site.getStateOfCharge()));
+        put(responders, RSCPTag.TAG_BAT_REQ_MODULE_VOLTAGE, (request, site) -> float32(RSCPTag.TAG_BAT_MODULE_VOLTAGE, 48 + site.getStateOfCharge() / 20f));
+        put(responders, RSCPTag.TAG_BAT_REQ_CURRENT, (request, site) -> {
+            int pv = site.getPvPower(Instant.now());
+            return float32(RSCPTag.TAG_BAT_CURRENT, site.getBatteryPower(pv, site.getHomePower()) / 50f);
+        });
+        put(responders, RSCPTag.TAG_PVI_REQ_DC_POWER, (request, site) -> float32(RSCPTag.TAG_PVI_DC_POWER, site.getPvPower(Instant.now()) / 2f));
+        put(responders, RSCPTag.TAG_PVI_REQ_AC_POWER, (request, site) -> float32(RSCPTag.TAG_PVI_AC_POWER, site.getPvPower(Instant.now()) * 0.97f));
+        put(responders, RSCPTag.TAG_PVI_REQ_ON_GRID, (request, site) -> RSCPData.builder()
+                .tag(RSCPTag.TAG_PVI_ON_GRID)
+                .boolValue(true)
+                .build());
+        put(responders, RSCPTag.TAG_WB_REQ_PM_POWER_L1, (request, site) -> RSCPData.builder()
+                .tag(RSCPTag.TAG_WB_PM_POWER_L1)
+                .double64Value(site.getWallboxPower() / 3.0)
+                .build());
+        put(responders, RSCPTag.TAG_WB_REQ_ENERGY_ALL, (request, site) -> RSCPData.builder()
+                .tag(RSCPTag.TAG_WB_ENERGY_ALL)
+                .double64Value(123456.0)
+                .build());
+
+        // DB history
+        E3DCSimulator.TagResponder history = E3DCSimulatorResponders::history;
+        put(responders, RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY, history);
+        put(responders, RSCPTag.TAG_DB_REQ_HISTORY_DATA_WEEK, history);
+        put(responders, RSCPTag.TAG_DB_REQ_HISTORY_DATA_MONTH, history);
+        put(responders, RSCPTag.TAG_DB_REQ_HISTORY_DATA_YEAR, history);
+        return responders;
+    }
+
+    /**
+     * Answer a history request with one value container per interval, preceded by a sum container.
+     */
+    private static RSCPData history(RSCPData request, E3DCSimulator.SimulatedSite site) {
+        Instant start = Instant.now().minus(Duration.ofDays(1));
+        Duration interval = Duration.ofMinutes(15);
+        Duration span = Duration.ofDays(1);
+        for (RSCPData parameter : request.getContainerData()) {
+            if (parameter.getDataTag() == RSCPTag.TAG_DB_REQ_HISTORY_TIME_START) {
+                start = parameter.getValueAsInstant().orElse(start);
+            } else if (parameter.getDataTag() == RSCPTag.TAG_DB_REQ_HISTORY_TIME_INTERVAL) {
+                interval = parameter.getValueAsDuration().orElse(interval);
+            } else if (parameter.getDataTag() == RSCPTag.TAG_DB_REQ_HISTORY_TIME_SPAN) {
+                span = parameter.getValueAsDuration().orElse(span);
+            }
+        }
+
+        long count = interval.isZero() || interval.isNegative() ? 1 : Math.max(1, span.toMillis() / interval.toMillis());
+        count = Math.min(count, maxHistoryValues);
+        List<RSCPData> containers = new ArrayList<>((int) count + 1);
+        containers.add(historyValues(RSCPTag.TAG_DB_SUM_CONTAINER, -1, start, site, count));
+        for (int i = 0; i < count; i++) {
+            containers.add(historyValues(RSCPTag.TAG_DB_VALUE_CONTAINER, i, start.plus(interval.multipliedBy(i)), site, 1));
+        }
+        return RSCPData.builder()
+                .tagId(E3DCSession.responseTagId(request.getDataTagId()))
+                .containerValues(containers)
+                .build();
+    }
+
+    private static RSCPData historyValues(RSCPTag tag, int index, Instant time, E3DCSimulator.SimulatedSite site, long scale) {
+        int pv = site.getPvPower(time);
+        int home = site.getHomePower();
+        int bat = site.getBatteryPower(pv, home);
+        int grid = site.getGridPower(pv, home, bat);
+        return RSCPData.builder()
+                .tag(tag)
+                .containerValue(float32(RSCPTag.TAG_DB_GRAPH_INDEX, index))
+                .containerValue(float32(RSCPTag.TAG_DB_BAT_POWER_IN, scale * Math.max(bat, 0)))
+                .containerValue(float32(RSCPTag.TAG_DB_BAT_POWER_OUT, scale * Math.max(-bat, 0)))
+                .containerValue(float32(RSCPTag.TAG_DB_DC_POWER, scale * pv))
+                .containerValue(float32(RSCPTag.TAG_DB_GRID_POWER_IN, scale * Math.max(-grid, 0)))
+                .containerValue(float32(RSCPTag.TAG_DB_GRID_POWER_OUT, scale * Math.max(grid, 0)))
+                .containerValue(float32(RSCPTag.TAG_DB_CONSUMPTION, scale * home))
+                .containerValue(float32(RSCPTag.TAG_DB_BAT_CHARGE_LEVEL, site.getStateOfCharge()))
+                .build();
+    }
+
+    private static void put(Map<Integer, E3DCSimulator.TagResponder> responders, RSCPTag requestTag, E3DCSimulator.TagResponder responder) {
+        responders.put(requestTag.getId(), responder);
+    }
+
+    private static RSCPData int32(RSCPTag tag, int value) {
+        return RSCPData.builder().tag(tag).int32Value(value).build();
+    }
+
+    private static RSCPData float32(RSCPTag tag, float value) {
+        return RSCPData.builder().tag(tag).float32Value(value).build();
+    }
+}